@@ -8,15 +8,14 @@ import com.isssr.ticketing_system.dao.SprintDao;
 import com.isssr.ticketing_system.entity.auto_generated.enumeration.COperatorsEnum;
 import com.isssr.ticketing_system.enumeration.*;
 import com.isssr.ticketing_system.exception.EntityNotFoundException;
-import com.isssr.ticketing_system.exception.UpdateException;
 import com.isssr.ticketing_system.mail.MailService;
 import com.isssr.ticketing_system.mail.model.Mail;
 import com.isssr.ticketing_system.entity.*;
 import com.isssr.ticketing_system.entity.auto_generated.query.DBScheduledCountQuery;
-import com.isssr.ticketing_system.entity.auto_generated.query.Query;
 import com.isssr.ticketing_system.entity.auto_generated.query.QueryType;
 import com.isssr.ticketing_system.entity.db_connection.DBConnectionInfo;
 import com.isssr.ticketing_system.controller.*;
+import com.isssr.ticketing_system.controller.auto_generated.AutoGeneratedTicketService;
 import com.isssr.ticketing_system.controller.auto_generated.QueryService;
 import org.quartz.SchedulerException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,9 +31,7 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.ParseException;
 import java.time.Instant;
-import java.util.List;
 
 @Component
 public class InitialDataLoader implements ApplicationListener<ContextRefreshedEvent> {
@@ -84,6 +81,9 @@ public class InitialDataLoader implements ApplicationListener<ContextRefreshedEv
     @Autowired
     private QueryService queryService;
 
+    @Autowired
+    private AutoGeneratedTicketService autoGeneratedTicketService;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
@@ -317,18 +317,16 @@ public class InitialDataLoader implements ApplicationListener<ContextRefreshedEv
         }
     }
 
+    //NB: i job sono nel job store JDBC e sopravvivono al riavvio; qui vengono solo creati quelli mancanti
     public void startScheduling() {
-        List<Query> queryList = this.queryService.findAllActiveQueries();
-        for (int i = 0; i < queryList.size(); i++) {
-            Query query = queryList.get(i);
-            try {
-                this.queryService.activateQuery(query);
-                this.queryService.updateOne(query.getId(), query);
-
-            } catch (ParseException | SchedulerException | EntityNotFoundException | UpdateException e) {
-                System.out.println("Error while trying to start scheduling");
-                e.printStackTrace();
-            }
+        try {
+            int scheduled = this.autoGeneratedTicketService.rehydrateScheduledQueries();
+            System.out.println("Scheduled queries rehydrated: " + scheduled + " job created or updated");
+        } catch (SchedulerException e) {
+            System.out.println("Error while trying to start scheduling");
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
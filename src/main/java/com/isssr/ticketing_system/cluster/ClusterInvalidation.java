@@ -0,0 +1,155 @@
+package com.isssr.ticketing_system.cluster;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Propaga agli altri nodi del cluster le modifiche agli indici in memoria (TicketGraphIndex, TicketEquivalenceIndex,
+ * TeamCalendarIndex, CriticalPathIndex, TicketStatsController) con NOTIFY/LISTEN di PostgreSQL sul canale
+ * {@link #CHANNEL}.
+ * <p>
+ * {@link #publish(String, String)} esegue pg_notify nella transazione corrente: il messaggio arriva agli altri nodi
+ * solo dopo il commit (e non arriva affatto in caso di rollback), nell'ordine dei commit. Ogni nodo tiene una
+ * connessione dedicata, aperta fuori dal pool, su cui un thread attende i messaggi e li passa all'indice che si è
+ * registrato per l'argomento ({@link #subscribe(String, Consumer, Runnable)}); i messaggi inviati dal nodo stesso
+ * vengono ignorati. Se la connessione cade i messaggi nel frattempo sono persi: alla riconnessione ogni indice viene
+ * ricaricato dal DB.
+ */
+@Component
+public class ClusterInvalidation implements Runnable {
+
+    public static final String CHANNEL = "index_invalidation";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DataSourceProperties dataSourceProperties;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    @Value("${cluster.invalidation.poll-interval}")
+    private int pollInterval;
+
+    private Thread listenerThread;
+
+    @Autowired
+    public ClusterInvalidation(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+    }
+
+    @PostConstruct
+    public void start() {
+        listenerThread = new Thread(this, "cluster-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    /**
+     * Registra l'indice per un argomento.
+     *
+     * @param handler riceve l'argomento dei messaggi degli altri nodi
+     * @param resync ricarica l'indice dal DB, dopo una riconnessione in cui possono essere stati persi messaggi
+     */
+    public void subscribe(String topic, Consumer<String> handler, Runnable resync) {
+        subscriptions.put(topic, new Subscription(handler, resync));
+    }
+
+    /**
+     * Invia il messaggio agli altri nodi al commit della transazione corrente (subito, se non c'è una transazione).
+     */
+    public void publish(String topic, String argument) {
+        jdbcTemplate.query("select pg_notify(?, ?)", resultSet -> {
+        }, CHANNEL, nodeId + " " + topic + " " + argument);
+    }
+
+    @Override
+    public void run() {
+        boolean reconnected = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + CHANNEL);
+                }
+                if (reconnected)
+                    resync();
+                reconnected = true;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollInterval);
+                    if (notifications != null)
+                        for (PGNotification notification : notifications)
+                            dispatch(notification.getParameter());
+                }
+            } catch (SQLException e) {
+                System.out.println("Cluster invalidation: connection lost (" + e.getMessage() + ")");
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        String[] parts = payload.split(" ", 3);
+        if (parts.length < 3 || parts[0].equals(nodeId))
+            return;
+        Subscription subscription = subscriptions.get(parts[1]);
+        if (subscription == null)
+            return;
+        try {
+            subscription.handler.accept(parts[2]);
+        } catch (RuntimeException e) {
+            System.out.println("Error during cluster invalidation of " + parts[1]);
+            e.printStackTrace();
+        }
+    }
+
+    private void resync() {
+        subscriptions.forEach((topic, subscription) -> {
+            try {
+                subscription.resync.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error during cluster invalidation resync of " + topic);
+                e.printStackTrace();
+            }
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listenerThread != null)
+            listenerThread.interrupt();
+    }
+
+    private static final class Subscription {
+        private final Consumer<String> handler;
+        private final Runnable resync;
+
+        private Subscription(Consumer<String> handler, Runnable resync) {
+            this.handler = handler;
+            this.resync = resync;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.isssr.ticketing_system.configuration;
+
+import org.springframework.boot.autoconfigure.quartz.SchedulerFactoryBeanCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+/**
+ * Crea le tabelle qrtz_* del job store JDBC di Quartz, se mancano, prima dell'avvio dello scheduler. Lo script di
+ * Spring Boot (spring.quartz.jdbc.initialize-schema=always) cancella e ricrea le tabelle, perdendo i job degli altri
+ * nodi del cluster, quindi viene usato db/quartz_tables_postgres.sql che non cancella nulla.
+ */
+@Configuration
+public class QuartzSchemaConfiguration {
+
+    private static final String SCHEMA = "db/quartz_tables_postgres.sql";
+
+    @Bean
+    public SchedulerFactoryBeanCustomizer quartzSchemaInitializer(DataSource dataSource) {
+        return schedulerFactoryBean ->
+                DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource(SCHEMA)), dataSource);
+    }
+}
@@ -2,12 +2,12 @@ package com.isssr.ticketing_system.controller;
 
 import com.isssr.ticketing_system.dao.EscalationDao;
 import com.isssr.ticketing_system.dao.TicketDao;
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
 import com.isssr.ticketing_system.entity.Escalation;
 import com.isssr.ticketing_system.entity.Ticket;
 import com.isssr.ticketing_system.enumeration.TicketStatus;
 import com.isssr.ticketing_system.utils.State;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
@@ -16,9 +16,8 @@ import java.util.List;
 
 
 /*
-Classe controllore che alla creazione di Escalation avvia un runnable che controlla
-i ticket in stato di pending in maniera periodica fino alla creazione di una nuova
-classe Escalation
+Classe controllore che alla creazione di Escalation ricalcola la chiave di escalation
+dei ticket in stato di pending; il rank corrente viene calcolato in lettura
  */
 @Service
 public class EscalationController {
@@ -28,7 +27,6 @@ public class EscalationController {
     private ScheduledFuture<?> oldHandler;*/
 
     private Escalation escalation;
-    private int i=0;
 
     @Autowired
     private EscalationDao escalationDao;
@@ -77,22 +75,52 @@ public class EscalationController {
         Escalation newEscalation = escalationDao.save(escalation);
         this.escalation = newEscalation;
 
-        if(i==0) {
-            escalationStart();
-            i++;
-        }
+        //NB: i pesi sono cambiati, quindi si ricalcolano le chiavi di escalation dei ticket in pending
+        escalationStart();
         return newEscalation;
 
     }
 
 
-    @Scheduled(fixedDelay = 5000, initialDelay = 1000 /*cron = "0 0 1,7,13,20 * * ?"*/)
-    //NB: l'annotazione @Scheduled avverte Spring di creare in automatico un thread con un delay pari a "fixedDelay"
-    // esegue il seguente metodo (nel nostro caso effettua l'escalation)
-    // Il parametro cron permette di impostare delle esecuzione in determinati momenti della giornata (ad esempio il setting
-    // commentato esegue il metodo ogni giorno ogni sei ore
+    //NB: la chiave di escalation a*cp + b*tp - c*inizioPending è invariante nel tempo e ordina i ticket come il rank
+    // a*cp + b*tp + c*(ora - inizioPending); va quindi ricalcolata solo al cambio dei pesi (non più ogni 5 secondi
+    // con @Scheduled) e all'ingresso di un ticket nello stato PENDING.
+    // Il ricalcolo è fatto con un'unica UPDATE sul DB, senza caricare i ticket (e le relative relazioni EAGER)
     @Transactional
-    public void escalationStart() {
+    public int escalationStart() {
+        Double[] weights = getWeights();
+
+        long start = System.currentTimeMillis();
+        int updatedTickets = ticketDao.updatePendingEscalationKeys(weights[0], weights[1], weights[2]);
+        long elapsed = System.currentTimeMillis() - start;
+
+        System.out.println("Escalation: ricalcolate " + updatedTickets + " chiavi di escalation in " + elapsed + " ms");
+        return updatedTickets;
+    }
+
+    //NB: da invocare quando il ticket entra nello stato PENDING o ne cambiano le priorità
+    public void updateEscalationKey(@NotNull Ticket ticket) {
+        Double[] weights = getWeights();
+        ticket.setEscalationKey(ticket.computeEscalationKey(weights[0], weights[1], weights[2]));
+    }
+
+    //NB: il rank corrente si ottiene dalla chiave salvata sommando c * ora corrente (in ore)
+    public List<TicketSummaryDto> computeLiveRank(@NotNull List<TicketSummaryDto> tickets) {
+        Double time = getWeights()[2];
+        double nowInHour = (double) System.currentTimeMillis() / (1000 * 3600);
+
+        for (TicketSummaryDto ticket : tickets) {
+            if (ticket.getEscalationKey() != null)
+                ticket.setRank(ticket.getEscalationKey() + time * nowInHour);
+        }
+        return tickets;
+    }
+
+    //NB: pesi correnti [customerPriority, teamPriority, time]; dopo un riavvio si riparte dall'ultima escalation salvata
+    public Double[] getWeights() {
+        if (escalation == null)
+            escalation = escalationDao.findLastEscalation();
+
         Double customerPriority = escalationDao.getCustomerPriorityByEscalation(escalation);
         Double teamPriority = escalationDao.getTeamPriorityByEscalation(escalation);
         Double time = escalationDao.getTimeByEscalation(escalation);
@@ -104,14 +132,6 @@ public class EscalationController {
         if(time==null)
             time=0.0;
 
-        List<Ticket> pendingTickets = ticketDao.findDistinctByCurrentTicketStatus(TicketStatus.PENDING);
-
-        for(Ticket ticket: pendingTickets){
-            Double rank = ticket.computeRank(customerPriority,teamPriority,time);
-            ticket.updateRank(rank);
-            ticketDao.save(ticket);
-
-        }
-
+        return new Double[]{customerPriority, teamPriority, time};
     }
 }
@@ -3,34 +3,66 @@ package com.isssr.ticketing_system.controller;
 import com.isssr.ticketing_system.dao.GanttDayDao;
 import com.isssr.ticketing_system.dao.TeamDao;
 import com.isssr.ticketing_system.dao.TicketDao;
+import com.isssr.ticketing_system.dto.CriticalPathDto;
+import com.isssr.ticketing_system.dto.GanttSlotDto;
+import com.isssr.ticketing_system.dto.GanttWindowDto;
+import com.isssr.ticketing_system.dto.TicketDependencyDto;
 import com.isssr.ticketing_system.embeddable.KeyGanttDay;
 import com.isssr.ticketing_system.entity.GanttDay;
 import com.isssr.ticketing_system.entity.Team;
 import com.isssr.ticketing_system.entity.Ticket;
 import com.isssr.ticketing_system.entity.User;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
 import com.isssr.ticketing_system.exception.DependeciesFoundException;
 import com.isssr.ticketing_system.exception.EntityNotFoundException;
-import com.isssr.ticketing_system.utils.ParseDate;
+import com.isssr.ticketing_system.gantt.CriticalPath;
+import com.isssr.ticketing_system.gantt.CriticalPathIndex;
+import com.isssr.ticketing_system.gantt.TeamCalendar;
+import com.isssr.ticketing_system.gantt.TeamCalendarIndex;
+import com.isssr.ticketing_system.utils.DateCodec;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.constraints.NotNull;
+import java.time.LocalDate;
 import java.util.*;
 
 @Service
 public class GanttDayController {
+
+    // limiti delle pianificazioni richieste dai client: il calendario in memoria di un team copre tutti i giorni tra il
+    // primo e l'ultimo pianificato, quindi una data o una durata arbitraria lo farebbe crescere senza limite
+    private static final int MAX_DURATION_DAYS = 366;
+    private static final int HORIZON_YEARS = 5;
+
     @Autowired
     GanttDayDao ganttDayDao;
     @Autowired
     TeamDao teamDao;
     @Autowired
     TicketDao ticketDao;
+    @Autowired
+    TicketStatsController ticketStatsController;
+    @Autowired
+    TeamCalendarIndex teamCalendarIndex;
+    @Autowired
+    CriticalPathIndex criticalPathIndex;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
 
 
+    /**
+     * @throws IllegalArgumentException giorno fuori dall'orizzonte di pianificazione
+     */
     @Transactional
     public GanttDay createGanttDay(GanttDay ganttDay){
+        if (ganttDay.getKeyGanttDay() != null && ganttDay.getKeyGanttDay().getDay() != null)
+            checkPlanningHorizon(ganttDay.getKeyGanttDay().getDay().toEpochDay(), 1);
         GanttDay ganttDayNew = ganttDayDao.save(ganttDay);
+        if (ganttDayNew.getKeyGanttDay() != null && ganttDayNew.getKeyGanttDay().getTeam() != null)
+            teamCalendarIndex.reloadAfterCommit(ganttDayNew.getKeyGanttDay().getTeam().getId());
         return ganttDayNew;
     }
 
@@ -40,88 +72,232 @@ public class GanttDayController {
                                                        @NotNull String firstDay, @NotNull Integer duration,
                                                        @NotNull Long ticketId) throws DependeciesFoundException, EntityNotFoundException {
 
-        List<GanttDay> ganttDays = new ArrayList<>();
-
         Optional<Team> team = teamDao.findByName(teamName);
         if (!team.isPresent()) {
             throw new EntityNotFoundException("Team not found");
         }
         Ticket ticketToUpdate = ticketDao.getOne(ticketId);
 
-        GregorianCalendar first = ParseDate.parseGregorianCalendar(firstDay);
+        long first = DateCodec.parseEpochDay(firstDay);
 
         //check dependencies
-        Set<Ticket> tickets = new HashSet<>();
-        tickets.add(ticketToUpdate);
-        List<Ticket> fatherTickets = ticketDao.findDistinctByDependentTicketsContains(tickets);
-        for (Ticket father : fatherTickets) {
-            Integer durationFather = ticketDao.findDurationByTicket(father);
-            if (durationFather == null) {
+        // durata e inizio esecuzione dei padri diretti sono letti con una sola query
+        List<TicketDependencyDto> fatherTickets = ticketDao.findDependencyClosure(ticketId, true, 1, null, Integer.MAX_VALUE);
+        for (TicketDependencyDto father : fatherTickets) {
+            Integer durationFather = father.getDurationEstimation();
+            if (durationFather == null || father.getDateExecutionStart() == null) {
                 throw new DependeciesFoundException();
             }
-            GregorianCalendar dateExecStartFather = ParseDate.parseGregorianCalendar(ticketDao.findDateExecutionByTicket(father));
-                        dateExecStartFather.add(Calendar.DAY_OF_MONTH,durationFather);
-            if (dateExecStartFather.compareTo(first) > 0) {
+            if (father.getDateExecutionStart().toEpochDay() + durationFather > first) {
                 throw new DependeciesFoundException();
             }
         }
 
-        //check availability for all day
-        for(int i = 0; i<duration; i++) {
-            String currentDay = ParseDate.gregorianCalendarToString(first);
-            KeyGanttDay keyGanttDay = new KeyGanttDay(currentDay,team.get());
-            if (!ganttDayDao.existsById(keyGanttDay)) {
-                continue;
-            }
-            Double currentAvail = ganttDayDao.getAvailabilityByDayAndTeam(keyGanttDay);
-            if (currentAvail >= 1) {
-                ganttDays.add(ganttDayDao.getOne(keyGanttDay));
-            }
-            first.add(Calendar.DAY_OF_MONTH, 1);
-        }
-
+        List<GanttDay> ganttDays = planTicket(team.get(), ticketToUpdate, firstDay, duration);
         if (!ganttDays.isEmpty()) {
             return ganttDays;
         }
 
-        first = ParseDate.parseGregorianCalendar(firstDay);
-
-        for(int i = 0; i<duration; i++) {
-            String currentDay = ParseDate.gregorianCalendarToString(first);
-            updateGanttDay(currentDay, ticketToUpdate, team.get());
-            first.add(Calendar.DAY_OF_MONTH, 1);
-        }
-
+        TicketStatsController.Keys statsKeys = ticketStatsController.keysOf(ticketToUpdate);
         ticket.setTeam(team.get());
         ticketToUpdate.update(ticket);
         ticketDao.save(ticketToUpdate);
+        ticketStatsController.track(statsKeys, ticketToUpdate);
+        // il ticket può aver cambiato team e inizio esecuzione
+        criticalPathIndex.invalidateAll();
 
         return ganttDays;
     }
 
-    @Transactional
-    private Double computeAvailability(Team team, Integer ticketsSize) {
-        List<User> teamMember = teamDao.findTeamMembersByTeam(team);
-        return (double) ticketsSize /((double)teamMember.size() + 2);
+    /**
+     * Primo intervallo di duration giorni in cui il ticket può essere pianificato per il team: non inizia prima di from
+     * né prima della fine dei ticket padre non chiusi (inizio esecuzione + durata stimata) e non contiene giorni pieni
+     * (availability >= 1). I padri sono letti con una sola query e il calendario del team in memoria viene scandito
+     * una sola volta, quindi il client non deve più provare una data dopo l'altra.
+     *
+     * @param from primo giorno ammesso, nel formato di DateCodec; se null il giorno corrente
+     * @return l'intervallo trovato
+     * @throws IllegalArgumentException from non valido, oppure from o duration fuori dall'orizzonte di pianificazione
+     * @throws DependeciesFoundException un ticket padre non chiuso non ha inizio esecuzione o durata stimata
+     * @throws EntityNotFoundException team o ticket inesistente
+     */
+    @Transactional(readOnly = true)
+    public GanttSlotDto findEarliestSlot(@NotNull Long ticketId, @NotNull String teamName, int duration, String from)
+            throws DependeciesFoundException, EntityNotFoundException {
+        Optional<Team> team = teamDao.findByName(teamName);
+        if (!team.isPresent()) {
+            throw new EntityNotFoundException("Team not found");
+        }
+        if (!ticketDao.existsById(ticketId)) {
+            throw new EntityNotFoundException("Ticket not found");
+        }
+
+        long earliest = from == null ? LocalDate.now().toEpochDay() : DateCodec.parseEpochDay(from);
+        checkPlanningHorizon(earliest, duration);
+        Long dependenciesEnd = null;
+        for (TicketDependencyDto father : ticketDao.findDependencyClosure(ticketId, true, 1, null, Integer.MAX_VALUE)) {
+            if (father.getCurrentTicketStatus() == TicketStatus.CLOSED)
+                continue;
+            if (father.getDurationEstimation() == null || father.getDateExecutionStart() == null)
+                throw new DependeciesFoundException();
+            long fatherEnd = father.getDateExecutionStart().toEpochDay() + father.getDurationEstimation();
+            if (dependenciesEnd == null || fatherEnd > dependenciesEnd)
+                dependenciesEnd = fatherEnd;
+        }
+        if (dependenciesEnd != null)
+            earliest = Math.max(earliest, dependenciesEnd);
 
+        long firstDay = teamCalendarIndex.calendar(team.get().getId()).findEarliestStart(earliest, duration);
+        return new GanttSlotDto(ticketId, teamName, duration, DateCodec.toLocalDate(firstDay),
+                DateCodec.toLocalDate(firstDay + duration - 1),
+                dependenciesEnd == null ? null : DateCodec.toLocalDate(dependenciesEnd));
     }
 
+    /**
+     * Pianifica il ticket nei giorni da firstDay a firstDay + duration - 1 del calendario del team, se nessuno di essi
+     * è pieno (availability >= 1). La prima verifica e la prenotazione sono fatte sul calendario in memoria
+     * (TeamCalendarIndex); poiché il calendario può non avere ancora le prenotazioni fatte da altri nodi del cluster, la
+     * verifica è ripetuta nel DB: l'availability dei giorni in cui il ticket non era pianificato viene incrementata con
+     * un INSERT ... ON CONFLICT in batch solo se il giorno non è pieno, poi il ticket viene scritto in tickets_per_day.
+     * Se un giorno risulta pieno le scritture vengono annullate (savepoint) e il calendario viene ricaricato dal DB.
+     *
+     * @param firstDay primo giorno, nel formato di DateCodec
+     * @return i GanttDay dei giorni pieni; se non è vuota il ticket non è stato pianificato
+     * @throws IllegalArgumentException firstDay non valido, oppure firstDay o duration fuori dall'orizzonte di
+     * pianificazione (il calendario non viene modificato)
+     */
     @Transactional
-    public void updateGanttDay( String day, Ticket ticketToUpdate , Team team) {
-       KeyGanttDay keyGanttDay = new KeyGanttDay(day, team);
-        Set<Ticket> ticketSet = new HashSet<>();
-        GanttDay ganttDayToUpdate;
-        if (!ganttDayDao.existsById(keyGanttDay)) {
-            GanttDay ganttDayToSave = new GanttDay(keyGanttDay,0.0,ticketSet);
-            ganttDayToUpdate = ganttDayDao.save(ganttDayToSave);
-        } else{
-            ganttDayToUpdate = ganttDayDao.findByKeyGanttDay(keyGanttDay);
-            ticketSet = ganttDayDao.getTicketsSetByKey(keyGanttDay);
+    public @NotNull List<GanttDay> planTicket(@NotNull Team team, @NotNull Ticket ticket, @NotNull String firstDay,
+                                              int duration) {
+        long from = DateCodec.parseEpochDay(firstDay);
+        checkPlanningHorizon(from, duration);
+        int teamMembers = teamDao.countTeamMembers(team.getId());
+
+        long[] fullDays = teamCalendarIndex.reserve(team.getId(), ticket.getId(), from, duration, teamMembers);
+        if (fullDays.length > 0) {
+            List<KeyGanttDay> keys = new ArrayList<>(fullDays.length);
+            for (long day : fullDays)
+                keys.add(new KeyGanttDay(DateCodec.toLocalDate(day), team));
+            return ganttDayDao.findAllById(keys);
+        }
+
+        Set<Long> plannedDays = new HashSet<>(jdbcTemplate.queryForList("select gantt_day_day - date '1970-01-01' " +
+                        "from tickets_per_day where gantt_day_team_name = ? and tickets_id = ? " +
+                        "and gantt_day_day >= ? and gantt_day_day < ?", Long.class,
+                team.getId(), ticket.getId(), DateCodec.toLocalDate(from), DateCodec.toLocalDate(from + duration)));
+        double ticketLoad = 1.0 / (teamMembers + 2);
+        List<LocalDate> newDays = new ArrayList<>(duration);
+        List<Object[]> days = new ArrayList<>(duration);
+        List<Object[]> dayTickets = new ArrayList<>(duration);
+        for (int i = 0; i < duration; i++) {
+            if (plannedDays.contains(from + i))
+                continue;
+            LocalDate day = DateCodec.toLocalDate(from + i);
+            newDays.add(day);
+            days.add(new Object[]{day, team.getId(), ticketLoad, ticketLoad});
+            dayTickets.add(new Object[]{day, team.getId(), ticket.getId()});
+        }
+        if (days.isEmpty())
+            return new ArrayList<>();
+
+        // JpaTransactionManager non gestisce i savepoint con Hibernate: sono creati sulla connessione della transazione
+        jdbcTemplate.execute("savepoint plan_ticket");
+        //NB: l'UPDATE attende il lock della riga e ricontrolla availability < 1 sulla versione aggiornata, quindi due nodi
+        // non possono riempire lo stesso giorno oltre il limite; 0 righe aggiornate = giorno pieno
+        int[] updated = jdbcTemplate.batchUpdate("insert into gantt_day (day, team_name, availability) values (?, ?, ?) " +
+                "on conflict (day, team_name) do update set availability = gantt_day.availability + ? " +
+                "where gantt_day.availability < 1", days);
+        List<KeyGanttDay> fullKeys = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++)
+            if (updated[i] == 0)
+                fullKeys.add(new KeyGanttDay(newDays.get(i), team));
+        if (!fullKeys.isEmpty()) {
+            jdbcTemplate.execute("rollback to savepoint plan_ticket");
+            teamCalendarIndex.reloadAfterCommit(team.getId());
+            return ganttDayDao.findAllById(fullKeys);
+        }
+        jdbcTemplate.execute("release savepoint plan_ticket");
+
+        jdbcTemplate.batchUpdate("insert into tickets_per_day (gantt_day_day, gantt_day_team_name, tickets_id) " +
+                "values (?, ?, ?) on conflict do nothing", dayTickets);
+        return new ArrayList<>();
+    }
+
+    /**
+     * @throws IllegalArgumentException se la durata non è tra 1 e MAX_DURATION_DAYS giorni o il primo giorno è più
+     * lontano di HORIZON_YEARS anni da oggi
+     */
+    private static void checkPlanningHorizon(long firstDay, int duration) {
+        if (duration < 1 || duration > MAX_DURATION_DAYS)
+            throw new IllegalArgumentException("Duration must be between 1 and " + MAX_DURATION_DAYS + " days");
+        LocalDate today = LocalDate.now();
+        if (firstDay < today.minusYears(HORIZON_YEARS).toEpochDay() || firstDay > today.plusYears(HORIZON_YEARS).toEpochDay())
+            throw new IllegalArgumentException("First day must be within " + HORIZON_YEARS + " years from today");
+    }
+
+    /**
+     * Pianificazione del team nei giorni da from a to (compresi): availability e ticket di ogni giorno sono letti dal
+     * calendario in memoria (TeamCalendarIndex) con una sola copia coerente, oppure con una sola query sulla finestra se
+     * i calendari non sono ancora stati caricati. L'ETag è calcolato dal contenuto, quindi cambia solo se cambia la pianificazione della finestra.
+     *
+     * @throws EntityNotFoundException team inesistente
+     */
+    @Transactional(readOnly = true)
+    public GanttWindowDto getTeamWindow(@NotNull String teamName, @NotNull LocalDate from, @NotNull LocalDate to)
+            throws EntityNotFoundException {
+        Optional<Long> teamId = teamDao.findIdByName(teamName);
+        if (!teamId.isPresent()) {
+            throw new EntityNotFoundException("Team not found");
+        }
+
+        long first = from.toEpochDay();
+        int days = (int) (to.toEpochDay() - first + 1);
+        TeamCalendar.Window window = teamCalendarIndex.window(teamId.get(), first, days);
+        List<GanttWindowDto.Day> windowDays = new ArrayList<>(days);
+        for (int i = 0; i < days; i++)
+            windowDays.add(new GanttWindowDto.Day(DateCodec.toLocalDate(first + i), window.getAvailability(i),
+                    window.getTickets(i)));
+        String etag = "\"" + teamId.get() + "-" + Long.toHexString(window.contentHash()) + "\"";
+        return new GanttWindowDto(teamName, from, to, windowDays, etag);
+    }
+
+    /**
+     * Cammino critico dei ticket aperti del team: ordine topologico, inizio e fine al più presto e al più tardi, slack
+     * e catena di ticket critici, calcolati in tempo lineare e tenuti in cache per team (CriticalPathIndex) fino alla
+     * prossima modifica di pianificazione, dipendenze o stato dei ticket.
+     *
+     * @throws EntityNotFoundException team inesistente
+     * @throws IllegalStateException le dipendenze tra i ticket del team formano un ciclo
+     */
+    @Transactional(readOnly = true)
+    public CriticalPathDto getCriticalPath(@NotNull String teamName) throws EntityNotFoundException {
+        Optional<Long> teamId = teamDao.findIdByName(teamName);
+        if (!teamId.isPresent()) {
+            throw new EntityNotFoundException("Team not found");
+        }
+
+        CriticalPath path = criticalPathIndex.get(teamId.get());
+        if (path.size() == 0)
+            return new CriticalPathDto(teamName, null, null);
+
+        CriticalPathDto dto = new CriticalPathDto(teamName, DateCodec.toLocalDate(path.getProjectStart()),
+                DateCodec.toLocalDate(path.getProjectEnd() - 1));
+        for (long id : path.getCriticalPath())
+            dto.getCriticalPath().add(id);
+        for (int i = 0; i < path.size(); i++) {
+            CriticalPathDto.Node node = new CriticalPathDto.Node();
+            node.setId(path.getId(i));
+            node.setTitle(path.getTitle(i));
+            node.setDurationEstimation(path.getDurationEstimation(i));
+            // le fine di CriticalPath sono il primo giorno dopo l'esecuzione
+            node.setEarliestStart(DateCodec.toLocalDate(path.getEarliestStart(i)));
+            node.setEarliestEnd(DateCodec.toLocalDate(path.getEarliestEnd(i) - 1));
+            node.setLatestStart(DateCodec.toLocalDate(path.getLatestStart(i)));
+            node.setLatestEnd(DateCodec.toLocalDate(path.getLatestEnd(i) - 1));
+            node.setSlack(path.getSlack(i));
+            node.setCritical(path.getSlack(i) == 0);
+            dto.getTickets().add(node);
         }
-        ticketSet.add(ticketToUpdate);
-        Double newAvail = computeAvailability(team, ticketSet.size());
-        GanttDay ganttDayUpdated = new GanttDay(keyGanttDay,newAvail,ticketSet);
-        ganttDayToUpdate.update(ganttDayUpdated);
-        ganttDayDao.save(ganttDayToUpdate);
+        return dto;
     }
-}
\ No newline at end of file
+}
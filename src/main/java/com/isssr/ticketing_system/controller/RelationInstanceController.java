@@ -8,6 +8,7 @@ import com.isssr.ticketing_system.entity.Relation;
 import com.isssr.ticketing_system.entity.RelationInstance;
 import com.isssr.ticketing_system.entity.Ticket;
 import com.isssr.ticketing_system.exception.AlreadyPresentException;
+import com.isssr.ticketing_system.graph.TicketGraphIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -28,6 +29,9 @@ public class RelationInstanceController {
     @Autowired
     TicketDao ticketDao;
 
+    @Autowired
+    TicketGraphIndex ticketGraphIndex;
+
     @Transactional
     public @NotNull List<Ticket> createRelationInstance(@NotNull RelationInstance relationInstance,
                                                         @NotNull String relationName,
@@ -35,23 +39,24 @@ public class RelationInstanceController {
 
         Relation relation =  relationDao.getOne(relationName);
 
-        // AGGIUNTO IL 13 LUGLIO!!!!!!!!!!
-        Ticket ticketFather = ticketDao.getOne(fatherId);
-        Ticket ticketSon = ticketDao.getOne(sonId);
-
-        List<Ticket> sonTickets = relationInstanceDao.findSonTicketsByRelationAndFatherTicket(relation, ticketFather);
-        if(sonTickets.contains(ticketSon))
+        // controlli fatti sull'indice in memoria delle relazioni, senza query per ogni livello del grafo
+        if(ticketGraphIndex.hasEdge(relationName, fatherId, sonId))
             throw new AlreadyPresentException();
-       //-------!!!!!!!!!!!!!-------------
-        List<Ticket> cycleList = new ArrayList<>();
-        if(relationDao.findCyclicByRelation(relation)) {
-            relationInstanceDao.save(relationInstance);
-        }else{
-            if(isAcycle(sonId, relationName, fatherId,cycleList).isEmpty())
-                relationInstanceDao.save(relationInstance);
-            else return cycleList;
 
+        List<Ticket> cycleList = new ArrayList<>();
+        if(!relationDao.findCyclicByRelation(relation)) {
+            long[] cyclePath = ticketGraphIndex.findCycle(relationName, fatherId, sonId);
+            if (cyclePath != null) {
+                // ticket del ciclo nell'ordine del cammino, dal figlio al padre della nuova relazione
+                cycleList.addAll(ticketDao.findAllByIdOrdered(cyclePath));
+                return cycleList;
+            }
         }
+
+        RelationInstance savedInstance = relationInstanceDao.save(relationInstance);
+        if (savedInstance.getRelation() != null && savedInstance.getFatherTicket() != null && savedInstance.getSonTicket() != null)
+            ticketGraphIndex.addEdge(savedInstance.getRelation().getName(), savedInstance.getFatherTicket().getId(),
+                    savedInstance.getSonTicket().getId());
         return cycleList;
     }
 
@@ -78,40 +83,4 @@ public class RelationInstanceController {
         return sonTickets;
     }
 
-    //NB: quando viene chiamata come fatherTicket gli passi il son e la sua lista(figli dei figli)
-    @Transactional
-    private List<Ticket> isAcycle(@NotNull Long fatherTicketId , @NotNull String relationName,
-                                  @NotNull Long sonTicketId, List<Ticket> cycleList){
-        List<Ticket> tmpList = new ArrayList<>();
-
-        List<Ticket> sonTickets = findTicketsByRelation(relationName, fatherTicketId);
-        Ticket ticketToCheck = ticketDao.getOne(sonTicketId);
-        Ticket ticketRoot = ticketDao.getOne(fatherTicketId);
-
-        if (sonTickets.isEmpty())
-            return tmpList;
-
-        if(sonTickets.contains(ticketToCheck)){
-            cycleList.add(ticketRoot);
-            cycleList.add(ticketToCheck);
-            tmpList.addAll(cycleList);
-            return tmpList;
-        }else {
-            for(Ticket ticket: sonTickets){
-                if(!isAcycle(ticketDao.getIDByTicket(ticket), relationName, sonTicketId, cycleList).isEmpty()){
-                    cycleList.add(ticketRoot);
-                    tmpList.addAll(cycleList);
-                    return tmpList;
-                }
-            }
-
-        }
-
-        return tmpList;
-
-    }
-
-
-
-
 }
@@ -8,6 +8,8 @@ import com.isssr.ticketing_system.dao.StateMachineDao;
 import com.isssr.ticketing_system.entity.StateMachine;
 import com.isssr.ticketing_system.enumeration.TicketStatus;
 import com.isssr.ticketing_system.enumeration.UserRole;
+import com.isssr.ticketing_system.state_machine.StateMachineDefinition;
+import com.isssr.ticketing_system.state_machine.StateMachineRegistry;
 import com.isssr.ticketing_system.utils.FileManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
@@ -27,10 +29,12 @@ import java.util.*;
 public class StateMachineController {
 
     private final StateMachineDao stateMachineDao;
+    private final StateMachineRegistry stateMachineRegistry;
 
     @Autowired
-    public StateMachineController(StateMachineDao stateMachineDao) {
+    public StateMachineController(StateMachineDao stateMachineDao, StateMachineRegistry stateMachineRegistry) {
         this.stateMachineDao = stateMachineDao;
+        this.stateMachineRegistry = stateMachineRegistry;
     }
 
     public Collection<StateMachine> getStateMachines(){
@@ -70,6 +74,7 @@ public class StateMachineController {
 
         try{
             stateMachineDao.save(stateMachine); // Salvataggio della FSM nel DB.
+            stateMachineRegistry.invalidate(stateMachine.getName()); // Il file XML è cambiato: va ricompilato.
         }
         catch (Exception e){
             return "ERROR SAVING STATE MACHINE";
@@ -224,36 +229,19 @@ public class StateMachineController {
 
     }
 
-    @SuppressWarnings("all")
-    @Transactional
+    /**
+     * Stati raggiungibili con le azioni di un ruolo (per il TEAM_LEADER anche quelle del TEAM_MEMBER).
+     * La macchina a stati è letta dalla cache dello StateMachineRegistry, senza riparsare il file XML.
+     */
     public List<String> getActualStates(String stateMachineName, String role) {
-        FSM stateMachine = null;
-        ClassPathResource classPathResource = new ClassPathResource("/state_machine/xml_files/");
-        String relativePath = null;
-        try {
-            relativePath = classPathResource.getFile().getPath();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        File file = new File(relativePath, stateMachineName);
-        String SMPath = file.getPath() + ".xml";
-        try {
-            stateMachine = new FSM(SMPath, new FSMAction() {
-                @Override
-                public boolean action(String curState, String message, String nextState, Object args) {
-                    System.out.println(curState + ":" + message + " : " + nextState);
-                    return true;
-                }
-            });
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
-        }
-        List<FSMState> fsmStateList = stateMachine.getAllStates();
+        StateMachineDefinition stateMachine = stateMachineRegistry.getDefinition(stateMachineName);
         ArrayList<String> outPutList = new ArrayList<>();
-        for(FSMState fsmState:fsmStateList){
-            ArrayList<ArrayList<String>> state_info = stateMachine.getStateInformation(fsmState.getCurrentState());
-            ArrayList<String> roleList = state_info.get(1);
-            ArrayList<String> stateList = state_info.get(2);
+        if (stateMachine == null)
+            return outPutList;
+        for(TicketStatus fsmState : stateMachine.getStates()){
+            List<List<String>> state_info = stateMachine.getStateInformation(fsmState);
+            List<String> roleList = state_info.get(1);
+            List<String> stateList = state_info.get(2);
             for(String roleStr : roleList){
                 if(roleStr.equals(role)){
                     int index = roleList.indexOf(roleStr);
@@ -270,39 +258,13 @@ public class StateMachineController {
         return  outPutList;
     }
 
-    @SuppressWarnings("all")
-    @Transactional
-    public ArrayList<ArrayList<String>> getNextStates(String stateMachineName, String currentState) {
-        FSM stateMachine = null;
-        ClassPathResource classPathResource = new ClassPathResource("/state_machine/xml_files/");
-        String relativePath = null;
-        try {
-            relativePath = classPathResource.getFile().getPath();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        File file = new File(relativePath, stateMachineName);
-        String SMPath = file.getPath() + ".xml";
-        try {
-            stateMachine = new FSM(SMPath, new FSMAction() {
-                @Override
-                public boolean action(String curState, String message, String nextState, Object args) {
-                    System.out.println(curState + ":" + message + " : " + nextState);
-                    return true;
-                }
-            });
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
-        }
-        List<FSMState> fsmStateList = stateMachine.getAllStates();
-        ArrayList<ArrayList<String>> outPutList = new ArrayList<>();
-        for(FSMState fsmState:fsmStateList){
-            if(fsmState.getCurrentState().equals(currentState)) {
-                ArrayList<ArrayList<String>> state_info = stateMachine.getStateInformation(fsmState.getCurrentState());
-                outPutList.addAll(state_info);
-                break;
-            }
-        }
-        return  outPutList;
+    /**
+     * Informazioni [azioni, ruoli, stati successivi] dello stato corrente, lette dalla cache dello StateMachineRegistry.
+     */
+    public List<List<String>> getNextStates(String stateMachineName, String currentState) {
+        StateMachineDefinition stateMachine = stateMachineRegistry.getDefinition(stateMachineName);
+        if (stateMachine == null)
+            return new ArrayList<>();
+        return stateMachine.getStateInformation(currentState);
     }
 }
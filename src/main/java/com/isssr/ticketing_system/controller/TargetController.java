@@ -296,7 +296,7 @@ public class TargetController {
      * @return lista dei nuovi stati
      * @throws NotFoundEntityException
      */
-    public ArrayList<ArrayList<String>> getNextStates(Long targetID, String currentState) throws NotFoundEntityException {
+    public List<List<String>> getNextStates(Long targetID, String currentState) throws NotFoundEntityException {
         Target target = getTargetById(targetID);
         String stateMachineName = target.getStateMachineName();
         return stateMachineController.getNextStates(stateMachineName,currentState);
@@ -1,38 +1,54 @@
 package com.isssr.ticketing_system.controller;
 
-import FSM.FSM;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.isssr.ticketing_system.acl.defaultpermission.TargetDefaultPermission;
 import com.isssr.ticketing_system.acl.defaultpermission.TicketDefaultPermission;
-import com.isssr.ticketing_system.dao.GanttDayDao;
 import com.isssr.ticketing_system.dao.TeamDao;
-import com.isssr.ticketing_system.embeddable.KeyGanttDay;
+import com.isssr.ticketing_system.dto.TicketDependencyDto;
+import com.isssr.ticketing_system.dto.TicketSearchResultDto;
+import com.isssr.ticketing_system.dto.TicketStatsDto;
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
 import com.isssr.ticketing_system.entity.*;
 import com.isssr.ticketing_system.enumeration.TicketDifficulty;
+import com.isssr.ticketing_system.enumeration.TicketExportFormat;
 import com.isssr.ticketing_system.enumeration.TicketPriority;
+import com.isssr.ticketing_system.enumeration.TicketRelationCandidates;
+import com.isssr.ticketing_system.enumeration.TicketSortKey;
 import com.isssr.ticketing_system.enumeration.TicketStatus;
 import com.isssr.ticketing_system.enumeration.Visibility;
 import com.isssr.ticketing_system.exception.*;
+import com.isssr.ticketing_system.gantt.CriticalPathIndex;
+import com.isssr.ticketing_system.graph.TicketEquivalenceIndex;
+import com.isssr.ticketing_system.graph.TicketGraphIndex;
 import com.isssr.ticketing_system.logger.aspect.LogOperation;
 import com.isssr.ticketing_system.entity.SoftDelete.SoftDelete;
 import com.isssr.ticketing_system.entity.SoftDelete.SoftDeleteKind;
 import com.isssr.ticketing_system.dao.TicketDao;
 import com.isssr.ticketing_system.response_entity.JsonViews;
-import com.isssr.ticketing_system.utils.ParseDate;
+import com.isssr.ticketing_system.state_machine.StateMachineDefinition;
+import com.isssr.ticketing_system.state_machine.StateMachineRegistry;
+import com.isssr.ticketing_system.utils.KeysetCursor;
+import com.isssr.ticketing_system.utils.KeysetPage;
+import com.isssr.ticketing_system.utils.DateCodec;
+import com.isssr.ticketing_system.utils.TicketExportWriter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PostAuthorize;
-import org.springframework.security.access.prepost.PostFilter;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.constraints.NotNull;
-import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.stream.Stream;
 
 
 @Service
@@ -44,8 +60,28 @@ public class TicketController {
     private TicketDefaultPermission defaultPermissionTable;
     private TicketDao ticketDao;
     private TeamController teamController;
-    private GanttDayDao ganttDayDao;
     private GanttDayController ganttDayController;
+    private EscalationController escalationController;
+    private StateMachineRegistry stateMachineRegistry;
+    private TicketStatsController ticketStatsController;
+    private ObjectMapper objectMapper;
+    private TicketGraphIndex ticketGraphIndex;
+    private TicketEquivalenceIndex ticketEquivalenceIndex;
+    private TicketEventController ticketEventController;
+    private CriticalPathIndex criticalPathIndex;
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private static final int MAX_DEPENDENCY_DEPTH = 100;
+
+    @Value("${pageable.queries.default.size}")
+    private int defaultPageSize;
+
+    @Value("${ticket.search.configuration}")
+    private String searchConfiguration;
+
+    @Value("${ticket.export.fetch.size}")
+    private int exportFetchSize;
 
     @Autowired
     public TicketController(
@@ -54,16 +90,30 @@ public class TicketController {
             TeamDao teamDao,
             TicketDefaultPermission defaultPermissionTable,
             TeamController teamController,
-            GanttDayDao ganttDayDao,
-            GanttDayController ganttDayController
+            GanttDayController ganttDayController,
+            EscalationController escalationController,
+            StateMachineRegistry stateMachineRegistry,
+            TicketStatsController ticketStatsController,
+            ObjectMapper objectMapper,
+            TicketGraphIndex ticketGraphIndex,
+            TicketEquivalenceIndex ticketEquivalenceIndex,
+            TicketEventController ticketEventController,
+            CriticalPathIndex criticalPathIndex
     ) {
         this.userController = userController;
         this.teamController = teamController;
         this.ticketDao = ticketDao;
         this.teamDao = teamDao;
         this.defaultPermissionTable = defaultPermissionTable;
-        this.ganttDayDao = ganttDayDao;
         this.ganttDayController = ganttDayController;
+        this.escalationController = escalationController;
+        this.stateMachineRegistry = stateMachineRegistry;
+        this.ticketStatsController = ticketStatsController;
+        this.objectMapper = objectMapper;
+        this.ticketGraphIndex = ticketGraphIndex;
+        this.ticketEquivalenceIndex = ticketEquivalenceIndex;
+        this.ticketEventController = ticketEventController;
+        this.criticalPathIndex = criticalPathIndex;
     }
 
     @Transactional
@@ -73,31 +123,23 @@ public class TicketController {
 
         String stateMachineFileName = ticket.getTarget().getStateMachineName();
 
-        ClassPathResource classPathResource = new ClassPathResource("/state_machine/xml_files/");
-        String relativePath = null;
-        try {
-            relativePath = classPathResource.getFile().getPath();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        File file = new File(relativePath, stateMachineFileName);
-        //String relativePath = "./src/main/resources/status_machine/xml_files/";
-        ticket.createStateMachine( file.getPath() + ".xml");
+        // La macchina a stati viene parsata una sola volta e condivisa: il ticket ne salva solo l'id
+        StateMachineDefinition stateMachine = stateMachineRegistry.getDefinition(stateMachineFileName);
+        ticket.setStateMachineId(stateMachine.getId());
 
-        TicketStatus currentTicketStatus = TicketStatus.getEnum(ticket.getStateMachine().getCurrentState());
+        TicketStatus currentTicketStatus = stateMachine.getInitialState();
         //if(currentTicketStatus ==null)
           //  throw new NotFoundEntityException();
 
         ticket.setCurrentTicketStatus(currentTicketStatus);
         ticket.setTTL(currentTicketStatus.getTTL());
         ticket.setStateCounter(System.currentTimeMillis());
-        FSM stateMachine = ticket.getStateMachine();
-        ticket.setStateInformation(stateMachine.getStateInformation(currentTicketStatus.toString()));
         ticket.setAssignee(userController.getTeamCoordinator());
         ticket.setCustomerState(false);
         ticket.setVisibility(Visibility.PUBLIC);
 
         Ticket newTicket = this.ticketDao.save(ticket);
+        ticketStatsController.track(null, newTicket);
 
         defaultPermissionTable.grantDefaultPermission(ticket.getId());
         defaultPermissionTable.denyDefaultPermission(ticket.getId());
@@ -110,9 +152,15 @@ public class TicketController {
     //@PreAuthorize("hasPermission(#id,'com.uniroma2.isssrbackend.entity.ticket.Ticket', 'WRITE') or hasAuthority('ROLE_ADMIN')")
     public Ticket updateById(@NotNull Long id, @NotNull Ticket updatedTicket) throws EntityNotFoundException {
         Ticket toBeUpdatedTicket = getTicketById(id);
+        TicketStatsController.Keys statsKeys = ticketStatsController.keysOf(toBeUpdatedTicket);
 
         toBeUpdatedTicket.updateTicket(updatedTicket);
-        return ticketDao.save(toBeUpdatedTicket);
+        if (toBeUpdatedTicket.getCurrentTicketStatus() == TicketStatus.PENDING)
+            escalationController.updateEscalationKey(toBeUpdatedTicket);
+        Ticket savedTicket = ticketDao.save(toBeUpdatedTicket);
+        ticketStatsController.track(statsKeys, savedTicket);
+        criticalPathIndex.invalidateAll();
+        return savedTicket;
     }
 
     @Transactional
@@ -129,11 +177,155 @@ public class TicketController {
         //return ticketDao.getOne(id);
     }
 
-    @Transactional
-    @PostFilter("filterObject?.customer?.username == principal?.username " +
-            "or hasAuthority('ROLE_TEAM_MEMBER') or hasAuthority('ROLE_ADMIN')")
-    public List<Ticket> getAllTickets() {
-        return this.ticketDao.findAll();
+    /**
+     * Pagina di ticket visibili all'utente corrente, con paginazione keyset su (chiave di ordinamento, id).
+     * La visibilità è applicata nella query tramite il filtro Hibernate "user_filter", quindi il costo
+     * dipende dalla dimensione della pagina e non dal numero di ticket nel DB.
+     *
+     * @param sortKey chiave di ordinamento
+     * @param descending direzione dell'ordinamento, se null quella di default della chiave
+     * @param cursor cursore restituito con la pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina, se null quella di default
+     * @return la pagina richiesta con il cursore della successiva
+     * @throws PageableQueryException cursore o dimensione della pagina non validi
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<TicketSummaryDto> getTickets(@NotNull TicketSortKey sortKey, Boolean descending, String cursor,
+                                                   Integer pageSize) throws PageableQueryException {
+        if (pageSize != null && pageSize <= 0)
+            throw new PageableQueryException("Page size must be positive");
+        int size = pageSize == null ? defaultPageSize : Math.min(pageSize, MAX_PAGE_SIZE);
+        boolean desc = descending == null ? sortKey.isDefaultDescending() : descending;
+
+        KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+        if (after != null) {
+            try {
+                sortKey.parseValue(after.getValue());
+            } catch (RuntimeException e) {
+                throw new PageableQueryException("Invalid cursor");
+            }
+        }
+
+        List<TicketSummaryDto> tickets = ticketDao.findTicketsPage(sortKey, desc, after, null, null, getVisibilityFilterUserId(), size);
+
+        KeysetCursor nextCursor = null;
+        if (tickets.size() == size) {
+            TicketSummaryDto last = tickets.get(tickets.size() - 1);
+            nextCursor = new KeysetCursor(getSortValue(last, sortKey), last.getId());
+        }
+        if (sortKey == TicketSortKey.RANK)
+            escalationController.computeLiveRank(tickets);
+
+        return new KeysetPage<>(tickets, nextCursor);
+    }
+
+    /**
+     * Ricerca full-text sui ticket visibili all'utente corrente, ordinata per rilevanza, con paginazione keyset.
+     *
+     * @param text testo da cercare in titolo e descrizione
+     * @param status filtro sullo stato (opzionale)
+     * @param targetId filtro sul target (opzionale)
+     * @param teamId filtro sul team (opzionale)
+     * @param customerId filtro sul customer (opzionale)
+     * @param cursor cursore restituito con la pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina, se null quella di default
+     * @return la pagina di risultati con il cursore della successiva
+     * @throws PageableQueryException testo, cursore o dimensione della pagina non validi
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<TicketSearchResultDto> searchTickets(String text, TicketStatus status, Long targetId, Long teamId,
+                                                           Long customerId, String cursor, Integer pageSize)
+            throws PageableQueryException {
+        if (text == null || text.trim().isEmpty())
+            throw new PageableQueryException("Search text not defined");
+        if (pageSize != null && pageSize <= 0)
+            throw new PageableQueryException("Page size must be positive");
+        int size = pageSize == null ? defaultPageSize : Math.min(pageSize, MAX_PAGE_SIZE);
+
+        KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+        if (after != null) {
+            try {
+                Float.valueOf(after.getValue());
+            } catch (NumberFormatException e) {
+                throw new PageableQueryException("Invalid cursor");
+            }
+        }
+
+        List<TicketSearchResultDto> results = ticketDao.searchTickets(searchConfiguration, text, status, targetId, teamId,
+                customerId, getVisibilityFilterUserId(), after, size);
+
+        KeysetCursor nextCursor = null;
+        if (results.size() == size) {
+            TicketSearchResultDto last = results.get(results.size() - 1);
+            nextCursor = new KeysetCursor(last.getRank(), last.getTicket().getId());
+        }
+        return new KeysetPage<>(results, nextCursor);
+    }
+
+    private Object getSortValue(TicketSummaryDto ticket, TicketSortKey sortKey) {
+        switch (sortKey) {
+            case CREATION_TIMESTAMP:
+                return ticket.getCreationTimestamp();
+            case RANK:
+                return ticket.getEscalationKey();
+            default:
+                return ticket.getId();
+        }
+    }
+
+    /**
+     * I customer vedono solo i propri ticket, team member e admin vedono tutti i ticket.
+     *
+     * @return id dell'utente a cui restringere i ticket, null se non serve filtrare
+     */
+    private Long getVisibilityFilterUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null)
+            //NB: utente non autenticato, nessun ticket visibile
+            return -1L;
+
+        for (GrantedAuthority authority : authentication.getAuthorities())
+            if (authority.getAuthority().equals("ROLE_TEAM_MEMBER") || authority.getAuthority().equals("ROLE_ADMIN"))
+                return null;
+
+        try {
+            return userController.findUserByUsername(authentication.getName()).getId();
+        } catch (EntityNotFoundException e) {
+            //NB: utente non registrato, nessun ticket visibile
+            return -1L;
+        }
+    }
+
+    /**
+     * Esporta tutti i ticket visibili all'utente corrente, scrivendoli sull'output stream man mano che vengono
+     * letti dal DB: la memoria usata non dipende dal numero di ticket.
+     *
+     * @param format formato dell'esportazione
+     * @param outputStream stream su cui scrivere i ticket (non viene chiuso)
+     * @return numero di ticket esportati
+     */
+    @Transactional(readOnly = true)
+    public long exportTickets(@NotNull TicketExportFormat format, @NotNull OutputStream outputStream) throws IOException {
+        TicketExportWriter writer = TicketExportWriter.create(format, objectMapper, outputStream);
+        long count = 0;
+        try (Stream<TicketSummaryDto> tickets = ticketDao.streamTickets(getVisibilityFilterUserId(), exportFetchSize)) {
+            Iterator<TicketSummaryDto> iterator = tickets.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+                count++;
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+    /**
+     * Conteggi dei ticket per stato, priorità, categoria, target e team, letti dai contatori in memoria.
+     *
+     * @see TicketStatsController
+     */
+    public TicketStatsDto getTicketStats() {
+        return ticketStatsController.getStats();
     }
 
     @Transactional
@@ -151,8 +343,11 @@ public class TicketController {
     @PostAuthorize("hasPermission(returnObject,'DELETE') or returnObject == null or hasAuthority('ROLE_ADMIN')")
     public boolean deleteTicketById(@NotNull Long id) throws EntityNotFoundException {
         Ticket ticket = getTicketById(id);
+        TicketStatsController.Keys statsKeys = ticketStatsController.keysOf(ticket);
         ticket.delete();
         this.ticketDao.save(ticket);
+        ticketStatsController.track(statsKeys, ticket);
+        criticalPathIndex.invalidateAll();
         defaultPermissionTable.removeDefaultPermission(id);
         return true;
     }
@@ -161,6 +356,10 @@ public class TicketController {
     @PostAuthorize("hasAuthority('ROLE_ADMIN')")
     public void deleteAll() {
         this.ticketDao.deleteAll();
+        ticketStatsController.reconcile();
+        ticketGraphIndex.reloadAfterCommit();
+        ticketEquivalenceIndex.reloadAfterCommit();
+        criticalPathIndex.invalidateAll();
     }
 
 /*
@@ -171,24 +370,29 @@ public class TicketController {
         return ticketDao.findAllByAssignee(assistant);
     }
 */
-    @Transactional
-    @PostFilter("filterObject.customer.username == principal.username " +
-            "or hasAuthority('ROLE_TEAM_MEMBER') or hasAuthority('ROLE_ADMIN')")
-    public List<Ticket> getTicketsByCustomer(@NotNull User customer) {
-        return ticketDao.findAllByCustomer(customer);
+    @Transactional(readOnly = true)
+    public List<TicketSummaryDto> getTicketsByCustomer(@NotNull User customer) {
+        return ticketDao.findTicketsPage(TicketSortKey.ID, false, null,
+                customer.getId(), null, getVisibilityFilterUserId(), 0);
     }
 
 
-    @Transactional
-    @PostFilter("hasPermission(returnObject, 'READ') or returnObject == null or hasAuthority('ROLE_ADMIN')")
-    public List<Ticket> getTicketsByAssignee(@NotNull Long assigneeID) throws EntityNotFoundException {
+    @Transactional(readOnly = true)
+    public List<TicketSummaryDto> getTicketsByAssignee(@NotNull Long assigneeID) throws EntityNotFoundException {
         User assignee = userController.findById(assigneeID);
-        return ticketDao.findAllByAssignee(assignee);
+        return ticketDao.findTicketsPage(TicketSortKey.ID, false, null,
+                null, assignee.getId(), getVisibilityFilterUserId(), 0);
     }
 
     @Transactional
-    public List<Ticket> getTicketsByStatus(TicketStatus ticketTicketStatus){
-        return ticketDao.getTicketByStatus(ticketTicketStatus);
+    public List<TicketSummaryDto> getTicketsByStatus(TicketStatus ticketTicketStatus){
+        return ticketDao.findSummariesByStatus(ticketTicketStatus);
+    }
+
+    //NB: ticket in esecuzione in almeno un giorno dell'intervallo (ad esempio la settimana corrente)
+    @Transactional(readOnly = true)
+    public List<TicketSummaryDto> getTicketsExecutingBetween(@NotNull LocalDate from, @NotNull LocalDate to) {
+        return ticketDao.findSummariesExecutingBetween(from, to);
     }
     
     /* Progetto gestione relazioni e pianificazione */
@@ -204,8 +408,8 @@ public class TicketController {
 
 
     @Transactional
-    public List<Ticket> findTicketBySameTicket(Ticket ticket){
-        List<Ticket> tickets = ticketDao.findBySameTicket(ticket);
+    public List<TicketSummaryDto> findTicketBySameTicket(Ticket ticket){
+        List<TicketSummaryDto> tickets = ticketDao.findSummariesBySameTicket(ticket.getId());
         return tickets;
     }
 
@@ -221,8 +425,7 @@ public class TicketController {
 
 
         // se i ticket sono equivalenti, viene restituito un vettore con i due ticket
-        Ticket mainEquivalencePrimary = ticketMain.getEquivalencePrimary();
-        if (mainEquivalencePrimary != null && mainEquivalencePrimary.getEquivalentTickets().contains(dependentTicket)) {
+        if (ticketEquivalenceIndex.sameClass(ID, dependentID)) {
             cycle.add(ticketMain);
             cycle.add(dependentTicket);
             return cycle;
@@ -232,42 +435,39 @@ public class TicketController {
         if(ticketMain.isAlreadyDependent(dependentTicket))
             return cycle;
         //check if there is no-cycle
-        // la funzione isAcycle restituisce la lista con i ticket coinvolti nel ciclo che si formerebbe con l'aggiunta
-        // della dipendenza, che se un ciclo non si formasse sarebbe naturalmente vuota.
-        if(dependentTicket.isAcycle(ticketMain, cycle).isEmpty()) {
+        // findCycle restituisce il cammino (id dei ticket) che formerebbe un ciclo con la nuova dipendenza,
+        // null se non si formano cicli. Il controllo è fatto sull'indice in memoria delle dipendenze.
+        long[] cyclePath = ticketGraphIndex.findCycle(TicketGraphIndex.DEPENDENCY, ticketMain.getId(), dependentTicket.getId());
+        if(cyclePath == null) {
             ticketMain.addDependentTickets(dependentTicket);
             ticketDao.save(ticketMain);
+            ticketGraphIndex.addEdge(TicketGraphIndex.DEPENDENCY, ticketMain.getId(), dependentTicket.getId());
+            criticalPathIndex.invalidateAll();
             dependentTicket.addCount();
             ticketDao.save(dependentTicket);
 
             // ora si fa in modo che i ticket equivalenti a dependentTicket dipendano da MainTicket e dai ticket ad esso
             // equivalenti
-            Ticket ticketMainEquivalencePrimary = ticketMain.getEquivalencePrimary();
-            Ticket dependentTicketEquivalencePrimary = dependentTicket.getEquivalencePrimary();
-            List<Ticket> ticketMainEquivalents = new ArrayList<>();
-            List<Ticket> dependentTicketEquivalents = new ArrayList<>();
-            if (ticketMainEquivalencePrimary != null) {
-                ticketMainEquivalents = ticketMainEquivalencePrimary.getEquivalentTickets();
-            } else {
-                ticketMainEquivalents.add(ticketMain);
-            }
-            if (dependentTicketEquivalencePrimary != null) {
-                dependentTicketEquivalents = dependentTicketEquivalencePrimary.getEquivalentTickets();
-            } else {
-                dependentTicketEquivalents.add(dependentTicket);
-            }
-            for (int i = 0; i < dependentTicketEquivalents.size(); i++) {
-                for (int j = 0; j < ticketMainEquivalents.size(); j++) {
-                    if (!(ticketMainEquivalents.get(j).getId().equals(ticketMain.getId()) && dependentTicketEquivalents.get(i).getId().equals(dependentTicket.getId()))) {
-                        if (dependentTicketEquivalents.get(i).isAcycle(ticketMainEquivalents.get(j), cycle).isEmpty()) {
+            // le classi di equivalenza sono lette dall'indice in memoria, senza caricare i ticket
+            long[] ticketMainEquivalents = ticketEquivalenceIndex.membersOrSelf(ID);
+            long[] dependentTicketEquivalents = ticketEquivalenceIndex.membersOrSelf(dependentID);
+            for (long sonId : dependentTicketEquivalents) {
+                for (long fatherId : ticketMainEquivalents) {
+                    if (!(fatherId == ID && sonId == dependentID)
+                            && !ticketGraphIndex.hasEdge(TicketGraphIndex.DEPENDENCY, fatherId, sonId)) {
+                        cyclePath = ticketGraphIndex.findCycle(TicketGraphIndex.DEPENDENCY, fatherId, sonId);
+                        if (cyclePath == null) {
                             // anche nel propagare la dipendenza ai ticket equivalenti si controlla che non vengano introdotti
                             // dei cicli
-                            ticketMainEquivalents.get(j).addDependentTickets(dependentTicketEquivalents.get(i));
-                            ticketDao.save(ticketMainEquivalents.get(j));
-                            dependentTicketEquivalents.get(i).addCount();
-                            ticketDao.save(dependentTicketEquivalents.get(i));
+                            Ticket father = ticketDao.getOne(fatherId);
+                            Ticket son = ticketDao.getOne(sonId);
+                            father.addDependentTickets(son);
+                            ticketDao.save(father);
+                            ticketGraphIndex.addEdge(TicketGraphIndex.DEPENDENCY, father.getId(), son.getId());
+                            son.addCount();
+                            ticketDao.save(son);
                         } else {
-                            return cycle;
+                            return getCycleTickets(cyclePath);
                         }
                     }
                 }
@@ -276,7 +476,17 @@ public class TicketController {
 
             return cycle;
         }
-        else return cycle;
+        else return getCycleTickets(cyclePath);
+    }
+
+    /**
+     * @param cyclePath id dei ticket del ciclo, dal ticket dipendente a quello da cui si voleva farlo dipendere
+     * @return i ticket del ciclo in ordine inverso, a partire dal ticket da cui si voleva farlo dipendere
+     */
+    private List<Ticket> getCycleTickets(long[] cyclePath) {
+        List<Ticket> cycle = ticketDao.findAllByIdOrdered(cyclePath);
+        Collections.reverse(cycle);
+        return cycle;
     }
 
     @Transactional
@@ -284,8 +494,11 @@ public class TicketController {
         Ticket ticketReleased = ticketDao.getOne(id);
         if (ticketReleased == null )
             throw new NotFoundEntityException();
+        TicketStatsController.Keys statsKeys = ticketStatsController.keysOf(ticketReleased);
         ticketReleased.update(ticket);
         ticketDao.save(ticketReleased);
+        ticketStatsController.track(statsKeys, ticketReleased);
+        criticalPathIndex.invalidateAll();
         Set<Ticket> dependents = ticketReleased.decreaseDependents();
         for(Ticket t: dependents)
             ticketDao.save(t);
@@ -310,34 +523,40 @@ public class TicketController {
 
 
 
-    @Transactional
-    public List<Ticket> findTicketNoRelation() {
-        List<Ticket> tickets = ticketDao.findDistinctBySameTicketIsNullAndDependentTicketsIsNullAndCountDependenciesIsNullAndRegressionTicketsGeneratorIsNull();
-        return tickets;
-    }
-
-
-    @Transactional
-    public List<Ticket> findTicketDependency() {
-        List<Ticket> tickets = ticketDao.findDistinctByDependentTicketsIsNotNullOrCountDependenciesIsNotNull();
-        return tickets;
-    }
-
-    @Transactional
-    public List<Ticket> findTicketForCreateEquality() {
-        List<Ticket> tickets = ticketDao.findDistinctBySameTicketIsNull();
-        return tickets;
-    }
-
-    @Transactional
-    public List<Ticket> findTicketForCreateDependency() {
-        List<Ticket> tickets = ticketDao.findDistinctBySameTicketIsNullAndRegressionTicketsGeneratorIsNull();
-        return tickets;
+    /**
+     * Pagina di ticket candidati a una relazione, in ordine di id con paginazione keyset.
+     *
+     * @param candidates lista di candidati
+     * @param title testo da cercare nel titolo per l'autocompletamento (opzionale)
+     * @param cursor cursore restituito con la pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina, se null quella di default
+     * @return la pagina richiesta con il cursore della successiva
+     * @throws PageableQueryException cursore o dimensione della pagina non validi
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<TicketSummaryDto> findRelationCandidates(@NotNull TicketRelationCandidates candidates, String title,
+                                                               String cursor, Integer pageSize) throws PageableQueryException {
+        if (pageSize != null && pageSize <= 0)
+            throw new PageableQueryException("Page size must be positive");
+        int size = pageSize == null ? defaultPageSize : Math.min(pageSize, MAX_PAGE_SIZE);
+        KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+        if (title != null && title.trim().isEmpty())
+            title = null;
+
+        List<TicketSummaryDto> tickets = ticketDao.findRelationCandidates(candidates, title == null ? null : title.trim(),
+                after, size);
+
+        KeysetCursor nextCursor = null;
+        if (tickets.size() == size) {
+            Long lastId = tickets.get(tickets.size() - 1).getId();
+            nextCursor = new KeysetCursor(lastId, lastId);
+        }
+        return new KeysetPage<>(tickets, nextCursor);
     }
 
     @Transactional
-    public List<Ticket> findTicketForCreateRegression() {
-        List<Ticket> tickets = ticketDao.findDistinctByCurrentTicketStatus(TicketStatus.CLOSED);
+    public List<TicketSummaryDto> findTicketForCreateRegression() {
+        List<TicketSummaryDto> tickets = ticketDao.findSummariesByStatus(TicketStatus.CLOSED);
 
         return tickets;
     }
@@ -346,10 +565,10 @@ public class TicketController {
 
     @Transactional
     //NB: per stampare la coda dei ticket in pending
-    public List<Ticket> findTicketInQueue (){
-        List<Ticket> tickets = ticketDao.findDistinctByCurrentTicketStatusOrderByRankDesc(TicketStatus.PENDING);
+    public List<TicketSummaryDto> findTicketInQueue (){
+        List<TicketSummaryDto> tickets = ticketDao.findSummariesByStatusOrderByEscalationKeyDesc(TicketStatus.PENDING);
 
-        return tickets;
+        return escalationController.computeLiveRank(tickets);
     }
 
 
@@ -358,13 +577,13 @@ public class TicketController {
 
     @Transactional
     //NB: per ottenere tutti i ticket assegnati ad un team
-    public List<Ticket> findTicketByTeam(String teamName) throws EntityNotFoundException {
+    public List<TicketSummaryDto> findTicketByTeam(String teamName) throws EntityNotFoundException {
         Optional<Team> team = teamDao.findByName(teamName);
         if (!team.isPresent()) {
             throw new EntityNotFoundException("Team not found");
         }
-        List<Ticket> tickets = ticketDao.findByTeamAndCurrentTicketStatusIsNotAndCurrentTicketStatusIsNot(team.get(),
-                TicketStatus.ACCEPTANCE, TicketStatus.CLOSED);
+        List<TicketSummaryDto> tickets = ticketDao.findSummariesByTeamAndStatusNotIn(team.get().getId(),
+                Arrays.asList(TicketStatus.ACCEPTANCE, TicketStatus.CLOSED));
         return  tickets;
 
 
@@ -372,28 +591,68 @@ public class TicketController {
 
 
     @Transactional
-    public List<Ticket> findTicketForGanttByTeam(String teamName) throws EntityNotFoundException {
+    public List<TicketSummaryDto> findTicketForGanttByTeam(String teamName) throws EntityNotFoundException {
         Optional<Team> team = teamDao.findByName(teamName);
         if (!team.isPresent()) {
             //return new ArrayList<Ticket>();
             throw new EntityNotFoundException("TEAM_NOT_FOUND");
         }
-        List<Ticket> tickets = ticketDao.findByTeamAndCurrentTicketStatusIsNotAndCurrentTicketStatusIsNot(team.get(),
-                TicketStatus.ACCEPTANCE, TicketStatus.CLOSED);
+        List<TicketSummaryDto> tickets = ticketDao.findSummariesByTeamAndStatusNotIn(team.get().getId(),
+                Arrays.asList(TicketStatus.ACCEPTANCE, TicketStatus.CLOSED));
         return tickets;
 
     }
 
 
 
+    /**
+     * Ticket da cui il ticket dato dipende (ancestors = true) o che dipendono da esso (ancestors = false),
+     * direttamente o indirettamente, con la distanza dal ticket dato; paginazione keyset su (distanza, id).
+     *
+     * @param ticketId id del ticket
+     * @param ancestors true per gli antenati, false per i discendenti
+     * @param maxDepth distanza massima, se null MAX_DEPENDENCY_DEPTH
+     * @param cursor cursore restituito con la pagina precedente, null per la prima pagina
+     * @param pageSize dimensione della pagina, se null quella di default
+     * @return la pagina richiesta con il cursore della successiva
+     * @throws EntityNotFoundException ticket inesistente
+     * @throws PageableQueryException cursore, distanza o dimensione della pagina non validi
+     */
+    @Transactional(readOnly = true)
+    public KeysetPage<TicketDependencyDto> getDependencyClosure(@NotNull Long ticketId, boolean ancestors, Integer maxDepth,
+                                                               String cursor, Integer pageSize) throws EntityNotFoundException, PageableQueryException {
+        if (!ticketDao.existsById(ticketId))
+            throw new EntityNotFoundException("Ticket not found");
+        if (maxDepth != null && maxDepth <= 0)
+            throw new PageableQueryException("Depth must be positive");
+        if (pageSize != null && pageSize <= 0)
+            throw new PageableQueryException("Page size must be positive");
+        int depth = maxDepth == null ? MAX_DEPENDENCY_DEPTH : Math.min(maxDepth, MAX_DEPENDENCY_DEPTH);
+        int size = pageSize == null ? defaultPageSize : Math.min(pageSize, MAX_PAGE_SIZE);
+
+        KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+        if (after != null) {
+            try {
+                Integer.valueOf(after.getValue());
+            } catch (NumberFormatException e) {
+                throw new PageableQueryException("Invalid cursor");
+            }
+        }
+
+        List<TicketDependencyDto> tickets = ticketDao.findDependencyClosure(ticketId, ancestors, depth, after, size);
+
+        KeysetCursor nextCursor = null;
+        if (tickets.size() == size) {
+            TicketDependencyDto last = tickets.get(tickets.size() - 1);
+            nextCursor = new KeysetCursor(last.getDepth(), last.getId());
+        }
+        return new KeysetPage<>(tickets, nextCursor);
+    }
+
     @Transactional
-    public List<Ticket> findFatherTicket(@NotNull Long ticketId) {
-        Set<Ticket> tickets = new HashSet<>();
-        tickets.add(ticketDao.getOne(ticketId));
-        List<Ticket> fatherTickets = ticketDao.findDistinctByDependentTicketsContains(tickets); // ticket da cui dipende il ticket dato
-        // I ticket che sono già stati chiusi non devono comparire in questa lista
-        fatherTickets.removeIf(ticket -> ticket.getCurrentTicketStatus() == TicketStatus.CLOSED);
-        return fatherTickets;
+    public List<TicketSummaryDto> findFatherTicket(@NotNull Long ticketId) {
+        // ticket da cui dipende il ticket dato; quelli già chiusi non devono comparire in questa lista
+        return ticketDao.findOpenFatherSummaries(ticketId);
     }
 
     @Transactional
@@ -456,39 +715,98 @@ public class TicketController {
 
         Ticket ticket = getTicketById(ticketID);
         //ticket.setCreationTimestamp(Instant.now());
-        ticket.getStateMachine().ProcessFSM(action);
-        TicketStatus ticketStatus = TicketStatus.getEnum(ticket.getStateMachine().getCurrentState());
+        StateMachineDefinition stateMachine = stateMachineRegistry.getDefinition(ticket);
+        if(stateMachine == null)
+            return null;
+        TicketStatus ticketStatus = stateMachine.nextStatus(ticket.getCurrentTicketStatus(), action);
         if(ticketStatus ==null)
             return null;
-        Date date = new Date();
-        DateFormat dateFormat = new SimpleDateFormat("dd/mm/yyyy");
-        if (ticketStatus == TicketStatus.PENDING)
-            ticket.setDatePendingStart(dateFormat.format(date));
-        else if (ticketStatus == TicketStatus.EXECUTION)
-            ticket.setDateExecutionStart(dateFormat.format(date));
-        else if (ticketStatus == TicketStatus.CLOSED)
-            ticket.setDateEnd(dateFormat.format(date));
-
-        if (ticketStatus == TicketStatus.CLOSED || ticketStatus == TicketStatus.REOPENED) {
-            // Quando il ticket viene chiuso o riaperto, le relazioni di equivalenza vengono cancellate
-            if (ticket.isEquivalencePrimary()) {
-                ticket.setEquivalencePrimary(null);
-                for (Ticket equivalent : ticket.getEquivalentTickets()) {
-                    if (!equivalent.getId().equals(ticket.getId())) {
-                        equivalent.setEquivalencePrimary(null);
-                        ticketDao.save(equivalent);
-                    }
-                }
-            } else if (ticket.isEquivalenceSecondary()) {
-                ticket.setEquivalencePrimary(null);
+
+        // la transizione è applicata con un solo UPDATE al ticket e ai ticket equivalenti; il ticket viene ricaricato
+        transitionTickets(Collections.singletonList(ticketID), action);
+        return ticket;
+    }
+
+    /**
+     * Transizione di stato di più ticket: ogni ticket si porta dietro i ticket equivalenti, che si trovano nello stesso
+     * stato. Lo stato di arrivo è calcolato una volta per macchina a stati e stato di partenza, e tutti i ticket con
+     * la stessa transizione sono aggiornati con un solo UPDATE (stato, TTL, stateCounter, date e chiave di escalation),
+     * senza caricarli; per ogni ticket aggiornato viene registrato un TicketEvent.
+     * Quando i ticket vengono chiusi o riaperti, le loro classi di equivalenza vengono eliminate.
+     *
+     * @param ticketIds id dei ticket da spostare
+     * @param action azione che attiva la transizione, come configurata nel file XML della macchina a stati
+     * @return gli id dei ticket aggiornati, compresi gli equivalenti; non contiene i ticket per cui l'azione non è
+     * prevista nello stato corrente
+     */
+    @Transactional
+    public List<Long> transitionTickets(@NotNull Collection<Long> ticketIds, @NotNull String action) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (Long ticketId : ticketIds) {
+            for (long equivalentId : ticketEquivalenceIndex.membersOrSelf(ticketId))
+                ids.add(equivalentId);
+        }
+        if (ids.isEmpty())
+            return new ArrayList<>();
+
+        // ticket raggruppati per stato di partenza e stato di arrivo
+        Map<StateMachineDefinition, Map<TicketStatus, TicketStatus>> nextStatuses = new HashMap<>();
+        Map<TicketStatus, Map<TicketStatus, List<Long>>> transitions = new EnumMap<>(TicketStatus.class);
+        for (Object[] row : ticketDao.findTransitionKeysByIdIn(ids)) {
+            Long stateMachineId = (Long) row[1];
+            String stateMachineName = (String) row[2];
+            TicketStatus from = (TicketStatus) row[3];
+            StateMachineDefinition stateMachine = stateMachineId != null ? stateMachineRegistry.getDefinition(stateMachineId)
+                    : stateMachineName != null ? stateMachineRegistry.getDefinition(stateMachineName) : null;
+            if (stateMachine == null || from == null)
+                continue;
+            Map<TicketStatus, TicketStatus> machineStatuses = nextStatuses.computeIfAbsent(stateMachine, key -> new EnumMap<>(TicketStatus.class));
+            if (!machineStatuses.containsKey(from))
+                machineStatuses.put(from, stateMachine.nextStatus(from, action));
+            TicketStatus to = machineStatuses.get(from);
+            // un'azione non prevista nello stato corrente lascia lo stato invariato: il ticket non viene aggiornato
+            if (to == null || to == from)
+                continue;
+            transitions.computeIfAbsent(from, key -> new EnumMap<>(TicketStatus.class))
+                    .computeIfAbsent(to, key -> new ArrayList<>()).add((Long) row[0]);
+        }
+
+        Instant timestamp = Instant.now();
+        LocalDate date = timestamp.atZone(ZoneId.systemDefault()).toLocalDate();
+        List<Long> updatedTickets = new ArrayList<>();
+        for (Map.Entry<TicketStatus, Map<TicketStatus, List<Long>>> fromEntry : transitions.entrySet()) {
+            for (Map.Entry<TicketStatus, List<Long>> toEntry : fromEntry.getValue().entrySet()) {
+                TicketStatus from = fromEntry.getKey();
+                TicketStatus to = toEntry.getKey();
+                Double[] escalationWeights = to == TicketStatus.PENDING ? escalationController.getWeights() : null;
+                List<Long> updated = ticketDao.transitionTickets(toEntry.getValue(), from, to, date,
+                        timestamp, escalationWeights);
+
+                ticketStatsController.trackStatusChange(from, to, updated.size());
+                ticketEventController.recordEvents(updated, from + " -> " + to + " (" + action + ")", timestamp);
+                if (to == TicketStatus.CLOSED || to == TicketStatus.REOPENED)
+                    clearEquivalenceClasses(updated);
+                updatedTickets.addAll(updated);
             }
         }
-        ticket.setCurrentTicketStatus(ticketStatus);
-        ticket.setTTL(ticketStatus.getTTL());
-        ticket.setStateCounter(System.currentTimeMillis());
-        FSM stateMachine = ticket.getStateMachine();
-        ticket.setStateInformation(stateMachine.getStateInformation(ticketStatus.toString()));
-        return ticketDao.save(ticket);
+        if (!updatedTickets.isEmpty())
+            criticalPathIndex.invalidateAll();
+        return updatedTickets;
+    }
+
+    // Quando un ticket viene chiuso o riaperto, la sua relazione di equivalenza viene cancellata
+    private void clearEquivalenceClasses(List<Long> ticketIds) {
+        Map<Long, Long> classMembers = new HashMap<>();
+        for (Long ticketId : ticketIds) {
+            Long classId = ticketEquivalenceIndex.classOf(ticketId);
+            if (classId != null)
+                classMembers.putIfAbsent(classId, ticketId);
+        }
+        if (classMembers.isEmpty())
+            return;
+        ticketDao.clearEquivalenceClasses(classMembers.keySet());
+        for (Long ticketId : classMembers.values())
+            ticketEquivalenceIndex.dissolve(ticketId);
     }
 
     /**
@@ -533,29 +851,10 @@ public class TicketController {
         }
         ticketDao.save(ticket);
 
-        // transizione di stato
-        changeStatus(ticketID, action);
-        // transizione di stato replicata sui ticket equivalenti
-        Ticket updatedTicket = ticketDao.findTicketById(ticketID);
-        if (updatedTicket.isEquivalencePrimary()) {
-            for (Ticket equivalent : updatedTicket.getEquivalentTickets()) {
-                // Il controllo viene fatto per evitare che il primario cambi stato due volte (l'equivalenza è riflessiva)
-                if (equivalent.isEquivalenceSecondary()) {
-                    changeStatus(equivalent.getId(), action);
-                }
-            }
-        }
-        if (updatedTicket.isEquivalenceSecondary()) {
-            Ticket primary = updatedTicket.getEquivalencePrimary();
-            changeStatus(primary.getId(), action);
-            for (Ticket equivalent: primary.getEquivalentTickets()) {
-                if (!updatedTicket.getId().equals(equivalent.getId()) && equivalent.isEquivalenceSecondary()) {
-                    changeStatus(equivalent.getId(), action);
-                }
-            }
-        }
+        // transizione di stato, replicata sui ticket equivalenti
+        transitionTickets(Collections.singletonList(ticketID), action);
 
-        return updatedTicket;
+        return ticketDao.findTicketById(ticketID);
     }
 
 
@@ -582,124 +881,56 @@ public class TicketController {
     public List<GanttDay> getPlanningAndChangeTicketState(@NotNull Ticket ticket, @NotNull String username,
                                                           @NotNull String firstDay, @NotNull Integer duration,
                                                           @NotNull Long ticketId,String action, Long internalUserID) throws DependeciesFoundException, EntityNotFoundException {
-        List<GanttDay> ganttDays = new ArrayList<>();
-
         Team team = teamController.findAllTeamByPerson(username).get(0);
         Ticket ticketToUpdate = ticketDao.getOne(ticketId);
 
-        GregorianCalendar first = ParseDate.parseGregorianCalendar(firstDay);
+        long first = DateCodec.parseEpochDay(firstDay);
 
         //check dependencies
-        Set<Ticket> tickets = new HashSet<>();
-        tickets.add(ticketToUpdate);
-        List<Ticket> fatherTickets = ticketDao.findDistinctByDependentTicketsContains(tickets);
-        for (Ticket father : fatherTickets) {
+        // durata e inizio esecuzione dei padri diretti sono letti con una sola query
+        List<TicketDependencyDto> fatherTickets = ticketDao.findDependencyClosure(ticketId, true, 1, null, Integer.MAX_VALUE);
+        for (TicketDependencyDto father : fatherTickets) {
             if (father.getCurrentTicketStatus() != TicketStatus.CLOSED) { // solo se il ticket padre non è stato chiuso è considerato come precedente
-                Integer durationFather = ticketDao.findDurationByTicket(father);
-                if (durationFather == null) {
+                Integer durationFather = father.getDurationEstimation();
+                if (durationFather == null || father.getDateExecutionStart() == null) {
                     throw new DependeciesFoundException();
                 }
-                GregorianCalendar dateExecStartFather = ParseDate.parseGregorianCalendar(ticketDao.findDateExecutionByTicket(father));
-                dateExecStartFather.add(Calendar.DAY_OF_MONTH, durationFather);
-                if (dateExecStartFather.compareTo(first) > 0) {
+                if (father.getDateExecutionStart().toEpochDay() + durationFather > first) {
                     throw new DependeciesFoundException();
                 }
             }
         }
 
-        //check availability for all day
-        for (int i = 0; i < duration; i++) {
-            String currentDay = ParseDate.gregorianCalendarToString(first);
-            KeyGanttDay keyGanttDay = new KeyGanttDay(currentDay, team);
-            if (!ganttDayDao.existsById(keyGanttDay)) {
-                continue;
-            }
-            Double currentAvail = ganttDayDao.getAvailabilityByDayAndTeam(keyGanttDay);
-            if (currentAvail >= 1) {
-                ganttDays.add(ganttDayDao.getOne(keyGanttDay));
-            }
-            first.add(Calendar.DAY_OF_MONTH, 1);
-        }
-
+        // verifica dei giorni pieni e prenotazione sul calendario del team, poi scrittura dei giorni in batch
+        List<GanttDay> ganttDays = ganttDayController.planTicket(team, ticketToUpdate, firstDay, duration);
         if (!ganttDays.isEmpty()) {
             return ganttDays;
         }
 
-        first = ParseDate.parseGregorianCalendar(firstDay);
+        //Ticket ticket = getTicketById(ticketID);
+        // transizione di stato
+        StateMachineDefinition stateMachine = stateMachineRegistry.getDefinition(ticketToUpdate);
+        if(stateMachine == null)
+            return null;
+        if(stateMachine.nextStatus(ticketToUpdate.getCurrentTicketStatus(), action) == null)
+            return null;
 
-        for (int i = 0; i < duration; i++) {
-            String currentDay = ParseDate.gregorianCalendarToString(first);
-            ganttDayController.updateGanttDay(currentDay, ticketToUpdate, team);
-            first.add(Calendar.DAY_OF_MONTH, 1);
-        }
+        // il ticket e i ticket equivalenti cambiano stato con un solo UPDATE, poi ticketToUpdate viene ricaricato
+        transitionTickets(Collections.singletonList(ticketId), action);
 
+        //NB: i dati della pianificazione (es. dateExecutionStart) prevalgono su quelli impostati dalla transizione
+        TicketStatsController.Keys statsKeys = ticketStatsController.keysOf(ticketToUpdate);
         ticket.setTeam(team);
 
-
-
         if (internalUserID != 0) {
             User newAssignee = userController.findById(internalUserID);
             ticketToUpdate.setAssignee(newAssignee);
         }
 
-        //Ticket ticket = getTicketById(ticketID);
-        // transizione di stato
-        ticketToUpdate.getStateMachine().ProcessFSM(action);
-        TicketStatus ticketStatus = TicketStatus.getEnum(ticketToUpdate.getStateMachine().getCurrentState());
-        if(ticketStatus ==null)
-            return null;
-        Date date = new Date();
-        DateFormat dateFormat = new SimpleDateFormat("dd/mm/yyyy");
-        if (ticketStatus == TicketStatus.PENDING)
-            ticketToUpdate.setDatePendingStart(dateFormat.format(date));
-        else if (ticketStatus == TicketStatus.EXECUTION)
-            ticketToUpdate.setDateExecutionStart(dateFormat.format(date));
-        else if (ticketStatus == TicketStatus.CLOSED) {
-            ticketToUpdate.setDateEnd(dateFormat.format(date));
-        }
-
-        ticketToUpdate.setCurrentTicketStatus(ticketStatus);
-        ticketToUpdate.setTTL(ticketStatus.getTTL());
-        ticketToUpdate.setStateCounter(System.currentTimeMillis());
-        FSM stateMachine = ticketToUpdate.getStateMachine();
-        ticketToUpdate.setStateInformation(stateMachine.getStateInformation(ticketStatus.toString()));
-
-        ticketToUpdate.update(ticket);
-        ticketDao.save(ticketToUpdate);
-
-        // Si replica l'operazione sui ticket equivalenti
-        Ticket equivalencePrimary = ticketToUpdate.getEquivalencePrimary();
-        if (equivalencePrimary != null) {
-            List<Ticket> equivalentTickets = equivalencePrimary.getEquivalentTickets();
-            equivalentTickets.removeIf(t -> t.getId().equals(ticketId));
-            for (int i = 0; i < equivalentTickets.size(); i++) {
-                Ticket equivalent = equivalentTickets.get(i);
-//                if (equivalent.getId().equals(ticketId))
-//                    continue;
-                equivalent.getStateMachine().ProcessFSM(action);
-                TicketStatus equivalentTicketStatus = TicketStatus.getEnum(ticketToUpdate.getStateMachine().getCurrentState());
-                if (equivalentTicketStatus == null)
-                    return null;
-                if (ticketStatus == TicketStatus.PENDING)
-                    equivalent.setDatePendingStart(dateFormat.format(date));
-                else if (ticketStatus == TicketStatus.EXECUTION)
-                    equivalent.setDateExecutionStart(dateFormat.format(date));
-                else if (ticketStatus == TicketStatus.CLOSED) {
-                    equivalent.setDateEnd(dateFormat.format(date));
-                }
-                equivalent.setCurrentTicketStatus(ticketStatus);
-                equivalent.setTTL(ticketStatus.getTTL());
-                equivalent.setStateCounter(System.currentTimeMillis());
-                FSM equivalentStateMachine = equivalent.getStateMachine();
-                equivalent.setStateInformation(stateMachine.getStateInformation(ticketStatus.toString()));
-                ticketDao.save(equivalent);
-            }
-        }
-
-
-
         ticketToUpdate.update(ticket);
         ticketDao.save(ticketToUpdate);
+        ticketStatsController.track(statsKeys, ticketToUpdate);
+        criticalPathIndex.invalidateAll();
 
         return ganttDays;
 
@@ -717,160 +948,85 @@ public class TicketController {
 
         Ticket ticketA = ticketDao.findTicketById(idA);
         Ticket ticketB = ticketDao.findTicketById(idB);
+        if (ticketA == null || ticketB == null)
+            throw new NotFoundEntityException();
 
         // se A dipende da B o viceversa viene sollevata un'eccezione
-        Set<Ticket> dependentsA = ticketA.getDependentTickets(); // ticket che dipendono da A
-        Set<Ticket> dependentsB = ticketB.getDependentTickets(); // ticket che dipendono da B
-        if (dependentsA != null && dependentsB != null && (dependentsB.contains(ticketA) || dependentsA.contains(ticketB))) {
+        if (ticketGraphIndex.hasEdge(TicketGraphIndex.DEPENDENCY, idA, idB) || ticketGraphIndex.hasEdge(TicketGraphIndex.DEPENDENCY, idB, idA)) {
             throw new EquivalenceCycleException();
         }
 
+        // padri e figli diretti di A e B, letti con una query ciascuno
+        List<TicketDependencyDto> dependingA = ticketDao.findDependencyClosure(idA, true, 1, null, Integer.MAX_VALUE); // ticket da cui dipende A
+        List<TicketDependencyDto> dependingB = ticketDao.findDependencyClosure(idB, true, 1, null, Integer.MAX_VALUE); // ticket da cui dipende B
+        List<TicketDependencyDto> dependentsA = ticketDao.findDependencyClosure(idA, false, 1, null, Integer.MAX_VALUE); // ticket che dipendono da A
+        List<TicketDependencyDto> dependentsB = ticketDao.findDependencyClosure(idB, false, 1, null, Integer.MAX_VALUE); // ticket che dipendono da B
+
+        // se A dipende da qualche ticket non chiuso e B è in EXECUTION oppure in ACCEPTANCE, allora viene sollevata
+        // un'eccezione e si impedisce di creare la relazione di equivalenza
+        if (ticketB.getCurrentTicketStatus() == TicketStatus.EXECUTION || ticketB.getCurrentTicketStatus() == TicketStatus.ACCEPTANCE) {
+            for (TicketDependencyDto t : dependingA) {
+                if (t.getCurrentTicketStatus() != TicketStatus.CLOSED) {
+                    throw new EquivalenceBlockingDependencyException();
+                }
+            }
+        }
+
         // ora si fa in modo che A dipenda dagli stessi ticket da cui dipende B e viceversa e che da A dipendano gli stessi
         // ticket che dipendano da B e viceversa. Nel caso in cui la propagazione delle dipendenze introduce un ciclo,
         // un'eccezione ad hoc viene sollevata
-        Set<Ticket> tsA = new HashSet<>();
-        tsA.add(ticketA);
-        List<Ticket> dependingA = ticketDao.findDistinctByDependentTicketsContains(tsA); // ticket da cui dipende A
-        for (int i = 0; i < dependingA.size(); i++) {
+        for (TicketDependencyDto t : dependingA) {
             // si fa in modo che anche B e i ticket ad esso equivalenti dipendano dai dependingA
-            if (!addDependentTicket(dependingA.get(i).getId(), ticketB.getId()).isEmpty()) {
+            if (!addDependentTicket(t.getId(), idB).isEmpty()) {
                 throw new EquivalenceCycleException();
             }
         }
-        Set<Ticket> tsB = new HashSet<>();
-        tsB.add(ticketB);
-        List<Ticket> dependingB = ticketDao.findDistinctByDependentTicketsContains(tsB); // ticket da cui dipende B
-        for (int i = 0; i < dependingB.size(); i++) {
+        for (TicketDependencyDto t : dependingB) {
             // si fa in modo che anche A e i ticket ad esso equivalenti dipendano dai dependingB
-            if (!addDependentTicket(dependingB.get(i).getId(), ticketA.getId()).isEmpty()) {
+            if (!addDependentTicket(t.getId(), idA).isEmpty()) {
                 throw new EquivalenceCycleException();
             }
         }
-        for (Ticket t : dependentsA) {
+        for (TicketDependencyDto t : dependentsA) {
             // si fa in modo che questi ticket dipendano anche da B e dai ticket ad esso equivalenti
-            if (!addDependentTicket(ticketB.getId(), t.getId()).isEmpty()) {
+            if (!addDependentTicket(idB, t.getId()).isEmpty()) {
                 throw new EquivalenceCycleException();
             }
         }
-        for (Ticket t : dependentsB) {
+        for (TicketDependencyDto t : dependentsB) {
             // si fa in modo che questi ticket dipendano anche da A e dai ticket ad esso equivalenti
-            if (!addDependentTicket(ticketA.getId(), t.getId()).isEmpty()) {
+            if (!addDependentTicket(idA, t.getId()).isEmpty()) {
                 throw new EquivalenceCycleException();
             }
         }
 
-        // se A dipende da qualche ticket non chiuso e B è in EXECUTION oppure in ACCEPTANCE, allora viene sollevata
-        // un'eccezione e si impedisce di creare la relazione di equivalenza
-        if (ticketB.getStateMachine().getCurrentState().equals("EXECUTION") || ticketB.getStateMachine().getCurrentState().equals("ACCEPTANCE")) {
-            for (Ticket t : dependingA) {
-                if (!t.getStateMachine().getCurrentState().equals("CLOSED")) {
-                    throw new EquivalenceBlockingDependencyException();
-                }
-            }
-        }
-
-        //Se gli ID coincidono non si fa nulla e si ritorna il ticket A
-        if (idA == idB){
+        //Se A e B sono già equivalenti (o coincidono) non si fa nulla e si ritorna il ticket A
+        long classA = ticketEquivalenceIndex.classOrSelf(idA);
+        long classB = ticketEquivalenceIndex.classOrSelf(idB);
+        if (classA == classB) {
             return ticketA;
         }
 
-        //A e B non fanno parte di una relazione: A diventa primario e B secondariod di A
-        else if (ticketA.isNotInEquivalenceRelation() && ticketB.isNotInEquivalenceRelation()) {
-            ticketA.setEquivalencePrimary(ticketA);
-            ticketA.addEquivalentTicket(ticketB);
-            ticketB.setEquivalencePrimary(ticketA);
-        }
-
-        //A è primario e B non fa parte di una relazione: B diventa secondario di A
-        else if (ticketA.isEquivalencePrimary() && ticketB.isNotInEquivalenceRelation()) {
-            ticketA.addEquivalentTicket(ticketB);
-            ticketB.setEquivalencePrimary(ticketA);
-        }
-
-        //A non fa parte di una relazione e B è primario: A diventa secondario di B
-        else if (ticketA.isNotInEquivalenceRelation() && ticketB.isEquivalencePrimary()) {
-            ticketB.addEquivalentTicket(ticketA);
-            ticketA.setEquivalencePrimary(ticketB);
-        }
-
-        //A è secondario e B non fa parte di una relazione: B diventa secondario del primario di A
-        else if (ticketA.isEquivalenceSecondary() && ticketB.isNotInEquivalenceRelation()) {
-            ticketB.setEquivalencePrimary(ticketA.getEquivalencePrimary());
-            ticketA.getEquivalencePrimary().addEquivalentTicket(ticketB);
-        }
-
-        //A non fa parte di una relazione e B è secondario: A diventa secondario del primario di B
-        else if (ticketA.isNotInEquivalenceRelation() && ticketB.isEquivalenceSecondary()) {
-            ticketA.setEquivalencePrimary(ticketB.getEquivalencePrimary());
-            ticketB.getEquivalencePrimary().addEquivalentTicket(ticketA);
-        }
-
-        // A e B sono entrambi primari: B diventa secondario di A
-        else if (ticketA.isEquivalencePrimary() && ticketB.isEquivalencePrimary()){
-            ticketB.setEquivalencePrimary(ticketA);
-            ticketA.addEquivalentTicket(ticketB);
-            for (Ticket t : ticketB.getEquivalentTickets()){
-                ticketA.addEquivalentTicket(t);
-                t.setEquivalencePrimary(ticketA);
-            }
-            Iterator<Ticket> iterator = ticketB.getEquivalentTickets().iterator();
-            while (iterator.hasNext()) {
-                iterator.next();
-                iterator.remove();
-            }
-
-        }
-
-        //A è secondario e B primario: se il primario di A è B non si fa nulla altrimenti si crea una relazione di
-        // equivalenza tra il primario di A e B
-        else if (ticketA.isEquivalenceSecondary() && ticketB.isEquivalencePrimary()){
-            if (ticketA.getEquivalencePrimary().equals(ticketB)){
-                return ticketA;
-            } else {
-                Long idPrimaryOfA = ticketA.getEquivalencePrimary().getId();
-                this.createEquivalentRelation(idPrimaryOfA, idB);
-            }
-        }
-
-        //A è primario e B secondario: se il primario di B è A non si fa nulla altrimenti si crea una relazione di
-        // equivalenza tra il primario di B ed A
-        else if (ticketA.isEquivalencePrimary() && ticketB.isEquivalenceSecondary()){
-            if (ticketB.getEquivalencePrimary().equals(ticketA)){
-                return ticketA;
-            } else{
-                Long idPrimaryOfB = ticketB.getEquivalencePrimary().getId();
-                this.createEquivalentRelation(idA, idPrimaryOfB);
-            }
-        }
-
-        //A e B sono entrambi secondari: se il loro primale coincide non si fa nulla altrimenti si crea una relazione
-        // di equivalenza tra il primario di A e il primario di B
-        else if (ticketA.isEquivalenceSecondary() & ticketB.isEquivalenceSecondary()){
-            if (ticketA.getEquivalencePrimary().equals(ticketB.getEquivalencePrimary())){
-                return ticketA;
-            } else {
-                Long idPrimaryOfA = ticketA.getEquivalencePrimary().getId();
-                Long idPrimaryOfB = ticketB.getEquivalencePrimary().getId();
-                this.createEquivalentRelation(idPrimaryOfA, idPrimaryOfB);
-            }
-        }
+        // Le classi di A e B vengono unite con un solo UPDATE. Il primario della nuova classe è il primario di A se A è
+        // già equivalente ad altri ticket, altrimenti il primario di B (o A stesso se nessuno dei due è in una classe)
+        long classId = ticketEquivalenceIndex.classOf(idA) != null || ticketEquivalenceIndex.classOf(idB) == null ? classA : classB;
+        ticketDao.mergeEquivalenceClasses(Arrays.asList(classA, classB), classId);
+        ticketEquivalenceIndex.merge(idA, idB, classId);
 
         // A avanza nel workflow fino allo stesso stato in cui si trova B.
         // Nota che si può creare un'equivalenza su un ticket solo se quest'ultimo si trova nello stato VALIDATION
+        // Il ticket salva solo lo stato corrente (la macchina a stati è condivisa), quindi basta allinearlo a quello di B
+        TicketStatsController.Keys statsKeys = ticketStatsController.keysOf(ticketA);
         ticketA.setCurrentTicketStatus(ticketB.getCurrentTicketStatus());
-        while (!ticketA.getStateMachine().getCurrentState().equals(ticketB.getCurrentTicketStatus().toString())) {
-            if (ticketA.getStateMachine().getCurrentState().equals("ACCEPTANCE") && ticketB.getCurrentTicketStatus().toString().equals("REOPENED"))
-                ticketA.getStateMachine().ProcessFSM("Action2");
-            else
-                ticketA.getStateMachine().ProcessFSM("Action1");
-
-        }
-        FSM stateMachine = ticketA.getStateMachine();
-        ticketA.setStateInformation(stateMachine.getStateInformation(ticketB.getCurrentTicketStatus().toString()));
         ticketA.setStateCounter(System.currentTimeMillis());
+        if (ticketA.getCurrentTicketStatus() == TicketStatus.PENDING) {
+            ticketA.setDatePendingStart(ticketB.getDatePendingStart());
+            ticketA.setPendingStartTimestamp(ticketB.getPendingStartTimestamp());
+            escalationController.updateEscalationKey(ticketA);
+        }
 
         ticketDao.save(ticketA);
-        ticketDao.save(ticketB);
+        ticketStatsController.track(statsKeys, ticketA);
 
         return ticketA;
     }
@@ -881,21 +1037,18 @@ public class TicketController {
     public List<String> getEquivalentTickets(Long ticketId) {
 
         List<String> titles = new ArrayList<>();
-        Ticket ticket = ticketDao.findTicketById(ticketId);
 
-        // Se il ticket e primario si restituiscono i nomi dei ticket nella lista equivalentTickets
-        if (ticket.isEquivalencePrimary()){
-            for (Ticket t : ticket.getEquivalentTickets()){
-                titles.add("" + t.getId() + "-" + t.getTitle());
-            }
+        // La classe del ticket è letta dall'indice in memoria; dal DB si leggono solo id e titolo degli altri ticket
+        List<Long> equivalentIds = new ArrayList<>();
+        for (long id : ticketEquivalenceIndex.membersOrSelf(ticketId)) {
+            if (id != ticketId)
+                equivalentIds.add(id);
+        }
+        if (equivalentIds.isEmpty())
+            return titles;
 
-            // Se il ticket è secondario si restituiscono i nomi dei ticket nella lista equivalentTickets del primario
-        } else if (ticket.isEquivalenceSecondary()) {
-            for (Ticket t : ticket.getEquivalencePrimary().getEquivalentTickets()) {
-                if (t.getId() != ticketId){
-                    titles.add("" + t.getId() + "-" + t.getTitle());
-                }
-            }
+        for (Object[] row : ticketDao.findIdAndTitleByIdIn(equivalentIds)) {
+            titles.add("" + row[0] + "-" + row[1]);
         }
         return titles;
     }
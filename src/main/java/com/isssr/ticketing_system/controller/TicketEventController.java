@@ -3,9 +3,15 @@ package com.isssr.ticketing_system.controller;
 import com.isssr.ticketing_system.entity.TicketEvent;
 import com.isssr.ticketing_system.dao.TicketEventRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -13,11 +19,33 @@ public class TicketEventController {
     @Autowired
     private TicketEventRepository ticketEventRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Transactional
     public TicketEvent save(TicketEvent ticketEvent) {
         return this.ticketEventRepository.save(ticketEvent);
     }
 
+    /**
+     * Registra lo stesso evento su più ticket con un'unica INSERT in batch.
+     *
+     * @param ticketIds id dei ticket
+     * @param description descrizione dell'evento
+     * @param timestamp istante dell'evento
+     */
+    @Transactional
+    public void recordEvents(Collection<Long> ticketIds, String description, Instant timestamp) {
+        if (ticketIds.isEmpty())
+            return;
+        Timestamp eventTimestamp = Timestamp.from(timestamp);
+        List<Object[]> rows = new ArrayList<>(ticketIds.size());
+        for (Long ticketId : ticketIds)
+            rows.add(new Object[]{description, eventTimestamp, ticketId});
+        jdbcTemplate.batchUpdate("insert into ticket_event (deleted, description, timestamp, ticket_id) " +
+                "values (false, ?, ?, ?)", rows);
+    }
+
     @Transactional
     public Optional<TicketEvent> findById(Long id) {
         return this.ticketEventRepository.findById(id);
@@ -0,0 +1,277 @@
+package com.isssr.ticketing_system.controller;
+
+import com.isssr.ticketing_system.cluster.ClusterInvalidation;
+import com.isssr.ticketing_system.dao.TicketDao;
+import com.isssr.ticketing_system.dto.TicketStatsDto;
+import com.isssr.ticketing_system.entity.Ticket;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contatori dei ticket per stato, priorità, categoria, target e team, usati da GET /tickets/stats.
+ * <p>
+ * I contatori sono caricati con una sola query GROUP BY e poi aggiornati in memoria dalle operazioni di
+ * TicketController che creano, cancellano o spostano un ticket tra i gruppi ({@link #track(Keys, Ticket)}).
+ * Le variazioni sono applicate solo dopo il commit della transazione, quindi un rollback non altera i conteggi.
+ * Le modifiche fatte fuori da TicketController (query native, altri servizi) vengono corrette dal riallineamento
+ * periodico con il DB (ticket.stats.reconcile.delay). Le variazioni vengono inviate anche agli altri nodi del
+ * cluster ({@link ClusterInvalidation}), che le applicano ai propri contatori dopo il commit.
+ */
+@Service
+public class TicketStatsController {
+
+    private static final String NONE = "NONE";
+
+    private static final String TOPIC = "ticket_stats";
+
+    private final TicketDao ticketDao;
+
+    private final ClusterInvalidation clusterInvalidation;
+
+    /**
+     * Contatori correnti: il riallineamento ne costruisce di nuovi e sostituisce il riferimento.
+     */
+    private volatile Counters counters;
+
+    @Autowired
+    public TicketStatsController(TicketDao ticketDao, ClusterInvalidation clusterInvalidation) {
+        this.ticketDao = ticketDao;
+        this.clusterInvalidation = clusterInvalidation;
+        clusterInvalidation.subscribe(TOPIC, this::onInvalidation, this::reconcile);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reconcile();
+    }
+
+    /**
+     * Ricalcola i contatori dal DB, correggendo le eventuali differenze accumulate con gli aggiornamenti incrementali.
+     */
+    @Scheduled(initialDelayString = "${ticket.stats.reconcile.delay}", fixedDelayString = "${ticket.stats.reconcile.delay}")
+    @Transactional(readOnly = true)
+    public void reconcile() {
+        Counters reloaded = new Counters();
+        for (Object[] row : ticketDao.countTicketsGroupByStatsKeys())
+            reloaded.add(new Keys(row[0], row[1], row[2], row[3], row[4]), ((Number) row[5]).longValue());
+
+        Counters previous = counters;
+        if (previous != null && previous.total.get() != reloaded.total.get())
+            System.out.println("Ticket stats reconciliation: total " + previous.total.get() + " -> " + reloaded.total.get());
+        counters = reloaded;
+    }
+
+    /**
+     * @return i conteggi correnti; non accede al DB se non per il primo caricamento
+     */
+    @PreAuthorize("hasAnyAuthority('ROLE_TEAM_MEMBER', 'ROLE_TEAM_LEADER', 'ROLE_TEAM_COORDINATOR', 'ROLE_ADMIN')")
+    public TicketStatsDto getStats() {
+        if (counters == null)
+            reconcile();
+        return counters.toDto();
+    }
+
+    /**
+     * @param ticket ticket prima della modifica
+     * @return le chiavi con cui il ticket è contato, da passare a {@link #track(Keys, Ticket)} dopo la modifica
+     */
+    public Keys keysOf(Ticket ticket) {
+        if (ticket == null || ticket.isDeleted())
+            return null;
+        return new Keys(ticket.getCurrentTicketStatus(), ticket.getCustomerPriority(), ticket.getCategory(),
+                ticket.getTarget() == null ? null : ticket.getTarget().getId(),
+                ticket.getTeam() == null ? null : ticket.getTeam().getId());
+    }
+
+    /**
+     * Sposta il ticket dai gruppi in cui era contato a quelli corrispondenti al suo stato attuale.
+     *
+     * @param before chiavi ottenute con {@link #keysOf(Ticket)} prima della modifica; null per un ticket nuovo
+     * @param after ticket modificato; null o cancellato se il ticket non va più contato
+     */
+    public void track(Keys before, Ticket after) {
+        Keys current = keysOf(after);
+        if (Objects.equals(before, current))
+            return;
+
+        clusterInvalidation.publish(TOPIC, Keys.encode(before) + "\n" + Keys.encode(current));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    move(before, current);
+                }
+            });
+        } else {
+            move(before, current);
+        }
+    }
+
+    /**
+     * Sposta count ticket dallo stato from allo stato to, per le transizioni applicate con un UPDATE massivo
+     * senza caricare i ticket; le altre dimensioni non cambiano.
+     */
+    public void trackStatusChange(TicketStatus from, TicketStatus to, long count) {
+        if (count == 0 || from == to)
+            return;
+
+        clusterInvalidation.publish(TOPIC, Keys.key(from) + " " + Keys.key(to) + " " + count);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    moveStatus(from, to, count);
+                }
+            });
+        } else {
+            moveStatus(from, to, count);
+        }
+    }
+
+    /**
+     * Variazione fatta da un altro nodo: "chiavi prima\nchiavi dopo" (vedi track) o "stato stato count" (vedi
+     * trackStatusChange).
+     */
+    private void onInvalidation(String argument) {
+        int separator = argument.indexOf('\n');
+        if (separator >= 0) {
+            move(Keys.decode(argument.substring(0, separator)), Keys.decode(argument.substring(separator + 1)));
+            return;
+        }
+        String[] change = argument.split(" ");
+        moveStatus(change[0], change[1], Long.parseLong(change[2]));
+    }
+
+    private void moveStatus(TicketStatus from, TicketStatus to, long count) {
+        moveStatus(Keys.key(from), Keys.key(to), count);
+    }
+
+    private void moveStatus(String from, String to, long count) {
+        Counters target = counters;
+        if (target == null)
+            return;
+        Counters.add(target.byStatus, from, -count);
+        Counters.add(target.byStatus, to, count);
+    }
+
+    private void move(Keys before, Keys after) {
+        Counters target = counters;
+        if (target == null)
+            return;
+        if (before != null)
+            target.add(before, -1);
+        if (after != null)
+            target.add(after, 1);
+    }
+
+    /**
+     * Valori di un ticket per ciascuna dimensione contata.
+     */
+    public static final class Keys {
+        private final String status;
+        private final String priority;
+        private final String category;
+        private final String target;
+        private final String team;
+
+        private Keys(Object status, Object priority, Object category, Object target, Object team) {
+            this.status = key(status);
+            this.priority = key(priority);
+            this.category = key(category);
+            this.target = key(target);
+            this.team = key(team);
+        }
+
+        private static String key(Object value) {
+            return value == null ? NONE : value.toString();
+        }
+
+        // chiavi separate da tabulazioni; stringa vuota per un ticket non contato
+        private static String encode(Keys keys) {
+            return keys == null ? "" : String.join("\t", keys.status, keys.priority, keys.category, keys.target, keys.team);
+        }
+
+        private static Keys decode(String value) {
+            if (value.isEmpty())
+                return null;
+            String[] keys = value.split("\t", -1);
+            return new Keys(keys[0], keys[1], keys[2], keys[3], keys[4]);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Keys keys = (Keys) o;
+            return status.equals(keys.status) && priority.equals(keys.priority) && category.equals(keys.category)
+                    && target.equals(keys.target) && team.equals(keys.team);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(status, priority, category, target, team);
+        }
+    }
+
+    private static final class Counters {
+        private final AtomicLong total = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> byStatus = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> byPriority = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> byCategory = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> byTarget = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, AtomicLong> byTeam = new ConcurrentHashMap<>();
+        private final Instant reconciledAt = Instant.now();
+
+        private void add(Keys keys, long delta) {
+            total.addAndGet(delta);
+            add(byStatus, keys.status, delta);
+            add(byPriority, keys.priority, delta);
+            add(byCategory, keys.category, delta);
+            add(byTarget, keys.target, delta);
+            add(byTeam, keys.team, delta);
+        }
+
+        private static void add(ConcurrentMap<String, AtomicLong> counters, String key, long delta) {
+            counters.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(delta);
+        }
+
+        private TicketStatsDto toDto() {
+            TicketStatsDto stats = new TicketStatsDto();
+            stats.setTotal(total.get());
+            stats.setByStatus(snapshot(byStatus));
+            stats.setByPriority(snapshot(byPriority));
+            stats.setByCategory(snapshot(byCategory));
+            stats.setByTarget(snapshot(byTarget));
+            stats.setByTeam(snapshot(byTeam));
+            stats.setReconciledAt(reconciledAt);
+            return stats;
+        }
+
+        // i gruppi rimasti a zero (es. tutti i ticket di uno stato sono passati al successivo) non vengono restituiti
+        private static Map<String, Long> snapshot(ConcurrentMap<String, AtomicLong> counters) {
+            Map<String, Long> snapshot = new HashMap<>();
+            counters.forEach((key, value) -> {
+                long count = value.get();
+                if (count != 0)
+                    snapshot.put(key, count);
+            });
+            return snapshot;
+        }
+    }
+}
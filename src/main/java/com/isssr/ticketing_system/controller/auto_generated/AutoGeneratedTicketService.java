@@ -15,10 +15,14 @@ import com.isssr.ticketing_system.dao.TargetDao;
 import com.isssr.ticketing_system.dao.TeamDao;
 import com.isssr.ticketing_system.dao.TicketDao;
 import com.isssr.ticketing_system.controller.*;
+import org.quartz.JobKey;
 import org.quartz.SchedulerException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.sql.SQLException;
@@ -26,11 +30,12 @@ import java.text.ParseException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
 
 @Service
-public class AutoGeneratedTicketService implements Observer {
+public class AutoGeneratedTicketService {
 
     @Value("${wrong.query.mail.type}")
     private String wrongQueryMailType;
@@ -38,6 +43,9 @@ public class AutoGeneratedTicketService implements Observer {
     @Value("${admin.email}")
     private String ADMIN_EMAIL;
 
+    @Value("${query.scheduler.rehydration-threads}")
+    private int rehydrationThreads;
+
     @Autowired
     private TargetDao targetDao;
 
@@ -50,8 +58,6 @@ public class AutoGeneratedTicketService implements Observer {
     @Autowired
     private TicketController ticketController;
 
-    private List<ScheduledQuery> activeScheduledQueries = new ArrayList<>();
-
     @Autowired
     private TaskScheduler taskScheduler;
 
@@ -61,6 +67,12 @@ public class AutoGeneratedTicketService implements Observer {
     @Autowired
     private QueryService queryService;
 
+    @Autowired
+    private ScheduledQueryExecutor scheduledQueryExecutor;
+
+    @Autowired
+    private QuerySampleStore querySampleStore;
+
     /**
      * external services
      **/
@@ -75,60 +87,184 @@ public class AutoGeneratedTicketService implements Observer {
     private MailSenderHandler mailSenderController;
 
 
-    @Override
-    public void update(Observable o, Object arg) {
-
+    /**
+     * Chiamato dallo ScheduledQueryJob: legge la query dal DB e la consegna allo ScheduledQueryExecutor, che la esegue
+     * in parallelo alle query degli altri DB. Se la query non è più attiva il suo job viene rimosso.
+     *
+     * @return completato alla fine dell'esecuzione, con false se la query è fallita o non è stata eseguita
+     */
+    public CompletableFuture<Boolean> runScheduledQuery(Long queryId) {
 
-        if (o instanceof DBScheduledCountQuery) {
+        Query query = this.queryService.findActiveQuery(queryId);
 
-            DBScheduledCountQuery dbScheduledCountQuery = (DBScheduledCountQuery) o;
+        if (query == null) {
 
+            //query disattivata o cancellata mentre il trigger scattava
             try {
-                if (dbScheduledCountQuery.executeQuery(this.userSwitchController, this.queryService)) {
-                    this.generateTicket(dbScheduledCountQuery);
-                }
-            } catch (SQLException exception) {
 
-                exception.printStackTrace();
+                boolean removed = this.taskScheduler.removeJob(queryId);
+
+                System.out.println("ScheduledQuery: " + queryId + " --> not active, job REMOVED with value " + removed);
 
+            } catch (SchedulerException e) {
+
+                e.printStackTrace();
+
+            }
+
+            return CompletableFuture.completedFuture(false);
+        }
+
+        if (!(query instanceof DBScheduledCountQuery))
+            return CompletableFuture.completedFuture(false);
+
+        DBScheduledCountQuery dbScheduledCountQuery = (DBScheduledCountQuery) query;
+
+        String database = dbScheduledCountQuery.getDbConnectionInfo() != null ? dbScheduledCountQuery.getDbConnectionInfo().getUrl() : null;
+
+        return this.scheduledQueryExecutor.submit(dbScheduledCountQuery.getId(), database, () -> this.execute(dbScheduledCountQuery));
+
+    }
+
+    /**
+     * Allinea il job store alle query attive, in parallelo su query.scheduler.rehydration-threads thread: crea i job
+     * mancanti o con un'espressione cron diversa e rimuove quelli delle query non più attive. I job già presenti non
+     * vengono toccati, quindi riavviare un nodo del cluster non cambia le esecuzioni pianificate.
+     *
+     * @return numero di job creati o aggiornati
+     */
+    public int rehydrateScheduledQueries() throws SchedulerException, InterruptedException {
+
+        //NB: i job vanno letti prima delle query attive, altrimenti il job di una query attivata nel frattempo da un
+        // altro nodo verrebbe rimosso
+        Set<JobKey> jobKeys = this.taskScheduler.getJobKeys();
+
+        List<ScheduledQuery> activeQueries = this.queryService.findAllActiveQueries().stream()
+                .map(this.queryService::initializeAndUnproxyQuery)
+                .filter(query -> query instanceof ScheduledQuery)
+                .map(query -> (ScheduledQuery) query)
+                .collect(Collectors.toList());
+
+        Set<String> activeIds = activeQueries.stream()
+                .map(query -> query.getId().toString())
+                .collect(Collectors.toSet());
+
+        for (JobKey jobKey : jobKeys) {
+
+            if (!activeIds.contains(jobKey.getName()) && this.taskScheduler.removeJob(Long.valueOf(jobKey.getName())))
+                System.out.println("ScheduledQuery: " + jobKey.getName() + " --> not active, job REMOVED");
+
+        }
+
+        if (activeQueries.isEmpty())
+            return 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.rehydrationThreads, activeQueries.size()));
+
+        try {
+
+            List<Future<Boolean>> results = new ArrayList<>();
+
+            for (ScheduledQuery query : activeQueries)
+                results.add(executor.submit(() -> this.rehydrate(query)));
+
+            int scheduled = 0;
+
+            for (Future<Boolean> result : results) {
 
-                //stop query
                 try {
 
-                    queryService.disableQuery(dbScheduledCountQuery);
+                    if (result.get())
+                        scheduled++;
 
-                } catch (SchedulerException ex) {
+                } catch (ExecutionException e) {
 
-                    ex.printStackTrace();
+                    System.out.println("Error while trying to start scheduling");
+                    e.getCause().printStackTrace();
 
                 }
+            }
 
-                //send mail to query author
-                this.sendMail(dbScheduledCountQuery.getAuthor(), exception, dbScheduledCountQuery);
+            return scheduled;
 
+        } finally {
 
-            } catch (DataAccessException exception) {
+            executor.shutdownNow();
 
-                exception.printStackTrace();
+        }
+    }
 
+    private boolean rehydrate(ScheduledQuery query) throws ParseException, SchedulerException {
 
-                //stop query
-                try {
+        if (this.taskScheduler.isScheduled(query))
+            return false;
 
-                    queryService.disableQuery(dbScheduledCountQuery);
+        this.taskScheduler.addJob(query);
+
+        System.out.println("ScheduledQuery: " + query.getDescription() + " --> SCHEDULED");
 
+        return true;
 
-                } catch (SchedulerException ex) {
+    }
 
-                    ex.printStackTrace();
+    private void execute(DBScheduledCountQuery dbScheduledCountQuery) throws SQLException, DataAccessException {
 
-                }
+        try {
+            if (dbScheduledCountQuery.executeQuery(this.userSwitchController, this.queryService, this.querySampleStore)) {
+                this.generateTicket(dbScheduledCountQuery);
+            }
+        } catch (SQLException exception) {
 
-                // send email to admin
-                this.sendMail(this.ADMIN_EMAIL, exception, dbScheduledCountQuery);
+            exception.printStackTrace();
 
 
+            //stop query
+            try {
+
+                queryService.disableQuery(dbScheduledCountQuery);
+
+            } catch (SchedulerException ex) {
+
+                ex.printStackTrace();
+
             }
+
+            //send mail to query author
+            this.sendMail(dbScheduledCountQuery.getAuthor(), exception, dbScheduledCountQuery);
+
+            throw exception;
+
+        } catch (TransientDataAccessException | RecoverableDataAccessException | DataAccessResourceFailureException exception) {
+
+            //NB: timeout della query (QueryTimeoutException, o DataAccessResourceFailureException per il 57014 di
+            // PostgreSQL) e connessioni non disponibili (CannotGetJdbcConnectionException, pool del DB occupato) non
+            // sono errori della query: resta attiva e l'errore viene contato dall'executor
+            System.out.println("ScheduledQuery: " + dbScheduledCountQuery.getDescription() + " --> TRANSIENT ERROR (" + exception.getMessage() + ")");
+
+            throw exception;
+
+        } catch (DataAccessException exception) {
+
+            exception.printStackTrace();
+
+
+            //stop query
+            try {
+
+                queryService.disableQuery(dbScheduledCountQuery);
+
+
+            } catch (SchedulerException ex) {
+
+                ex.printStackTrace();
+
+            }
+
+            // send email to admin
+            this.sendMail(this.ADMIN_EMAIL, exception, dbScheduledCountQuery);
+
+            throw exception;
+
         }
 
     }
@@ -170,13 +306,8 @@ public class AutoGeneratedTicketService implements Observer {
 
     public boolean activateQuery(ScheduledQuery query) throws ParseException, SchedulerException {
 
-        //set this controller as observer
-        query.addObserver(this);
-
         taskScheduler.addJob(query);
 
-        this.activeScheduledQueries.add(query);
-
         System.out.println("ScheduledQuery: " + query.getDescription() + " --> SCHEDULED");
 
         return true;
@@ -185,15 +316,12 @@ public class AutoGeneratedTicketService implements Observer {
 
     public boolean disableQuery(ScheduledQuery query) throws SchedulerException {
 
-        taskScheduler.removeJob(query);
-
-        boolean removed = this.activeScheduledQueries.remove(query);
+        boolean removed = taskScheduler.removeJob(query);
 
-        query.deleteObserver(this);
+        System.out.println("ScheduledQuery: " + query.getId() + " --> REMOVED with value " + removed);
 
-        System.out.println("ScheduledQuery: " + query.getJobKey() + " --> REMOVED with value " + removed);
-
-        return removed;
+        //NB: anche senza job (ad esempio già rimosso da un altro nodo) la query non è più schedulata
+        return true;
 
     }
 }
@@ -0,0 +1,341 @@
+package com.isssr.ticketing_system.controller.auto_generated;
+
+import com.isssr.ticketing_system.dto.QuerySampleDto;
+import com.isssr.ticketing_system.entity.auto_generated.enumeration.SampleResolution;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Storico dei risultati delle query schedulate (tabelle create da QuerySampleSchema).
+ * <p>
+ * Ogni esecuzione registra un campione in memoria; ogni query.sample.flush-interval ms i campioni vengono scritti in
+ * query_sample con INSERT a blocchi di query.sample.batch-size righe. Se la scrittura fallisce i campioni restano in
+ * memoria (al più query.sample.max-buffered, poi vengono scartati i più vecchi) e vengono riscritti al flush
+ * successivo; quelli rimasti in memoria oltre query.sample.retention.raw giorni vengono scartati.
+ * <p>
+ * Ogni query.sample.rollup-interval ms i campioni vengono riassunti per minuto, i minuti per ora e le ore per giorno
+ * (giorni del fuso orario del DB), ricalcolando dall'ultimo riepilogo salvato o, se il nodo ha scritto nel frattempo
+ * campioni più vecchi (ad esempio rimasti in memoria durante un errore del DB), dal bucket del più vecchio; i campioni
+ * e i riepiloghi più vecchi di query.sample.retention.* giorni vengono cancellati. Le operazioni sono idempotenti,
+ * quindi possono essere eseguite da più nodi del cluster.
+ */
+@Component
+public class QuerySampleStore implements MeterBinder {
+
+    private static final String UPSERT_ROLLUP = "insert into query_sample_rollup " +
+            "(query_id, resolution, bucket, sample_count, value_sum, value_min, value_max) ";
+
+    private static final String ON_CONFLICT = " on conflict (query_id, resolution, bucket) do update set " +
+            "sample_count = excluded.sample_count, value_sum = excluded.value_sum, " +
+            "value_min = excluded.value_min, value_max = excluded.value_max";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // campioni non ancora scritti, dal più vecchio; protetti dal lock su buffer
+    private final Deque<Sample> buffer = new ArrayDeque<>();
+
+    // blocco tolto dal buffer e in scrittura, letto da average() insieme al buffer; protetto dal lock su buffer
+    private List<Sample> writing = Collections.emptyList();
+
+    // serializza le scritture (flush) e le cancellazioni (deleteSamples); non serve per leggere
+    private final Object flushLock = new Object();
+
+    // istante del campione più vecchio scritto dopo l'ultimo calcolo dei riepiloghi
+    private final AtomicReference<Instant> oldestWritten = new AtomicReference<>();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Value("${query.sample.flush-interval}")
+    private long flushInterval;
+
+    @Value("${query.sample.batch-size}")
+    private int batchSize;
+
+    @Value("${query.sample.max-buffered}")
+    private int maxBuffered;
+
+    @Value("${query.sample.retention.raw}")
+    private int rawRetention;
+
+    @Value("${query.sample.retention.minute}")
+    private int minuteRetention;
+
+    @Value("${query.sample.retention.hour}")
+    private int hourRetention;
+
+    @Value("${query.sample.retention.day}")
+    private int dayRetention;
+
+    @Autowired
+    public QuerySampleStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void record(Long queryId, BigInteger value) {
+        Sample sample = new Sample(queryId, Instant.now(), new BigDecimal(value));
+        synchronized (buffer) {
+            if (buffer.size() >= maxBuffered) {
+                buffer.pollFirst();
+                dropped.incrementAndGet();
+            }
+            buffer.addLast(sample);
+        }
+    }
+
+    /**
+     * @return media degli ultimi samples campioni della query, compresi quelli non ancora scritti, o null se la query
+     * non ha campioni
+     */
+    public BigDecimal average(Long queryId, int samples) {
+        List<Sample> recent = new ArrayList<>(samples);
+        synchronized (buffer) {
+            Iterator<Sample> iterator = buffer.descendingIterator();
+            while (iterator.hasNext() && recent.size() < samples) {
+                Sample sample = iterator.next();
+                if (sample.queryId.equals(queryId))
+                    recent.add(sample);
+            }
+            for (int i = writing.size() - 1; i >= 0 && recent.size() < samples; i--)
+                if (writing.get(i).queryId.equals(queryId))
+                    recent.add(writing.get(i));
+        }
+
+        if (recent.size() < samples) {
+            //NB: il blocco in scrittura può essere già stato salvato, e gli altri nodi possono aver scritto campioni
+            // più recenti di quelli in memoria: i campioni letti sono uniti a quelli in memoria per istante
+            Set<Instant> inMemory = new HashSet<>();
+            for (Sample sample : recent)
+                inMemory.add(sample.sampledAt);
+            jdbcTemplate.query("select sampled_at, value from query_sample where query_id = ? " +
+                    "order by sampled_at desc limit ?", resultSet -> {
+                Instant sampledAt = resultSet.getTimestamp(1).toInstant();
+                if (!inMemory.contains(sampledAt))
+                    recent.add(new Sample(queryId, sampledAt, resultSet.getBigDecimal(2)));
+            }, queryId, samples);
+            recent.sort(Comparator.comparing((Sample sample) -> sample.sampledAt).reversed());
+        }
+
+        if (recent.isEmpty())
+            return null;
+        int count = Math.min(samples, recent.size());
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < count; i++)
+            sum = sum.add(recent.get(i).value);
+        return sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+    }
+
+    /**
+     * @return campioni (RAW) o riepiloghi della query con timestamp in [from, to), in ordine di tempo
+     */
+    public List<QuerySampleDto> getSamples(Long queryId, SampleResolution resolution, Instant from, Instant to) {
+        if (resolution == SampleResolution.RAW)
+            return jdbcTemplate.query("select sampled_at, value from query_sample " +
+                            "where query_id = ? and sampled_at >= ? and sampled_at < ? order by sampled_at",
+                    (rs, rowNum) -> {
+                        BigDecimal value = rs.getBigDecimal(2);
+                        return new QuerySampleDto(rs.getTimestamp(1).toInstant(), 1, value, value, value);
+                    },
+                    queryId, Timestamp.from(from), Timestamp.from(to));
+
+        return jdbcTemplate.query("select bucket, sample_count, value_sum, value_min, value_max from query_sample_rollup " +
+                        "where query_id = ? and resolution = ? and bucket >= ? and bucket < ? order by bucket",
+                (rs, rowNum) -> {
+                    long count = rs.getLong(2);
+                    return new QuerySampleDto(rs.getTimestamp(1).toInstant(), count,
+                            rs.getBigDecimal(3).divide(BigDecimal.valueOf(count), MathContext.DECIMAL64),
+                            rs.getBigDecimal(4), rs.getBigDecimal(5));
+                },
+                queryId, resolution.getUnit(), Timestamp.from(from), Timestamp.from(to));
+    }
+
+    /**
+     * Scrive i campioni in memoria.
+     */
+    @Scheduled(initialDelayString = "${query.sample.flush-interval}", fixedDelayString = "${query.sample.flush-interval}")
+    @PreDestroy
+    public void flush() {
+        synchronized (flushLock) {
+            List<Sample> batch;
+            while (!(batch = drain()).isEmpty()) {
+                //NB: i campioni più vecchi della retention dei campioni non verrebbero più riassunti correttamente (i
+                // campioni vicini sono già stati cancellati) e verrebbero cancellati al prossimo calcolo: sono scartati
+                Instant expired = Instant.now().minus(rawRetention, ChronoUnit.DAYS);
+                List<Object[]> rows = new ArrayList<>(batch.size());
+                Instant oldest = null;
+                for (Sample sample : batch) {
+                    if (sample.sampledAt.isBefore(expired)) {
+                        dropped.incrementAndGet();
+                        continue;
+                    }
+                    rows.add(new Object[]{sample.queryId, Timestamp.from(sample.sampledAt), sample.value});
+                    if (oldest == null || sample.sampledAt.isBefore(oldest))
+                        oldest = sample.sampledAt;
+                }
+                if (rows.isEmpty())
+                    continue;
+                try {
+                    jdbcTemplate.batchUpdate("insert into query_sample (query_id, sampled_at, value) values (?, ?, ?)", rows);
+                } catch (DataAccessException e) {
+                    System.out.println("Query samples: " + batch.size() + " samples not written (" + e.getMessage() + ")");
+                    restore(batch);
+                    return;
+                }
+                oldestWritten.accumulateAndGet(oldest, QuerySampleStore::earliest);
+            }
+        }
+    }
+
+    private static Instant earliest(Instant current, Instant value) {
+        return current == null || value.isBefore(current) ? value : current;
+    }
+
+    private List<Sample> drain() {
+        synchronized (buffer) {
+            List<Sample> batch = new ArrayList<>(Math.min(batchSize, buffer.size()));
+            while (batch.size() < batchSize && !buffer.isEmpty())
+                batch.add(buffer.pollFirst());
+            writing = batch;
+            return batch;
+        }
+    }
+
+    private void restore(List<Sample> batch) {
+        synchronized (buffer) {
+            writing = Collections.emptyList();
+            //NB: i campioni tornano in testa al buffer, prima di quelli registrati durante la scrittura
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (buffer.size() < maxBuffered)
+                    buffer.addFirst(batch.get(i));
+                else
+                    dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Calcola i riepiloghi per minuto, ora e giorno e cancella campioni e riepiloghi scaduti.
+     */
+    @Scheduled(initialDelayString = "${query.sample.rollup-interval}", fixedDelayString = "${query.sample.rollup-interval}")
+    public void rollup() {
+        Instant written = oldestWritten.getAndSet(null);
+        try {
+            rollup(SampleResolution.MINUTE, SampleResolution.RAW, written);
+            rollup(SampleResolution.HOUR, SampleResolution.MINUTE, written);
+            rollup(SampleResolution.DAY, SampleResolution.HOUR, written);
+
+            int deleted = jdbcTemplate.update("delete from query_sample where sampled_at < now() - ? * interval '1 day'",
+                    rawRetention);
+            deleted += deleteExpiredRollups(SampleResolution.MINUTE, minuteRetention);
+            deleted += deleteExpiredRollups(SampleResolution.HOUR, hourRetention);
+            deleted += deleteExpiredRollups(SampleResolution.DAY, dayRetention);
+            if (deleted > 0)
+                System.out.println("Query samples: " + deleted + " expired samples and rollups deleted");
+        } catch (DataAccessException e) {
+            System.out.println("Error during query sample rollup");
+            e.printStackTrace();
+            // i bucket dei campioni scritti vengono ricalcolati al prossimo tentativo
+            if (written != null)
+                oldestWritten.accumulateAndGet(written, QuerySampleStore::earliest);
+        }
+    }
+
+    /**
+     * Riassume nei bucket di resolution i dati di source a partire dall'ultimo bucket salvato (ricalcolato, perché
+     * può essere stato salvato prima di ricevere tutti i campioni) o dal bucket di written, se precedente e ancora
+     * dentro la retention dei campioni, fino all'ultimo bucket concluso. Il ritardo di due flush-interval lascia ai nodi il tempo di scrivere i campioni del
+     * bucket.
+     *
+     * @param written istante del campione più vecchio scritto dal nodo dopo l'ultimo calcolo; null se nessuno
+     */
+    private void rollup(SampleResolution resolution, SampleResolution source, Instant written) {
+        String unit = "'" + resolution.getUnit() + "'";
+        List<Object> args = new ArrayList<>(3);
+        String from = "coalesce((select max(bucket) from query_sample_rollup where resolution = " + unit + "), '-infinity')";
+        if (written != null) {
+            // non prima del primo bucket completo dopo la retention dei campioni, i cui campioni sono tutti presenti
+            from = "greatest(least(" + from + ", date_trunc(" + unit + ", cast(? as timestamptz))), " +
+                    "date_trunc(" + unit + ", now() - ? * interval '1 day') + interval '1 " + resolution.getUnit() + "')";
+            args.add(Timestamp.from(written));
+            args.add(rawRetention);
+        }
+        String to = "date_trunc(" + unit + ", now() - ? * interval '1 millisecond')";
+        args.add(2 * flushInterval);
+
+        String select;
+        if (source == SampleResolution.RAW)
+            select = "select query_id, " + unit + ", date_trunc(" + unit + ", sampled_at), " +
+                    "count(*), sum(value), min(value), max(value) from query_sample " +
+                    "where sampled_at >= " + from + " and sampled_at < " + to;
+        else
+            select = "select query_id, " + unit + ", date_trunc(" + unit + ", bucket), " +
+                    "sum(sample_count), sum(value_sum), min(value_min), max(value_max) from query_sample_rollup " +
+                    "where resolution = '" + source.getUnit() + "' and bucket >= " + from + " and bucket < " + to;
+
+        jdbcTemplate.update(UPSERT_ROLLUP + select + " group by query_id, 3" + ON_CONFLICT, args.toArray());
+    }
+
+    private int deleteExpiredRollups(SampleResolution resolution, int retentionDays) {
+        return jdbcTemplate.update("delete from query_sample_rollup where resolution = ? " +
+                "and bucket < now() - ? * interval '1 day'", resolution.getUnit(), retentionDays);
+    }
+
+    /**
+     * Cancella lo storico di una query eliminata.
+     */
+    public void deleteSamples(Long queryId) {
+        synchronized (flushLock) {
+            synchronized (buffer) {
+                buffer.removeIf(sample -> sample.queryId.equals(queryId));
+            }
+            jdbcTemplate.update("delete from query_sample where query_id = ?", queryId);
+            jdbcTemplate.update("delete from query_sample_rollup where query_id = ?", queryId);
+        }
+    }
+
+    private int buffered() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("query.sample.buffered", this, QuerySampleStore::buffered)
+                .description("Campioni delle query schedulate non ancora scritti")
+                .register(registry);
+        FunctionCounter.builder("query.sample.dropped", dropped, AtomicLong::get)
+                .description("Campioni delle query schedulate scartati perché il buffer era pieno o perché più vecchi della retention")
+                .register(registry);
+    }
+
+    private static final class Sample {
+        private final Long queryId;
+        private final Instant sampledAt;
+        private final BigDecimal value;
+
+        private Sample(Long queryId, Instant sampledAt, BigDecimal value) {
+            this.queryId = queryId;
+            this.sampledAt = sampledAt;
+            this.value = value;
+        }
+    }
+}
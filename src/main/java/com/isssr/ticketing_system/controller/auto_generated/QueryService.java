@@ -23,6 +23,7 @@ import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import javax.validation.constraints.NotNull;
+import java.math.BigInteger;
 import java.text.ParseException;
 import java.util.List;
 
@@ -41,6 +42,9 @@ public class QueryService {
     @Autowired
     private DBConnectionInfoController dbConnectionInfoController;
 
+    @Autowired
+    private QuerySampleStore querySampleStore;
+
     /**
      * general create query
      **/
@@ -134,6 +138,13 @@ public class QueryService {
         return this.queryRepository.getOne(id);
     }
 
+    /**
+     * Aggiorna solo l'ultimo valore della query, senza riscrivere l'intera entity.
+     */
+    public void updateLastValue(Long id, BigInteger lastValue) {
+        this.queryRepository.updateLastValue(id, lastValue);
+    }
+
     @Transactional
     public boolean existsById(Long id) {
         return this.queryRepository.existsById(id);
@@ -172,6 +183,8 @@ public class QueryService {
 
                 this.queryRepository.deleteById(id);
 
+                this.querySampleStore.deleteSamples(id);
+
             } else {
 
                 query.delete();
@@ -320,6 +333,19 @@ public class QueryService {
 
     }
 
+    /**
+     * @return la query inizializzata, o null se non esiste o non è attiva
+     */
+    @Transactional
+    public Query findActiveQuery(Long id) {
+
+        return this.queryRepository.findById(id)
+                .filter(Query::isActive)
+                .map(this::initializeAndUnproxyQuery)
+                .orElse(null);
+
+    }
+
     public Query initializeAndUnproxyQuery(Query entity) {
 
         if (entity == null) {
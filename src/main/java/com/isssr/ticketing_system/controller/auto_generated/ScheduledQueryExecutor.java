@@ -0,0 +1,205 @@
+package com.isssr.ticketing_system.controller.auto_generated;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Esegue le query schedulate in parallelo su un pool di query.executor.threads thread, indipendente dal thread pool di
+ * Quartz: il job Quartz consegna la query all'executor e termina; il CompletableFuture restituito da {@link #submit}
+ * permette a chi lo desidera di attendere la fine dell'esecuzione.
+ * <p>
+ * Per ogni DB di destinazione al più query.executor.max-per-database query sono in esecuzione contemporaneamente; le
+ * altre attendono in una coda del DB (al più query.executor.max-queued-per-database) senza occupare thread, quindi un
+ * DB lento rallenta solo le proprie query. Una query ancora in coda o in esecuzione non viene accodata di nuovo, quindi
+ * sul nodo due esecuzioni della stessa query non si sovrappongono.
+ * <p>
+ * Per ogni query (tag query = id) sono registrati latenza (scheduled.query.latency), attesa in coda
+ * (scheduled.query.queue.wait), errori (scheduled.query.failures) ed esecuzioni saltate (scheduled.query.skipped).
+ */
+@Component
+public class ScheduledQueryExecutor implements MeterBinder {
+
+    private static final String DEFAULT_DATABASE = "default";
+
+    /**
+     * Esecuzione di una query; un'eccezione viene contata come errore della query.
+     */
+    public interface QueryTask {
+        void run() throws Exception;
+    }
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final ConcurrentMap<String, Target> targets = new ConcurrentHashMap<>();
+    private final Set<Long> pendingQueries = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private ThreadPoolExecutor executor;
+
+    @Value("${query.executor.threads}")
+    private int threads;
+
+    @Value("${query.executor.max-per-database}")
+    private int maxPerDatabase;
+
+    @Value("${query.executor.max-queued-per-database}")
+    private int maxQueuedPerDatabase;
+
+    @Autowired
+    public ScheduledQueryExecutor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        //NB: la coda non si riempie mai oltre il numero di DB * max-per-database, perché le query in attesa restano
+        // nelle code dei DB
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "scheduled-query-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Accoda l'esecuzione della query.
+     *
+     * @param queryId  id della query, usato per le metriche e per non sovrapporre due esecuzioni
+     * @param database url del DB su cui viene eseguita la query, null per il DB di default
+     * @return completato alla fine dell'esecuzione: true se la query è stata eseguita senza errori, false se è fallita
+     * o non è stata accodata (ancora in coda o in esecuzione, o coda del DB piena)
+     */
+    public CompletableFuture<Boolean> submit(Long queryId, String database, QueryTask task) {
+        if (!pendingQueries.add(queryId)) {
+            skipped(queryId, "previous execution still pending");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        Target target = targets.computeIfAbsent(database != null ? database : DEFAULT_DATABASE, key -> new Target());
+        Execution execution = new Execution(queryId, task, target);
+        Execution toStart;
+        synchronized (target) {
+            if (target.running < maxPerDatabase) {
+                target.running++;
+                toStart = execution;
+            } else if (target.queued.size() < maxQueuedPerDatabase) {
+                target.queued.addLast(execution);
+                toStart = null;
+            } else {
+                pendingQueries.remove(queryId);
+                skipped(queryId, "database queue full");
+                return CompletableFuture.completedFuture(false);
+            }
+        }
+        if (toStart != null)
+            executor.execute(toStart);
+        return execution.result;
+    }
+
+    private void skipped(Long queryId, String reason) {
+        System.out.println("ScheduledQuery: " + queryId + " --> SKIPPED (" + reason + ")");
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null)
+            Counter.builder("scheduled.query.skipped").tag("query", String.valueOf(queryId))
+                    .description("Esecuzioni della query schedulata saltate").register(registry).increment();
+    }
+
+    private final class Execution implements Runnable {
+        private final Long queryId;
+        private final QueryTask task;
+        private final Target target;
+        private final long submitted = System.nanoTime();
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Execution(Long queryId, QueryTask task, Target target) {
+            this.queryId = queryId;
+            this.task = task;
+            this.target = target;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            boolean failed = false;
+            running.incrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                failed = true;
+                System.out.println("ScheduledQuery: " + queryId + " --> FAILED (" + e.getMessage() + ")");
+            } finally {
+                running.decrementAndGet();
+                pendingQueries.remove(queryId);
+                record(start, failed);
+                startNext();
+                result.complete(!failed);
+            }
+        }
+
+        private void record(long start, boolean failed) {
+            MeterRegistry registry = meterRegistry.getIfAvailable();
+            if (registry == null)
+                return;
+            String tag = String.valueOf(queryId);
+            Timer.builder("scheduled.query.queue.wait").tag("query", tag)
+                    .description("Attesa in coda della query schedulata").register(registry)
+                    .record(start - submitted, TimeUnit.NANOSECONDS);
+            Timer.builder("scheduled.query.latency").tag("query", tag)
+                    .description("Durata dell'esecuzione della query schedulata").register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (failed)
+                Counter.builder("scheduled.query.failures").tag("query", tag)
+                        .description("Esecuzioni fallite della query schedulata").register(registry).increment();
+        }
+
+        private void startNext() {
+            Execution next;
+            synchronized (target) {
+                next = target.queued.pollFirst();
+                if (next == null)
+                    target.running--;
+            }
+            if (next != null)
+                executor.execute(next);
+        }
+    }
+
+    private static final class Target {
+        // entrambi protetti dal lock sul Target
+        private int running;
+        private final Deque<Execution> queued = new ArrayDeque<>();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("scheduled.query.running", running, AtomicInteger::get)
+                .description("Query schedulate in esecuzione")
+                .register(registry);
+        Gauge.builder("scheduled.query.pending", pendingQueries, Set::size)
+                .description("Query schedulate in coda o in esecuzione")
+                .register(registry);
+    }
+}
@@ -0,0 +1,285 @@
+package com.isssr.ticketing_system.controller.db_connection;
+
+import com.isssr.ticketing_system.entity.db_connection.DBConnectionModeEnum;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool di connessioni (HikariCP) verso i DB su cui vengono eseguite le query schedulate e lette le tabelle, uno per
+ * url, utente, password, driver e modalità. In precedenza ogni esecuzione creava un DriverManagerDataSource e quindi
+ * una nuova connessione fisica (con handshake e autenticazione); ora le connessioni sono riusate.
+ * <p>
+ * Ogni pool ha al più query.datasource.max-pool-size connessioni e chiude quelle inutilizzate da più di
+ * query.datasource.idle-timeout ms; i pool non usati da query.datasource.pool-eviction ms e senza connessioni in uso
+ * vengono chiusi e rimossi, tranne quello in sola lettura del DB di default. Le connessioni in modalità
+ * READ_ONLY_MODE sono aperte in sola lettura.
+ * <p>
+ * Le metriche di ogni pool sono esposte da HikariCP come hikaricp.connections.*{pool=query-...}; il numero di pool
+ * aperti come query.datasource.pools. Il nome del pool è assegnato una sola volta per DB e modalità, quindi un pool
+ * ricreato dopo la chiusura riusa le metriche di quello chiuso (Micrometer 1.0 non permette di rimuoverle e HikariCP
+ * non le rimuove alla chiusura): il numero di metriche dipende dai DB usati, non da quante volte i pool vengono
+ * ricreati.
+ */
+@Component
+public class DataSourceRegistry implements MeterBinder {
+
+    private static final String POOL_NAME_PREFIX = "query-";
+
+    private final ConcurrentMap<Key, Pool> pools = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, String> poolNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PoolMetrics> poolMetrics = new ConcurrentHashMap<>();
+    private final AtomicInteger poolCounter = new AtomicInteger();
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${spring.datasource.url}")
+    private String defaultUrl;
+
+    @Value("${spring.datasource.driver-class-name}")
+    private String defaultDriver;
+
+    @Value("${root.mode.username}")
+    private String rootUsername;
+
+    @Value("${root.mode.password}")
+    private String rootPassword;
+
+    @Value("${readOnly.mode.username}")
+    private String readOnlyUsername;
+
+    @Value("${readOnly.mode.password}")
+    private String readOnlyPassword;
+
+    @Value("${query.datasource.max-pool-size}")
+    private int maxPoolSize;
+
+    @Value("${query.datasource.connection-timeout}")
+    private long connectionTimeout;
+
+    @Value("${query.datasource.idle-timeout}")
+    private long idleTimeout;
+
+    @Value("${query.datasource.pool-eviction}")
+    private long poolEviction;
+
+    @Autowired
+    public DataSourceRegistry(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * I parametri null sono sostituiti con quelli del DB di default: url e driver di spring.datasource, utente e
+     * password della modalità (root.mode.* o readOnly.mode.*).
+     *
+     * @return il pool per il DB e la modalità indicati, creato alla prima richiesta
+     */
+    public DataSource getDataSource(String dbURL, String dbUsername, String dbPassword, String dbDriver,
+                                    DBConnectionModeEnum mode) {
+        boolean readOnly = mode == DBConnectionModeEnum.READ_ONLY_MODE;
+        Key key = new Key(dbURL != null ? dbURL : defaultUrl,
+                dbUsername != null ? dbUsername : readOnly ? readOnlyUsername : rootUsername,
+                dbPassword != null ? dbPassword : readOnly ? readOnlyPassword : rootPassword,
+                dbDriver != null ? dbDriver : defaultDriver,
+                mode,
+                dbURL == null || dbURL.equals(defaultUrl));
+
+        //NB: lastUsed è aggiornato dentro compute, atomicamente rispetto alla rimozione di evictIdlePools, quindi il
+        // pool restituito non è mai uno appena chiuso per inattività
+        Pool pool = pools.compute(key, (k, current) -> {
+            Pool result = current != null ? current : createPool(k);
+            result.lastUsed = System.currentTimeMillis();
+            return result;
+        });
+        return pool.dataSource;
+    }
+
+    private Pool createPool(Key key) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolNames.computeIfAbsent(key, k -> POOL_NAME_PREFIX + poolCounter.incrementAndGet()));
+        config.setJdbcUrl(key.url);
+        config.setUsername(key.username);
+        config.setPassword(key.password);
+        config.setDriverClassName(key.driver);
+        config.setReadOnly(key.mode == DBConnectionModeEnum.READ_ONLY_MODE);
+        config.setMaximumPoolSize(maxPoolSize);
+        config.setMinimumIdle(0);
+        config.setIdleTimeout(idleTimeout);
+        config.setConnectionTimeout(connectionTimeout);
+        //NB: il pool viene creato anche se il DB non è raggiungibile; l'errore arriva a chi chiede la connessione,
+        // come con DriverManagerDataSource
+        config.setInitializationFailTimeout(-1);
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null)
+            config.setMetricsTrackerFactory(new ReusableMetricsTrackerFactory(registry));
+
+        System.out.println("Query datasource " + config.getPoolName() + " created for " + key);
+        return new Pool(new HikariDataSource(config));
+    }
+
+    /**
+     * Chiude i pool non usati da almeno query.datasource.pool-eviction ms che non hanno connessioni in uso.
+     */
+    @Scheduled(initialDelayString = "${query.datasource.pool-eviction}", fixedDelayString = "${query.datasource.pool-eviction}")
+    public void evictIdlePools() {
+        long threshold = System.currentTimeMillis() - poolEviction;
+        for (Key key : pools.keySet()) {
+            if (key.isDefaultReadOnly())
+                continue;
+            Pool[] evicted = new Pool[1];
+            pools.computeIfPresent(key, (k, pool) -> {
+                if (pool.lastUsed > threshold)
+                    return pool;
+                HikariPoolMXBean bean = pool.dataSource.getHikariPoolMXBean();
+                if (bean != null && bean.getActiveConnections() > 0)
+                    return pool;
+                evicted[0] = pool;
+                return null;
+            });
+            if (evicted[0] != null) {
+                System.out.println("Query datasource " + evicted[0].dataSource.getPoolName() + " closed after inactivity");
+                evicted[0].dataSource.close();
+                PoolMetrics metrics = poolMetrics.get(evicted[0].dataSource.getPoolName());
+                if (metrics != null)
+                    metrics.stats.current = null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        for (Pool pool : pools.values())
+            pool.dataSource.close();
+        pools.clear();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("query.datasource.pools", pools, Map::size)
+                .description("Pool di connessioni aperti per le query schedulate")
+                .register(registry);
+    }
+
+    /**
+     * Crea il tracker di HikariCP una sola volta per nome di pool; i pool successivi con lo stesso nome lo riusano,
+     * con le statistiche del pool corrente.
+     */
+    private final class ReusableMetricsTrackerFactory implements MetricsTrackerFactory {
+        private final MeterRegistry registry;
+
+        private ReusableMetricsTrackerFactory(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public IMetricsTracker create(String poolName, PoolStats poolStats) {
+            PoolMetrics metrics = poolMetrics.computeIfAbsent(poolName, name -> new PoolMetrics(name, registry));
+            metrics.stats.current = poolStats;
+            return metrics.tracker;
+        }
+    }
+
+    private static final class PoolMetrics {
+        //NB: i gauge di Micrometer tengono un riferimento debole all'oggetto osservato: stats resta referenziato qui
+        private final CurrentPoolStats stats = new CurrentPoolStats();
+        private final IMetricsTracker tracker;
+
+        private PoolMetrics(String poolName, MeterRegistry registry) {
+            tracker = new MicrometerMetricsTrackerFactory(registry).create(poolName, stats);
+        }
+    }
+
+    /**
+     * Statistiche del pool aperto con un certo nome; zero se il pool è stato chiuso.
+     */
+    private static final class CurrentPoolStats extends PoolStats {
+        private volatile PoolStats current;
+
+        private CurrentPoolStats() {
+            super(0);
+        }
+
+        @Override
+        protected void update() {
+            PoolStats stats = current;
+            totalConnections = stats == null ? 0 : stats.getTotalConnections();
+            idleConnections = stats == null ? 0 : stats.getIdleConnections();
+            activeConnections = stats == null ? 0 : stats.getActiveConnections();
+            pendingThreads = stats == null ? 0 : stats.getPendingThreads();
+        }
+    }
+
+    private static final class Pool {
+        private final HikariDataSource dataSource;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        private Pool(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    private static final class Key {
+        private final String url;
+        private final String username;
+        private final String password;
+        private final String driver;
+        private final DBConnectionModeEnum mode;
+        private final boolean defaultDatabase;
+
+        private Key(String url, String username, String password, String driver, DBConnectionModeEnum mode,
+                    boolean defaultDatabase) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.driver = driver;
+            this.mode = mode;
+            this.defaultDatabase = defaultDatabase;
+        }
+
+        private boolean isDefaultReadOnly() {
+            return defaultDatabase && mode == DBConnectionModeEnum.READ_ONLY_MODE;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return mode == key.mode && defaultDatabase == key.defaultDatabase && Objects.equals(url, key.url)
+                    && Objects.equals(username, key.username) && Objects.equals(password, key.password)
+                    && Objects.equals(driver, key.driver);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, username, password, driver, mode, defaultDatabase);
+        }
+
+        //NB: la password non viene scritta nei log
+        @Override
+        public String toString() {
+            return mode + " " + username + "@" + url;
+        }
+    }
+}
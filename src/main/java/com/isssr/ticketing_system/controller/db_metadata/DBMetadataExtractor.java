@@ -41,11 +41,11 @@ public class DBMetadataExtractor {
         //if dbUrl is null, this is a default request
         boolean isDefault = dbURL == null;
 
-        Connection connection = this.userSwitchController.getReadOnlyConnection(dbURL, dbUsername, dbPassword, dbDriver);
-
-        List<String> tableNames = this.customRepositoryImp.getTablesMetadata(connection, isDefault);
-
-        connection.close();
+        //NB: la connessione torna al pool anche in caso di errore
+        List<String> tableNames;
+        try (Connection connection = this.userSwitchController.getReadOnlyConnection(dbURL, dbUsername, dbPassword, dbDriver)) {
+            tableNames = this.customRepositoryImp.getTablesMetadata(connection, isDefault);
+        }
 
         List<Table> tables = new ArrayList<>();
 
@@ -64,11 +64,10 @@ public class DBMetadataExtractor {
 
     public List<Column> getTableColumns(String tableName, @Nullable String dbURL, @Nullable String dbUsername, @Nullable String dbPassword, @Nullable String dbDriver) throws SQLException {
 
-        Connection connection = this.userSwitchController.getReadOnlyConnection(dbURL, dbUsername, dbPassword, dbDriver);
-
-        List<String> columnNames = this.customRepositoryImp.getTableColumnsMetadata(connection, tableName);
-
-        connection.close();
+        List<String> columnNames;
+        try (Connection connection = this.userSwitchController.getReadOnlyConnection(dbURL, dbUsername, dbPassword, dbDriver)) {
+            columnNames = this.customRepositoryImp.getTableColumnsMetadata(connection, tableName);
+        }
 
         List<Column> columns = new ArrayList<>();
 
@@ -3,6 +3,7 @@ package com.isssr.ticketing_system.dao;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.Connection;
@@ -17,7 +18,9 @@ import java.util.List;
 @Transactional(readOnly = true)
 public class CustomRepositoryImp implements CustomRepository {
 
+    //NB: la query usa il DataSource del jdbcTemplate, non serve una transazione (e una connessione) sul DB di default
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public <T> T customQuery(String query, JdbcTemplate jdbcTemplate, Class<T> returnType) throws DataAccessException {
 
         return jdbcTemplate.queryForObject(query, returnType);
@@ -0,0 +1,127 @@
+package com.isssr.ticketing_system.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converte in colonne di tipo date le date che in precedenza erano salvate come stringhe "giorno/mese/anno" con il
+ * mese da 0 a 11: ticket.date_pending_start, ticket.date_execution_start, ticket.date_end, gantt_day.day e
+ * tickets_per_day.gantt_day_day. Hibernate crea le colonne nuove già di tipo date ma non cambia il tipo di quelle
+ * esistenti, quindi la conversione viene fatta qui con ALTER COLUMN ... TYPE date USING, una sola volta: le colonne
+ * già convertite vengono saltate.
+ * <p>
+ * Le stringhe sono interpretate come faceva GregorianCalendar (mese oltre 11 = dicembre, giorni oltre la fine del mese
+ * nei mesi successivi), quindi ogni data mantiene il valore usato finora; date_pending_start è presa da
+ * pending_start_timestamp quando c'è, perché le stringhe scritte dai cambi di stato avevano i minuti al posto del mese.
+ * I valori non interpretabili diventano null (le righe di gantt_day e tickets_per_day con giorno non valido vengono
+ * cancellate). La conversione è eseguita in una sola transazione, prima degli altri listener di avvio che leggono
+ * queste colonne (ad esempio TeamCalendarIndex).
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class DateColumnSchema implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final String PARSE_FUNCTION = "create or replace function legacy_date(value text) returns date as $$ " +
+            "declare parts text[] := regexp_split_to_array(trim(value), '[/ :-]'); begin " +
+            "if length(parts[1]) = 4 then " +
+            "return make_date(parts[1]::int, least(greatest(parts[2]::int, 1), 12), 1) + (parts[3]::int - 1); " +
+            "end if; " +
+            "return make_date(parts[3]::int, least(greatest(parts[2]::int, 0), 11) + 1, 1) + (parts[1]::int - 1); " +
+            "exception when others then return null; " +
+            "end $$ language plpgsql immutable";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public DateColumnSchema(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        boolean ticketDates = needsConversion("ticket", "date_pending_start")
+                || needsConversion("ticket", "date_execution_start") || needsConversion("ticket", "date_end");
+        boolean ganttDays = needsConversion("gantt_day", "day") || needsConversion("tickets_per_day", "gantt_day_day");
+        if (!ticketDates && !ganttDays)
+            return;
+
+        long start = System.currentTimeMillis();
+        try {
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.execute(PARSE_FUNCTION);
+                convert("ticket", "date_pending_start", "case when date_pending_start is null then null " +
+                        "else coalesce(cast(pending_start_timestamp as date), legacy_date(date_pending_start)) end");
+                convert("ticket", "date_execution_start", "legacy_date(date_execution_start)");
+                convert("ticket", "date_end", "legacy_date(date_end)");
+                if (ganttDays)
+                    convertGanttDays();
+                jdbcTemplate.execute("drop function legacy_date(text)");
+                return null;
+            });
+            System.out.println("Date columns converted to type date in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (DataAccessException e) {
+            System.out.println("Error during date columns conversion");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * gantt_day.day fa parte della chiave primaria ed è referenziata da tickets_per_day.gantt_day_day: le foreign key
+     * sono rimosse, le due colonne convertite e le foreign key ricreate con la stessa definizione.
+     */
+    private void convertGanttDays() {
+        List<Map<String, Object>> foreignKeys = jdbcTemplate.queryForList("select conname, pg_get_constraintdef(oid) " +
+                "as definition from pg_constraint where conrelid = 'tickets_per_day'::regclass " +
+                "and confrelid = 'gantt_day'::regclass and contype = 'f'");
+        for (Map<String, Object> foreignKey : foreignKeys)
+            jdbcTemplate.execute("alter table tickets_per_day drop constraint \"" + foreignKey.get("conname") + "\"");
+
+        int deleted = 0;
+        if (needsConversion("tickets_per_day", "gantt_day_day"))
+            deleted += jdbcTemplate.update("delete from tickets_per_day where legacy_date(gantt_day_day) is null");
+        if (needsConversion("gantt_day", "day")) {
+            deleted += jdbcTemplate.update("delete from tickets_per_day tpd using gantt_day g " +
+                    "where g.day = tpd.gantt_day_day and g.team_name = tpd.gantt_day_team_name and legacy_date(g.day) is null");
+            deleted += jdbcTemplate.update("delete from gantt_day where legacy_date(day) is null");
+        }
+        if (deleted > 0)
+            System.out.println("Date columns: cancellate " + deleted + " righe del Gantt con giorno non valido");
+
+        convert("gantt_day", "day", "legacy_date(day)");
+        convert("tickets_per_day", "gantt_day_day", "legacy_date(gantt_day_day)");
+
+        for (Map<String, Object> foreignKey : foreignKeys)
+            jdbcTemplate.execute("alter table tickets_per_day add constraint \"" + foreignKey.get("conname") + "\" " +
+                    foreignKey.get("definition"));
+    }
+
+    private void convert(String table, String column, String expression) {
+        if (!needsConversion(table, column))
+            return;
+        Integer invalid = jdbcTemplate.queryForObject("select count(*) from " + table + " where " + column +
+                " is not null and " + expression + " is null", Integer.class);
+        if (invalid != null && invalid > 0)
+            System.out.println("Date columns: " + invalid + " valori non validi in " + table + "." + column +
+                    " diventano null");
+        jdbcTemplate.execute("alter table " + table + " alter column " + column + " type date using " + expression);
+    }
+
+    private boolean needsConversion(String table, String column) {
+        List<String> types = jdbcTemplate.queryForList("select data_type from information_schema.columns " +
+                "where table_schema = current_schema() and table_name = ? and column_name = ?", String.class, table, column);
+        return !types.isEmpty() && !"date".equals(types.get(0));
+    }
+}
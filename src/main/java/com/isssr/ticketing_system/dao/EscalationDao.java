@@ -15,4 +15,7 @@ public interface EscalationDao extends JpaRepository<Escalation, Long> {
 
     @Query("select e.time from Escalation e where e = :escalation")
     Double getTimeByEscalation(@Param("escalation") Escalation escalation);
+
+    @Query("select e from Escalation e where e.ID = (select max(l.ID) from Escalation l)")
+    Escalation findLastEscalation();
 }
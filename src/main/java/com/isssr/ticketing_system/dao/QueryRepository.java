@@ -4,8 +4,11 @@ import com.isssr.ticketing_system.entity.auto_generated.query.Query;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigInteger;
 import java.util.List;
 
 @Repository
@@ -16,4 +19,10 @@ public interface QueryRepository extends JpaRepository<Query, Long> {
     Page<Query> findAllByDeleted(boolean isDeleted, Pageable pageable);
 
     List<Query> findAllByActive(boolean isActive);
+
+    @Modifying
+    @Transactional
+    @org.springframework.data.jpa.repository.Query(value = "update db_scheduled_count_query set last_value = ?2 where id = ?1",
+            nativeQuery = true)
+    int updateLastValue(Long id, BigInteger lastValue);
 }
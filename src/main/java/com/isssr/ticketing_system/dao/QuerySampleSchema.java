@@ -0,0 +1,55 @@
+package com.isssr.ticketing_system.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prepara le tabelle dello storico dei risultati delle query schedulate (vedi QuerySampleStore):
+ * <ul>
+ *     <li>query_sample: un campione (query, istante, valore) per ogni esecuzione, solo in append; l'indice BRIN su
+ *     sampled_at occupa poche pagine e serve ai calcoli dei riepiloghi e alle cancellazioni per data</li>
+ *     <li>query_sample_rollup: numero, somma, minimo e massimo dei campioni per query e per minuto, ora o giorno;
+ *     l'indice su (resolution, bucket) serve a trovare l'ultimo riepilogo calcolato e i riepiloghi scaduti</li>
+ * </ul>
+ * Le tabelle non sono mappate come entity. Tutte le istruzioni sono idempotenti e vengono eseguite ad ogni avvio.
+ */
+@Component
+public class QuerySampleSchema implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public QuerySampleSchema(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        try {
+            jdbcTemplate.execute("create table if not exists query_sample (" +
+                    "query_id bigint not null, " +
+                    "sampled_at timestamptz not null, " +
+                    "value numeric not null)");
+            jdbcTemplate.execute("create index if not exists idx_query_sample_query on query_sample (query_id, sampled_at)");
+            jdbcTemplate.execute("create index if not exists idx_query_sample_time on query_sample using brin (sampled_at)");
+
+            jdbcTemplate.execute("create table if not exists query_sample_rollup (" +
+                    "query_id bigint not null, " +
+                    "resolution varchar(6) not null, " +
+                    "bucket timestamptz not null, " +
+                    "sample_count integer not null, " +
+                    "value_sum numeric not null, " +
+                    "value_min numeric not null, " +
+                    "value_max numeric not null, " +
+                    "primary key (query_id, resolution, bucket))");
+            jdbcTemplate.execute("create index if not exists idx_query_sample_rollup_bucket on query_sample_rollup (resolution, bucket)");
+        } catch (DataAccessException e) {
+            System.out.println("Error during query sample tables setup");
+            e.printStackTrace();
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.isssr.ticketing_system.dao;
 import com.isssr.ticketing_system.entity.StateMachine;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Optional;
+
 public interface StateMachineDao extends JpaRepository<StateMachine,Long> {
 
+    Optional<StateMachine> findByName(String name);
 
 }
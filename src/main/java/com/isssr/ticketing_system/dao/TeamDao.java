@@ -29,6 +29,13 @@ public interface TeamDao extends JpaRepository<Team, Long> {
     @Query("select t.teamMembers from Team t where t = :team")
     List<User> findTeamMembersByTeam(@Param("team") Team team);
 
+    @Query("select size(t.teamMembers) from Team t where t.id = :teamId")
+    int countTeamMembers(@Param("teamId") Long teamId);
+
+    //NB: solo l'id, senza caricare le relazioni del team
+    @Query("select t.id from Team t where t.name = :name")
+    Optional<Long> findIdByName(@Param("name") String name);
+
     //List<Team> findAllByTeamMembersContainsOrTeamLeaderOrTeamCoordinator(Set<User> teamMembers, User teamLeader, User teamCoordinator);
 
 
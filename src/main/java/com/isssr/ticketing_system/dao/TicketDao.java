@@ -1,5 +1,6 @@
 package com.isssr.ticketing_system.dao;
 
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
 import com.isssr.ticketing_system.entity.Team;
 import com.isssr.ticketing_system.entity.Ticket;
 import com.isssr.ticketing_system.entity.User;
@@ -7,15 +8,44 @@ import com.isssr.ticketing_system.enumeration.TicketStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Repository
-public interface TicketDao extends JpaRepository<Ticket, Long> {
+public interface TicketDao extends JpaRepository<Ticket, Long>, TicketDaoCustom {
+
+    /**
+     * Select delle liste di ticket: costruisce direttamente i TicketSummaryDto con una sola query,
+     * senza caricare le relazioni EAGER (dependentTickets, regressionTicketsGenerator) dei ticket.
+     */
+    String SUMMARY_SELECT = "select new com.isssr.ticketing_system.dto.TicketSummaryDto(" +
+            "t.id, t.title, t.description, t.category, t.creationTimestamp, t.currentTicketStatus, " +
+            "t.customerPriority, t.teamPriority, t.actualPriority, t.actualType, t.visibility, t.difficulty, " +
+            "t.datePendingStart, t.dateExecutionStart, t.durationEstimation, t.dateEnd, t.countDependencies, " +
+            "t.escalationKey, st.id, tm.name, " +
+            "a.id, a.firstName, a.lastName, a.email, a.username, " +
+            "c.id, c.firstName, c.lastName, c.email, c.username, " +
+            "tg.id, tg.name, tg.version, tg.description) " +
+            "from Ticket t left join t.sameTicket st left join t.team tm left join t.assignee a " +
+            "left join t.customer c left join t.target tg ";
+
+    /**
+     * Parte della chiave di escalation (Ticket.computeEscalationKey) che dipende dalle priorità, in SQL con i pesi
+     * :customerPriority e :teamPriority; va sottratto :time * (inizio del pending in ore).
+     */
+    String ESCALATION_KEY_PRIORITIES = ":customerPriority * (case customer_priority when 1 then 3 when 2 then 5 else 0 end) + " +
+            ":teamPriority * (case team_priority when 1 then 3 when 2 then 5 else 0 end)";
 
     //Page<Ticket> findAll(Pageable pageable);
 
@@ -37,22 +67,14 @@ public interface TicketDao extends JpaRepository<Ticket, Long> {
 
     List<Ticket> findBySameTicket(Ticket ticket);
 
-    //Ticket for create a dependency relation
-    List<Ticket> findDistinctByDependentTicketsIsNotNullOrCountDependenciesIsNotNull();
     //Ticket for create a regression relation
     List<Ticket> findDistinctByCurrentTicketStatus(TicketStatus currentTicketStatus);
-    List<Ticket> findDistinctByCurrentTicketStatusOrderByRankDesc(TicketStatus currentTicketStatus);
-    List<Ticket> findDistinctBySameTicketIsNullAndDependentTicketsIsNullAndCountDependenciesIsNullAndRegressionTicketsGeneratorIsNull();
 
     @Query("select t.id from Ticket t where t= :ticket")
         //NB: @Query permette di specificare una query in JPQL (query SQL sulle classi java). E' possibile specificare dei parametri
         // di input della query con ":parametro", e richiamati nell'input del metodo del DAO con la notazione @Param("parametro") ClasseParametro nomeParametro
     Long getIDByTicket(@Param("ticket") Ticket ticket);
 
-    List<Ticket> findDistinctBySameTicketIsNull();
-
-    List<Ticket> findDistinctBySameTicketIsNullAndRegressionTicketsGeneratorIsNull();
-
 
     //-----------------------------GANTT-------------------------------
     List<Ticket> findByTeamAndCurrentTicketStatusIsNotAndCurrentTicketStatusIsNot(Team team, TicketStatus currentTicketStatus, TicketStatus currentTicketStatus2);
@@ -65,12 +87,6 @@ public interface TicketDao extends JpaRepository<Ticket, Long> {
 
     List<Ticket> findDistinctByDependentTicketsContains(Set<Ticket> dependentTickets);
 
-    @Query("select t.durationEstimation from Ticket t where t = :ticket")
-    Integer findDurationByTicket(@Param("ticket") Ticket ticket);
-
-    @Query("select t.dateExecutionStart from Ticket t where t = :ticket")
-    String findDateExecutionByTicket(@Param("ticket") Ticket ticket);
-
     /**
      * To search the ticket opened by a specified user username
      *
@@ -101,8 +117,119 @@ public interface TicketDao extends JpaRepository<Ticket, Long> {
 
 
 
-    @Query("select count (distinct t.id) from Ticket t where t.currentTicketStatus = ?1")
-    Integer numberOfStatusTickets(TicketStatus status);
+    /* Conteggio dei ticket non cancellati per ogni combinazione di stato, priorità del customer, categoria, target
+     * e team, in una sola query: i totali per dimensione sono ricavati sommando le righe (TicketStatsController). */
+    @Query("select t.currentTicketStatus, t.customerPriority, t.category, t.target.id, t.team.id, count(t) " +
+            "from Ticket t where t.deleted = false " +
+            "group by t.currentTicketStatus, t.customerPriority, t.category, t.target.id, t.team.id")
+    List<Object[]> countTicketsGroupByStatsKeys();
 
     Ticket findTicketById(Long id);
+
+    /**
+     * @param ids id dei ticket, ad esempio un cammino restituito da TicketGraphIndex
+     * @return i ticket esistenti, nello stesso ordine degli id
+     */
+    default List<Ticket> findAllByIdOrdered(long[] ids) {
+        List<Long> idList = new ArrayList<>(ids.length);
+        for (long id : ids)
+            idList.add(id);
+        Map<Long, Ticket> tickets = new HashMap<>();
+        for (Ticket ticket : findAllById(idList))
+            tickets.put(ticket.getId(), ticket);
+
+        List<Ticket> ordered = new ArrayList<>(ids.length);
+        for (Long id : idList)
+            if (tickets.containsKey(id))
+                ordered.add(tickets.get(id));
+        return ordered;
+    }
+
+    //-----------------------------LISTE (TicketSummaryDto)-------------------------------
+
+    @Query(SUMMARY_SELECT + "where t.currentTicketStatus = :ticketStatus order by t.id")
+    List<TicketSummaryDto> findSummariesByStatus(@Param("ticketStatus") TicketStatus ticketStatus);
+
+    @Query(SUMMARY_SELECT + "where t.currentTicketStatus = :ticketStatus and t.escalationKey is not null " +
+            "order by t.escalationKey desc, t.id")
+    List<TicketSummaryDto> findSummariesByStatusOrderByEscalationKeyDesc(@Param("ticketStatus") TicketStatus ticketStatus);
+
+    @Query(SUMMARY_SELECT + "where st.id = :sameTicketId order by t.id")
+    List<TicketSummaryDto> findSummariesBySameTicket(@Param("sameTicketId") Long sameTicketId);
+
+    /**
+     * Ticket in esecuzione in almeno un giorno tra from e to (compresi): iniziati entro to e con la fine stimata
+     * (inizio esecuzione + durata stimata, un giorno se manca) dopo from. Il filtro sull'inizio usa
+     * idx_ticket_execution_start.
+     */
+    @Query(SUMMARY_SELECT + "where t.currentTicketStatus = com.isssr.ticketing_system.enumeration.TicketStatus.EXECUTION " +
+            "and t.dateExecutionStart <= :to " +
+            "and cast(t.dateExecutionStart + coalesce(t.durationEstimation, 1) as LocalDate) > :from " +
+            "order by t.dateExecutionStart, t.id")
+    List<TicketSummaryDto> findSummariesExecutingBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Query(SUMMARY_SELECT + "where tm.id = :teamId and t.currentTicketStatus not in (:excludedStatuses) order by t.id")
+    List<TicketSummaryDto> findSummariesByTeamAndStatusNotIn(@Param("teamId") Long teamId,
+                                                            @Param("excludedStatuses") Collection<TicketStatus> excludedStatuses);
+
+    /**
+     * Ticket da cui dipende il ticket indicato (cioè che lo contengono tra i dependentTickets), esclusi quelli chiusi.
+     */
+    @Query(SUMMARY_SELECT + "where exists (select d.id from Ticket f join f.dependentTickets d where f = t and d.id = :ticketId) " +
+            "and t.currentTicketStatus <> com.isssr.ticketing_system.enumeration.TicketStatus.CLOSED order by t.id")
+    List<TicketSummaryDto> findOpenFatherSummaries(@Param("ticketId") Long ticketId);
+
+    /**
+     * Ricalcola in un'unica UPDATE la chiave di escalation di tutti i ticket in PENDING, senza caricare le entità.
+     * Le priorità sono salvate come ordinale (LOW=0, MEDIUM=1, HIGH=2) e mappate come in Ticket.ticketPriorityToInteger;
+     * l'ingresso in PENDING è letto come in Ticket.getPendingStartHours: pending_start_timestamp, altrimenti l'inizio
+     * del giorno date_pending_start (ticket precedenti), altrimenti l'istante corrente.
+     *
+     * @param customerPriority peso della priorità del customer
+     * @param teamPriority peso della priorità del team
+     * @param time peso del tempo di attesa (in ore)
+     * @return numero di ticket aggiornati
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "update ticket set escalation_key = " + ESCALATION_KEY_PRIORITIES + " - " +
+            ":time * extract(epoch from coalesce(cast(pending_start_timestamp as timestamptz), " +
+            "cast(date_pending_start as timestamptz), now())) / 3600 " +
+            "where current_ticket_status = 'PENDING'", nativeQuery = true)
+    int updatePendingEscalationKeys(@Param("customerPriority") Double customerPriority,
+                                    @Param("teamPriority") Double teamPriority,
+                                    @Param("time") Double time);
+
+    /**
+     * Unisce le classi di equivalenza indicate: ogni classe è identificata dal suo classId o, per un ticket non ancora
+     * equivalente ad altri, dal suo id.
+     *
+     * @param classes classi da unire
+     * @param classId classe risultante (id del ticket primario)
+     * @return numero di ticket aggiornati
+     */
+    @Modifying
+    @Transactional
+    @Query("update Ticket t set t.classId = :classId where t.id in :classes or t.classId in :classes")
+    int mergeEquivalenceClasses(@Param("classes") Collection<Long> classes, @Param("classId") Long classId);
+
+    @Modifying
+    @Transactional
+    @Query("update Ticket t set t.classId = null where t.classId in :classIds")
+    int clearEquivalenceClasses(@Param("classIds") Collection<Long> classIds);
+
+    /**
+     * Dati necessari a calcolare la transizione di stato dei ticket indicati, senza caricarli.
+     *
+     * @return righe (id, stateMachineId, nome della macchina a stati del target, stato corrente)
+     */
+    @Query("select t.id, t.stateMachineId, tg.stateMachineName, t.currentTicketStatus from Ticket t left join t.target tg " +
+            "where t.id in :ids and t.deleted = false")
+    List<Object[]> findTransitionKeysByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * @return coppie (id, titolo) dei ticket indicati, ordinate per id
+     */
+    @Query("select t.id, t.title from Ticket t where t.id in :ids order by t.id")
+    List<Object[]> findIdAndTitleByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,110 @@
+package com.isssr.ticketing_system.dao;
+
+import com.isssr.ticketing_system.dto.TicketDependencyDto;
+import com.isssr.ticketing_system.dto.TicketSearchResultDto;
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
+import com.isssr.ticketing_system.enumeration.TicketRelationCandidates;
+import com.isssr.ticketing_system.enumeration.TicketSortKey;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import com.isssr.ticketing_system.utils.KeysetCursor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Query sui Ticket non esprimibili con i metodi derivati di Spring Data.
+ */
+public interface TicketDaoCustom {
+
+    /**
+     * Pagina di ticket con paginazione keyset: restituisce i ticket che seguono il cursore nell'ordinamento
+     * (chiave, id), senza contare né scorrere le righe precedenti.
+     *
+     * @param sortKey chiave di ordinamento
+     * @param descending true per ordinamento decrescente
+     * @param after cursore dell'ultimo ticket della pagina precedente, null per la prima pagina
+     * @param customerId se non null, solo i ticket di questo customer
+     * @param assigneeId se non null, solo i ticket assegnati a questo utente
+     * @param visibleToUserId se non null, abilita il filtro Hibernate "user_filter" per questo utente
+     * @param size numero massimo di ticket restituiti (nessun limite se minore o uguale a zero)
+     * @return i ticket della pagina
+     */
+    List<TicketSummaryDto> findTicketsPage(TicketSortKey sortKey, boolean descending, KeysetCursor after,
+                                           Long customerId, Long assigneeId, Long visibleToUserId, int size);
+
+    /**
+     * Pagina di ticket candidati a una relazione, in ordine di id con paginazione keyset. La condizione della lista
+     * usa le colonne di riepilogo delle relazioni, quindi la query legge l'indice parziale della lista senza join
+     * sulle tabelle delle relazioni.
+     *
+     * @param candidates lista di candidati
+     * @param title se non null, solo i ticket il cui titolo contiene questo testo (senza distinzione tra maiuscole e
+     *              minuscole), per l'autocompletamento
+     * @param after cursore dell'ultimo ticket della pagina precedente, null per la prima pagina
+     * @param size numero massimo di ticket restituiti
+     * @return i ticket della pagina
+     */
+    List<TicketSummaryDto> findRelationCandidates(TicketRelationCandidates candidates, String title, KeysetCursor after,
+                                                  int size);
+
+    /**
+     * Ricerca full-text su titolo e descrizione (colonna search_vector, vedi {@link TicketSearchSchema}).
+     * I risultati sono ordinati per rilevanza (ts_rank) decrescente e poi per id, con paginazione keyset.
+     *
+     * @param configuration configurazione full-text di PostgreSQL con cui interpretare il testo cercato
+     * @param text testo da cercare
+     * @param status se non null, solo i ticket in questo stato
+     * @param targetId se non null, solo i ticket di questo target
+     * @param teamId se non null, solo i ticket assegnati a questo team
+     * @param customerId se non null, solo i ticket di questo customer
+     * @param visibleToUserId se non null, solo i ticket visibili a questo utente (aperti da lui)
+     * @param after cursore (rank, id) dell'ultimo risultato della pagina precedente, null per la prima pagina
+     * @param size numero massimo di risultati
+     * @return i risultati della pagina, con titolo e descrizione evidenziati
+     */
+    List<TicketSearchResultDto> searchTickets(String configuration, String text, TicketStatus status, Long targetId,
+                                              Long teamId, Long customerId, Long visibleToUserId,
+                                              KeysetCursor after, int size);
+
+    /**
+     * Tutti i ticket non cancellati in ordine di id, letti dal DB a blocchi di fetchSize righe tramite un cursore:
+     * le righe già lette non restano in memoria. Deve essere invocato all'interno di una transazione, che deve
+     * restare aperta finché lo stream non viene consumato e chiuso.
+     *
+     * @param visibleToUserId se non null, abilita il filtro Hibernate "user_filter" per questo utente
+     * @param fetchSize numero di righe lette dal DB ad ogni round trip
+     * @return stream dei ticket, da chiudere dopo l'uso
+     */
+    Stream<TicketSummaryDto> streamTickets(Long visibleToUserId, int fetchSize);
+
+    /**
+     * Chiusura transitiva delle dipendenze di un ticket, calcolata dal DB con una query ricorsiva (WITH RECURSIVE).
+     * I ticket sono ordinati per distanza dal ticket di partenza e poi per id, con paginazione keyset.
+     *
+     * @param ticketId ticket di partenza (escluso dal risultato)
+     * @param ancestors true per i ticket da cui ticketId dipende, false per quelli che dipendono da ticketId
+     * @param maxDepth distanza massima dal ticket di partenza
+     * @param after cursore (depth, id) dell'ultimo ticket della pagina precedente, null per la prima pagina
+     * @param size numero massimo di ticket restituiti
+     * @return i ticket non cancellati della pagina, con la relativa distanza
+     */
+    List<TicketDependencyDto> findDependencyClosure(Long ticketId, boolean ancestors, int maxDepth,
+                                                    KeysetCursor after, int size);
+
+    /**
+     * Porta i ticket indicati dallo stato from allo stato to con un solo UPDATE: stato, TTL, stateCounter, la data
+     * legata al nuovo stato e, per PENDING, inizio del pending e chiave di escalation. I ticket che non si trovano più
+     * nello stato from non vengono modificati. I ticket aggiornati già caricati nel persistence context vengono
+     * ricaricati, quindi chi li ha in mano vede il nuovo stato.
+     *
+     * @param date giorno del cambio di stato, salvato nella colonna date_* legata al nuovo stato
+     * @param timestamp istante del cambio di stato
+     * @param escalationWeights pesi [customerPriority, teamPriority, time] dell'escalation, usati solo se to è PENDING
+     * @return gli id dei ticket aggiornati
+     */
+    List<Long> transitionTickets(Collection<Long> ticketIds, TicketStatus from, TicketStatus to, LocalDate date,
+                                 Instant timestamp, Double[] escalationWeights);
+}
@@ -0,0 +1,321 @@
+package com.isssr.ticketing_system.dao;
+
+import com.isssr.ticketing_system.dto.TicketDependencyDto;
+import com.isssr.ticketing_system.dto.TicketSearchResultDto;
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
+import com.isssr.ticketing_system.entity.Ticket;
+import com.isssr.ticketing_system.enumeration.TicketRelationCandidates;
+import com.isssr.ticketing_system.enumeration.TicketSortKey;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import com.isssr.ticketing_system.utils.KeysetCursor;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+//Implementazione delle query custom di TicketDao
+@Transactional(readOnly = true)
+public class TicketDaoImpl implements TicketDaoCustom {
+
+    private static final String USER_FILTER = "user_filter";
+
+    //NB: i marcatori non sono HTML, quindi titolo e descrizione (scritti dagli utenti o arrivati via mail) non
+    // diventano markup eseguibile nel client
+    private static final String HEADLINE_OPTIONS = "StartSel=" + TicketSearchResultDto.HIGHLIGHT_START +
+            ", StopSel=" + TicketSearchResultDto.HIGHLIGHT_STOP + ", MaxWords=35, MinWords=15, MaxFragments=2";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<TicketSummaryDto> findTicketsPage(TicketSortKey sortKey, boolean descending, KeysetCursor after,
+                                                  Long customerId, Long assigneeId, Long visibleToUserId, int size) {
+        String key = "t." + sortKey.getAttribute();
+        String comparison = descending ? " < " : " > ";
+        String direction = descending ? " desc" : " asc";
+
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (customerId != null) {
+            conditions.add("c.id = :customerId");
+            parameters.put("customerId", customerId);
+        }
+        if (assigneeId != null) {
+            conditions.add("a.id = :assigneeId");
+            parameters.put("assigneeId", assigneeId);
+        }
+        if (sortKey == TicketSortKey.RANK) {
+            //NB: solo i ticket in coda hanno un rank (vedi indice idx_ticket_escalation_key)
+            conditions.add("t.currentTicketStatus = :pending");
+            parameters.put("pending", TicketStatus.PENDING);
+        }
+        if (sortKey != TicketSortKey.ID)
+            conditions.add(key + " is not null");
+
+        if (after != null) {
+            if (sortKey == TicketSortKey.ID) {
+                conditions.add("t.id" + comparison + ":afterId");
+            } else {
+                conditions.add("(" + key + comparison + ":afterValue or (" + key + " = :afterValue and t.id" + comparison + ":afterId))");
+                parameters.put("afterValue", sortKey.parseValue(after.getValue()));
+            }
+            parameters.put("afterId", after.getId());
+        }
+
+        StringBuilder jpql = new StringBuilder(TicketDao.SUMMARY_SELECT);
+        if (!conditions.isEmpty())
+            jpql.append("where ").append(String.join(" and ", conditions));
+        jpql.append(" order by ");
+        if (sortKey != TicketSortKey.ID)
+            jpql.append(key).append(direction).append(", ");
+        jpql.append("t.id").append(direction);
+
+        Session session = entityManager.unwrap(Session.class);
+        if (visibleToUserId != null)
+            session.enableFilter(USER_FILTER).setParameter("user_id", visibleToUserId);
+
+        try {
+            TypedQuery<TicketSummaryDto> query = entityManager.createQuery(jpql.toString(), TicketSummaryDto.class);
+            parameters.forEach(query::setParameter);
+            if (size > 0)
+                query.setMaxResults(size);
+            return query.getResultList();
+        } finally {
+            if (visibleToUserId != null)
+                session.disableFilter(USER_FILTER);
+        }
+    }
+
+    @Override
+    public List<TicketSummaryDto> findRelationCandidates(TicketRelationCandidates candidates, String title,
+                                                         KeysetCursor after, int size) {
+        StringBuilder jpql = new StringBuilder(TicketDao.SUMMARY_SELECT).append("where ").append(candidates.getCondition());
+        if (title != null)
+            jpql.append(" and lower(t.title) like :title escape '!'");
+        if (after != null)
+            jpql.append(" and t.id > :afterId");
+        jpql.append(" order by t.id");
+
+        TypedQuery<TicketSummaryDto> query = entityManager.createQuery(jpql.toString(), TicketSummaryDto.class);
+        if (title != null)
+            query.setParameter("title", "%" + escapeLike(title.toLowerCase()) + "%");
+        if (after != null)
+            query.setParameter("afterId", after.getId());
+        return query.setMaxResults(size).getResultList();
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    @Override
+    public List<TicketSearchResultDto> searchTickets(String configuration, String text, TicketStatus status, Long targetId,
+                                                     Long teamId, Long customerId, Long visibleToUserId,
+                                                     KeysetCursor after, int size) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("configuration", configuration);
+        parameters.put("text", text);
+
+        if (status != null) {
+            conditions.add("t.current_ticket_status = :status");
+            parameters.put("status", status.name());
+        }
+        if (targetId != null) {
+            conditions.add("t.target_id = :targetId");
+            parameters.put("targetId", targetId);
+        }
+        if (teamId != null) {
+            conditions.add("t.team_name = :teamId");
+            parameters.put("teamId", teamId);
+        }
+        if (customerId != null) {
+            conditions.add("t.customer_id = :customerId");
+            parameters.put("customerId", customerId);
+        }
+        if (visibleToUserId != null) {
+            conditions.add("t.customer_id = :visibleToUserId");
+            parameters.put("visibleToUserId", visibleToUserId);
+        }
+
+        String keyset = "";
+        if (after != null) {
+            keyset = "where m.rank < cast(:afterRank as real) or (m.rank = cast(:afterRank as real) and m.id > :afterId) ";
+            parameters.put("afterRank", Float.valueOf(after.getValue()));
+            parameters.put("afterId", after.getId());
+        }
+
+        //NB: la query nativa non passa dai filtri Hibernate, quindi deleted e visibilità sono espliciti.
+        // ts_headline è costoso e viene calcolato solo sui ticket della pagina (subquery con limit)
+        String sql = "select p.id, p.rank, " +
+                "ts_headline(cast(:configuration as regconfig), coalesce(p.title, ''), p.query, '" + HEADLINE_OPTIONS + "') as title_highlight, " +
+                "ts_headline(cast(:configuration as regconfig), coalesce(p.description, ''), p.query, '" + HEADLINE_OPTIONS + "') as description_highlight " +
+                "from (select m.* from (" +
+                "select t.id, t.title, t.description, q.query, ts_rank(t.search_vector, q.query) as rank " +
+                "from ticket t cross join plainto_tsquery(cast(:configuration as regconfig), :text) as q(query) " +
+                "where t.search_vector @@ q.query and t.deleted = false" +
+                (conditions.isEmpty() ? "" : " and " + String.join(" and ", conditions)) +
+                ") m " + keyset + "order by m.rank desc, m.id limit :size) p " +
+                "order by p.rank desc, p.id";
+        parameters.put("size", size);
+
+        Query query = entityManager.createNativeQuery(sql);
+        parameters.forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        if (rows.isEmpty())
+            return new ArrayList<>();
+
+        List<Long> ids = new ArrayList<>();
+        for (Object[] row : rows)
+            ids.add(((Number) row[0]).longValue());
+
+        Map<Long, TicketSummaryDto> summaries = new HashMap<>();
+        for (TicketSummaryDto summary : entityManager.createQuery(TicketDao.SUMMARY_SELECT + "where t.id in :ids",
+                TicketSummaryDto.class).setParameter("ids", ids).getResultList())
+            summaries.put(summary.getId(), summary);
+
+        List<TicketSearchResultDto> results = new ArrayList<>();
+        for (Object[] row : rows) {
+            TicketSummaryDto summary = summaries.get(((Number) row[0]).longValue());
+            if (summary != null)
+                results.add(new TicketSearchResultDto(summary, ((Number) row[1]).floatValue(), (String) row[2], (String) row[3]));
+        }
+        return results;
+    }
+
+    @Override
+    public Stream<TicketSummaryDto> streamTickets(Long visibleToUserId, int fetchSize) {
+        //NB: il filtro deleted_filter è abilitato solo dentro i metodi di TicketController, quindi è esplicito
+        String jpql = TicketDao.SUMMARY_SELECT + "where t.deleted = false order by t.id";
+
+        Session session = entityManager.unwrap(Session.class);
+        if (visibleToUserId != null)
+            session.enableFilter(USER_FILTER).setParameter("user_id", visibleToUserId);
+
+        try {
+            // il driver PostgreSQL usa un cursore (e rispetta il fetch size) solo all'interno di una transazione.
+            // La query viene eseguita da stream(), quindi il filtro può essere disabilitato subito dopo
+            return session.createQuery(jpql, TicketSummaryDto.class)
+                    .setFetchSize(fetchSize)
+                    .setReadOnly(true)
+                    .stream();
+        } finally {
+            if (visibleToUserId != null)
+                session.disableFilter(USER_FILTER);
+        }
+    }
+
+    @Override
+    public List<TicketDependencyDto> findDependencyClosure(Long ticketId, boolean ancestors, int maxDepth,
+                                                           KeysetCursor after, int size) {
+        // dependent_tickets(ticket_id, dependent_tickets_id): dependent_tickets_id dipende da ticket_id
+        String from = ancestors ? "dependent_tickets_id" : "ticket_id";
+        String to = ancestors ? "ticket_id" : "dependent_tickets_id";
+
+        //NB: union (e non union all) scarta le coppie (ticket, distanza) già trovate, quindi nei grafi con molti
+        // cammini tra gli stessi ticket le righe intermedie sono al più (ticket raggiungibili) * maxDepth
+        String sql = "with recursive closure(id, depth) as (" +
+                "select d." + to + ", 1 from dependent_tickets d where d." + from + " = :ticketId " +
+                "union " +
+                "select d." + to + ", c.depth + 1 from dependent_tickets d join closure c on d." + from + " = c.id " +
+                "where c.depth < :maxDepth) " +
+                "select t.id, t.title, t.current_ticket_status, m.depth, t.duration_estimation, t.date_execution_start " +
+                "from (select id, min(depth) as depth from closure group by id) m join ticket t on t.id = m.id " +
+                "where t.deleted = false and t.id <> :ticketId" +
+                (after == null ? "" : " and (m.depth > :afterDepth or (m.depth = :afterDepth and t.id > :afterId))") +
+                " order by m.depth, t.id limit :size";
+
+        Query query = entityManager.createNativeQuery(sql)
+                .setParameter("ticketId", ticketId)
+                .setParameter("maxDepth", maxDepth)
+                .setParameter("size", size);
+        if (after != null) {
+            query.setParameter("afterDepth", Integer.valueOf(after.getValue()));
+            query.setParameter("afterId", after.getId());
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = query.getResultList();
+        List<TicketDependencyDto> closure = new ArrayList<>(rows.size());
+        for (Object[] row : rows)
+            closure.add(new TicketDependencyDto(((Number) row[0]).longValue(), (String) row[1],
+                    row[2] == null ? null : TicketStatus.valueOf((String) row[2]), ((Number) row[3]).intValue(),
+                    row[4] == null ? null : ((Number) row[4]).intValue(),
+                    row[5] == null ? null : ((Date) row[5]).toLocalDate()));
+        return closure;
+    }
+
+    @Override
+    @Transactional
+    public List<Long> transitionTickets(Collection<Long> ticketIds, TicketStatus from, TicketStatus to, LocalDate date,
+                                        Instant timestamp, Double[] escalationWeights) {
+        if (ticketIds.isEmpty())
+            return new ArrayList<>();
+
+        StringBuilder sql = new StringBuilder("update ticket set current_ticket_status = :to, ttl = :ttl, " +
+                "state_counter = :stateCounter");
+        if (to == TicketStatus.PENDING)
+            sql.append(", date_pending_start = :date, pending_start_timestamp = :timestamp, escalation_key = ")
+                    .append(TicketDao.ESCALATION_KEY_PRIORITIES)
+                    .append(" - :time * extract(epoch from cast(:timestamp as timestamptz)) / 3600");
+        else if (to == TicketStatus.EXECUTION)
+            sql.append(", date_execution_start = :date");
+        else if (to == TicketStatus.CLOSED)
+            sql.append(", date_end = :date");
+        sql.append(" where id in :ids and current_ticket_status = :from and deleted = false returning id");
+
+        //NB: prima della query nativa Hibernate esegue il flush delle modifiche pendenti sui ticket
+        Query query = entityManager.createNativeQuery(sql.toString())
+                .setParameter("to", to.name())
+                .setParameter("ttl", to.getTTL())
+                .setParameter("stateCounter", timestamp.toEpochMilli())
+                .setParameter("ids", ticketIds)
+                .setParameter("from", from.name());
+        if (to == TicketStatus.PENDING || to == TicketStatus.EXECUTION || to == TicketStatus.CLOSED)
+            query.setParameter("date", Date.valueOf(date));
+        if (to == TicketStatus.PENDING) {
+            query.setParameter("timestamp", Timestamp.from(timestamp))
+                    .setParameter("customerPriority", escalationWeights[0])
+                    .setParameter("teamPriority", escalationWeights[1])
+                    .setParameter("time", escalationWeights[2]);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Number> rows = query.getResultList();
+        List<Long> updated = new ArrayList<>(rows.size());
+        for (Number id : rows)
+            updated.add(id.longValue());
+
+        refreshManaged(updated);
+        return updated;
+    }
+
+    // ricarica dal DB i ticket già presenti nel persistence context, senza caricare gli altri
+    private void refreshManaged(Collection<Long> ticketIds) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Ticket.class);
+        for (Long id : ticketIds) {
+            Object managed = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+            if (managed != null)
+                entityManager.refresh(managed);
+        }
+    }
+}
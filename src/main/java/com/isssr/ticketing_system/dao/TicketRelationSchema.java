@@ -0,0 +1,87 @@
+package com.isssr.ticketing_system.dao;
+
+import com.isssr.ticketing_system.enumeration.TicketRelationCandidates;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prepara le colonne di riepilogo delle relazioni dei ticket, usate dalle liste dei ticket candidati alle relazioni
+ * (vedi {@link TicketRelationCandidates}):
+ * <ul>
+ *     <li>colonne ticket.has_dependent_tickets e ticket.has_regression_tickets (Ticket.hasDependentTickets,
+ *     Ticket.hasRegressionTickets)</li>
+ *     <li>trigger sulle tabelle dependent_tickets e regression_tickets_generator che aggiornano le colonne ad ogni
+ *     INSERT, UPDATE e DELETE, quindi restano allineate su tutti i percorsi di scrittura delle relazioni
+ *     (addDependentTicket, addRegression, salvataggio delle collezioni da parte di Hibernate, ...)</li>
+ *     <li>un indice parziale su id per ogni lista di candidati, con lo stesso predicato della lista</li>
+ * </ul>
+ * Tutte le istruzioni sono idempotenti e vengono eseguite ad ogni avvio; le colonne vengono ricalcolate solo per i
+ * ticket in cui non sono allineate alle tabelle delle relazioni.
+ */
+@Component
+public class TicketRelationSchema implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final String FUNCTION_BODY = " declare flag text := tg_argv[0]; begin " +
+            "if tg_op <> 'DELETE' then " +
+            "execute format('update ticket set %I = true where id = $1 and not %I', flag, flag) using new.ticket_id; " +
+            "end if; " +
+            "if tg_op <> 'INSERT' then " +
+            "execute format('update ticket set %I = false where id = $1 and %I and not exists " +
+            "(select 1 from %I where ticket_id = $1)', flag, flag, tg_table_name) using old.ticket_id; " +
+            "end if; " +
+            "return null; end ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public TicketRelationSchema(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        try {
+            jdbcTemplate.execute("create or replace function ticket_relation_flag_update() returns trigger as $$" +
+                    FUNCTION_BODY + "$$ language plpgsql");
+            int updatedTickets = setupFlag("dependent_tickets", "has_dependent_tickets") +
+                    setupFlag("regression_tickets_generator", "has_regression_tickets");
+
+            //NB: i predicati sono quelli delle condizioni JPQL di TicketRelationCandidates, tradotte in SQL
+            createIndex("idx_ticket_no_relation", "same_ticket is null and count_dependencies is null " +
+                    "and has_dependent_tickets = false and has_regression_tickets = false");
+            createIndex("idx_ticket_dependency", "has_dependent_tickets = true or count_dependencies is not null");
+            createIndex("idx_ticket_without_same_ticket", "same_ticket is null");
+            createIndex("idx_ticket_without_same_ticket_regression", "same_ticket is null and has_regression_tickets = false");
+
+            if (updatedTickets > 0)
+                System.out.println("Ticket relations: aggiornato il riepilogo delle relazioni di " + updatedTickets + " ticket");
+        } catch (DataAccessException e) {
+            System.out.println("Error during ticket relation flags setup");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Crea la colonna flag e il trigger sulla tabella della relazione, poi allinea la colonna al contenuto della tabella.
+     *
+     * @return numero di ticket la cui colonna è stata corretta
+     */
+    private int setupFlag(String relationTable, String flag) {
+        jdbcTemplate.execute("alter table ticket add column if not exists " + flag + " boolean not null default false");
+        jdbcTemplate.execute("drop trigger if exists " + relationTable + "_flag_trigger on " + relationTable);
+        jdbcTemplate.execute("create trigger " + relationTable + "_flag_trigger " +
+                "after insert or update or delete on " + relationTable + " " +
+                "for each row execute procedure ticket_relation_flag_update('" + flag + "')");
+
+        String exists = "exists (select 1 from " + relationTable + " r where r.ticket_id = t.id)";
+        return jdbcTemplate.update("update ticket t set " + flag + " = " + exists + " where " + flag + " <> " + exists);
+    }
+
+    private void createIndex(String name, String predicate) {
+        jdbcTemplate.execute("create index if not exists " + name + " on ticket (id) where " + predicate);
+    }
+}
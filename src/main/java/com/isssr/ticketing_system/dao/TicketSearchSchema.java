@@ -0,0 +1,74 @@
+package com.isssr.ticketing_system.dao;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Prepara la ricerca full-text sui ticket (vedi {@link TicketDaoCustom#searchTickets}):
+ * <ul>
+ *     <li>colonna ticket.search_vector con il tsvector di titolo (peso A) e descrizione (peso B)</li>
+ *     <li>trigger che ricalcola search_vector ad ogni INSERT e ad ogni UPDATE di title o description, quindi l'indice
+ *     resta aggiornato su tutti i percorsi di scrittura (insertTicket, updateById, changeDescription, ...)</li>
+ *     <li>indice GIN su search_vector</li>
+ * </ul>
+ * La colonna non è mappata nell'entity Ticket. Tutte le istruzioni sono idempotenti e vengono eseguite ad ogni avvio.
+ */
+@Component
+public class TicketSearchSchema implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String textSearchConfiguration;
+
+    @Autowired
+    public TicketSearchSchema(JdbcTemplate jdbcTemplate,
+                              @Value("${ticket.search.configuration}") String textSearchConfiguration) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.textSearchConfiguration = textSearchConfiguration;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        try {
+            //NB: la configurazione viene validata dal cast a regconfig prima di essere inserita nel corpo del trigger
+            String configuration = jdbcTemplate.queryForObject("select cast(cast(? as regconfig) as text)",
+                    String.class, textSearchConfiguration);
+            String functionBody = " begin new.search_vector := " +
+                    "setweight(to_tsvector('" + configuration + "', coalesce(new.title, '')), 'A') || " +
+                    "setweight(to_tsvector('" + configuration + "', coalesce(new.description, '')), 'B'); " +
+                    "return new; end ";
+
+            jdbcTemplate.execute("alter table ticket add column if not exists search_vector tsvector");
+
+            List<String> currentBody = jdbcTemplate.queryForList(
+                    "select prosrc from pg_proc where proname = 'ticket_search_vector_update'", String.class);
+            boolean definitionChanged = !currentBody.contains(functionBody);
+
+            jdbcTemplate.execute("create or replace function ticket_search_vector_update() returns trigger as $$" +
+                    functionBody + "$$ language plpgsql");
+            jdbcTemplate.execute("drop trigger if exists ticket_search_vector_trigger on ticket");
+            jdbcTemplate.execute("create trigger ticket_search_vector_trigger " +
+                    "before insert or update of title, description on ticket " +
+                    "for each row execute procedure ticket_search_vector_update()");
+
+            // Il trigger ricalcola search_vector: tutti i ticket se è cambiata la definizione, altrimenti solo quelli mai indicizzati
+            int updatedTickets = jdbcTemplate.update("update ticket set title = title" +
+                    (definitionChanged ? "" : " where search_vector is null"));
+
+            jdbcTemplate.execute("create index if not exists idx_ticket_search_vector on ticket using gin (search_vector)");
+
+            if (updatedTickets > 0)
+                System.out.println("Ticket search: indicizzati " + updatedTickets + " ticket");
+        } catch (DataAccessException e) {
+            System.out.println("Error during ticket search index setup");
+            e.printStackTrace();
+        }
+    }
+}
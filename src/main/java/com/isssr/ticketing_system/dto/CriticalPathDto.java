@@ -0,0 +1,63 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Cammino critico dei ticket aperti di un team. I ticket sono in ordine topologico (ogni ticket dopo i suoi padri);
+ * le date sono scritte nel formato di DateCodec e le fine sono l'ultimo giorno di esecuzione, come lastDay di
+ * GanttSlotDto. criticalPath contiene gli id dei ticket critici, dal primo all'ultimo. */
+@Data
+@NoArgsConstructor
+public class CriticalPathDto {
+
+    private String teamName;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate projectStart;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate projectEnd;
+
+    private List<Long> criticalPath = new ArrayList<>();
+
+    private List<Node> tickets = new ArrayList<>();
+
+    public CriticalPathDto(String teamName, LocalDate projectStart, LocalDate projectEnd) {
+        this.teamName = teamName;
+        this.projectStart = projectStart;
+        this.projectEnd = projectEnd;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Node {
+
+        private Long id;
+
+        private String title;
+
+        private Integer durationEstimation;
+
+        @JsonSerialize(using = DaySerializer.class)
+        private LocalDate earliestStart;
+
+        @JsonSerialize(using = DaySerializer.class)
+        private LocalDate earliestEnd;
+
+        @JsonSerialize(using = DaySerializer.class)
+        private LocalDate latestStart;
+
+        @JsonSerialize(using = DaySerializer.class)
+        private LocalDate latestEnd;
+
+        private Long slack;
+
+        private boolean critical;
+    }
+}
@@ -0,0 +1,41 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/* Primo intervallo di giorni in cui è possibile pianificare un ticket per un team: nessun giorno è pieno e l'intervallo
+ * inizia dopo la fine dei ticket padre non chiusi (dependenciesEnd, null se il ticket non ha padri da attendere).
+ * Le date sono scritte nel formato di DateCodec, quindi firstDay può essere passato direttamente a createGanttInstance. */
+@Data
+@NoArgsConstructor
+public class GanttSlotDto {
+
+    private Long ticketId;
+
+    private String teamName;
+
+    private Integer duration;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate firstDay;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate lastDay;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate dependenciesEnd;
+
+    public GanttSlotDto(Long ticketId, String teamName, Integer duration, LocalDate firstDay, LocalDate lastDay,
+                        LocalDate dependenciesEnd) {
+        this.ticketId = ticketId;
+        this.teamName = teamName;
+        this.duration = duration;
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        this.dependenciesEnd = dependenciesEnd;
+    }
+}
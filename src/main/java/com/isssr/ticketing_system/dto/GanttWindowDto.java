@@ -0,0 +1,57 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/* Pianificazione di un team in un intervallo di giorni (from e to compresi): per ogni giorno l'availability e gli id
+ * dei ticket pianificati; i giorni senza pianificazione hanno availability 0 e nessun ticket. */
+@Data
+@NoArgsConstructor
+public class GanttWindowDto {
+
+    private String teamName;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate from;
+
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate to;
+
+    private List<Day> days;
+
+    //NB: ETag della risposta, calcolato dal contenuto dei giorni (vedi TeamCalendar.Window.contentHash)
+    @JsonIgnore
+    private String etag;
+
+    public GanttWindowDto(String teamName, LocalDate from, LocalDate to, List<Day> days, String etag) {
+        this.teamName = teamName;
+        this.from = from;
+        this.to = to;
+        this.days = days;
+        this.etag = etag;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Day {
+
+        @JsonSerialize(using = DaySerializer.class)
+        private LocalDate day;
+
+        private Double availability;
+
+        private long[] tickets;
+
+        public Day(LocalDate day, Double availability, long[] tickets) {
+            this.day = day;
+            this.availability = availability;
+            this.tickets = tickets;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import com.isssr.ticketing_system.response_entity.JsonViews;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/* Punto dello storico di una query schedulata: un campione (count = 1) o il riepilogo dei campioni di un minuto, di
+ * un'ora o di un giorno che iniziano in timestamp. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuerySampleDto {
+
+    @JsonView(JsonViews.Basic.class)
+    private Instant timestamp;
+
+    @JsonView(JsonViews.Basic.class)
+    private long count;
+
+    @JsonView(JsonViews.Basic.class)
+    private BigDecimal average;
+
+    @JsonView(JsonViews.Basic.class)
+    private BigDecimal min;
+
+    @JsonView(JsonViews.Basic.class)
+    private BigDecimal max;
+}
@@ -0,0 +1,47 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import com.isssr.ticketing_system.response_entity.JsonViews;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/* Ticket raggiunto nella chiusura transitiva delle dipendenze di un altro ticket (antenati o discendenti).
+ * depth è la distanza minima, in numero di dipendenze, dal ticket di partenza (1 = padre o figlio diretto). */
+@Data
+@NoArgsConstructor
+public class TicketDependencyDto {
+
+    @JsonView(JsonViews.IdentifierOnly.class)
+    private Long id;
+
+    @JsonView(JsonViews.Basic.class)
+    private String title;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketStatus currentTicketStatus;
+
+    @JsonView(JsonViews.Basic.class)
+    private Integer depth;
+
+    @JsonView(JsonViews.Basic.class)
+    private Integer durationEstimation;
+
+    @JsonView(JsonViews.Basic.class)
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate dateExecutionStart;
+
+    public TicketDependencyDto(Long id, String title, TicketStatus currentTicketStatus, Integer depth,
+                               Integer durationEstimation, LocalDate dateExecutionStart) {
+        this.id = id;
+        this.title = title;
+        this.currentTicketStatus = currentTicketStatus;
+        this.depth = depth;
+        this.durationEstimation = durationEstimation;
+        this.dateExecutionStart = dateExecutionStart;
+    }
+}
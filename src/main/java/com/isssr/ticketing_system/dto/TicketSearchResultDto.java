@@ -0,0 +1,38 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import com.isssr.ticketing_system.response_entity.JsonViews;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/* Risultato della ricerca full-text sui ticket: il ticket trovato, la rilevanza (ts_rank) e i frammenti di titolo
+ * e descrizione in cui i termini cercati sono racchiusi tra HIGHLIGHT_START e HIGHLIGHT_STOP.
+ * NB: i frammenti sono testo del ticket non modificato, non HTML: il client deve fare l'escape del testo e poi
+ * sostituire i due marcatori con il proprio markup. */
+@Data
+@NoArgsConstructor
+public class TicketSearchResultDto {
+
+    // caratteri di controllo STX ed ETX, che non compaiono nei testi dei ticket e non sono markup
+    public static final String HIGHLIGHT_START = "\u0002";
+    public static final String HIGHLIGHT_STOP = "\u0003";
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketSummaryDto ticket;
+
+    @JsonView(JsonViews.Basic.class)
+    private Float rank;
+
+    @JsonView(JsonViews.Basic.class)
+    private String titleHighlight;
+
+    @JsonView(JsonViews.Basic.class)
+    private String descriptionHighlight;
+
+    public TicketSearchResultDto(TicketSummaryDto ticket, Float rank, String titleHighlight, String descriptionHighlight) {
+        this.ticket = ticket;
+        this.rank = rank;
+        this.titleHighlight = titleHighlight;
+        this.descriptionHighlight = descriptionHighlight;
+    }
+}
@@ -0,0 +1,38 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.annotation.JsonView;
+import com.isssr.ticketing_system.response_entity.JsonViews;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/* Conteggio dei ticket non cancellati per stato, priorità del customer, categoria, target (id) e team (id).
+ * I ticket senza valore per una dimensione sono contati sotto la chiave NONE. */
+@Data
+@NoArgsConstructor
+public class TicketStatsDto {
+
+    @JsonView(JsonViews.Basic.class)
+    private long total;
+
+    @JsonView(JsonViews.Basic.class)
+    private Map<String, Long> byStatus;
+
+    @JsonView(JsonViews.Basic.class)
+    private Map<String, Long> byPriority;
+
+    @JsonView(JsonViews.Basic.class)
+    private Map<String, Long> byCategory;
+
+    @JsonView(JsonViews.Basic.class)
+    private Map<String, Long> byTarget;
+
+    @JsonView(JsonViews.Basic.class)
+    private Map<String, Long> byTeam;
+
+    // istante dell'ultimo riallineamento dei contatori con il DB
+    @JsonView(JsonViews.Basic.class)
+    private Instant reconciledAt;
+}
@@ -0,0 +1,186 @@
+package com.isssr.ticketing_system.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.isssr.ticketing_system.enumeration.*;
+import com.isssr.ticketing_system.response_entity.JsonViews;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.CreationTimestampSerializer;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/* Vista in sola lettura di un Ticket usata dalle liste dell'interfaccia REST: contiene solo le colonne del ticket
+ * e i campi Basic di assignee, customer e target, e viene costruita direttamente dalla query (TicketDao.SUMMARY_SELECT)
+ * senza caricare le relazioni EAGER dell'entity. Il grafo completo del Ticket viene caricato solo da GET /tickets/{id}. */
+@Data
+@NoArgsConstructor
+public class TicketSummaryDto {
+
+    @JsonView(JsonViews.IdentifierOnly.class)
+    private Long id;
+
+    @JsonView(JsonViews.Basic.class)
+    private String title;
+
+    @JsonView(JsonViews.Basic.class)
+    private String description;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketCategory category;
+
+    @JsonView(JsonViews.Basic.class)
+    @JsonSerialize(using = CreationTimestampSerializer.class)
+    private Instant creationTimestamp;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketStatus currentTicketStatus;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketPriority customerPriority;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketPriority teamPriority;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketPriority actualPriority;
+
+    @JsonView(JsonViews.Basic.class)
+    private String actualType;
+
+    @JsonView(JsonViews.Basic.class)
+    private Visibility visibility;
+
+    @JsonView(JsonViews.Basic.class)
+    private TicketDifficulty difficulty;
+
+    @JsonView(JsonViews.Basic.class)
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate datePendingStart;
+
+    @JsonView(JsonViews.Basic.class)
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate dateExecutionStart;
+
+    @JsonView(JsonViews.Basic.class)
+    private Integer durationEstimation;
+
+    @JsonView(JsonViews.Basic.class)
+    @JsonSerialize(using = DaySerializer.class)
+    private LocalDate dateEnd;
+
+    @JsonView(JsonViews.Basic.class)
+    private Integer countDependencies;
+
+    @JsonView(JsonViews.Basic.class)
+    private Long sameTicketId;
+
+    @JsonView(JsonViews.Basic.class)
+    private String teamName;
+
+    @JsonView(JsonViews.Basic.class)
+    private UserSummary assignee;
+
+    @JsonView(JsonViews.Basic.class)
+    private UserSummary customer;
+
+    @JsonView(JsonViews.Basic.class)
+    private TargetSummary target;
+
+    //NB: calcolato in lettura a partire da escalationKey (vedi EscalationController.computeLiveRank)
+    @JsonView(JsonViews.Basic.class)
+    private Double rank;
+
+    @JsonIgnore
+    private Double escalationKey;
+
+    public TicketSummaryDto(Long id, String title, String description, TicketCategory category, Instant creationTimestamp,
+                            TicketStatus currentTicketStatus, TicketPriority customerPriority, TicketPriority teamPriority,
+                            TicketPriority actualPriority, String actualType, Visibility visibility, TicketDifficulty difficulty,
+                            LocalDate datePendingStart, LocalDate dateExecutionStart, Integer durationEstimation, LocalDate dateEnd,
+                            Integer countDependencies, Double escalationKey, Long sameTicketId, String teamName,
+                            Long assigneeId, String assigneeFirstName, String assigneeLastName, String assigneeEmail, String assigneeUsername,
+                            Long customerId, String customerFirstName, String customerLastName, String customerEmail, String customerUsername,
+                            Long targetId, String targetName, String targetVersion, String targetDescription) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.category = category;
+        this.creationTimestamp = creationTimestamp;
+        this.currentTicketStatus = currentTicketStatus;
+        this.customerPriority = customerPriority;
+        this.teamPriority = teamPriority;
+        this.actualPriority = actualPriority;
+        this.actualType = actualType;
+        this.visibility = visibility;
+        this.difficulty = difficulty;
+        this.datePendingStart = datePendingStart;
+        this.dateExecutionStart = dateExecutionStart;
+        this.durationEstimation = durationEstimation;
+        this.dateEnd = dateEnd;
+        this.countDependencies = countDependencies;
+        this.escalationKey = escalationKey;
+        this.sameTicketId = sameTicketId;
+        this.teamName = teamName;
+        this.assignee = assigneeId == null ? null
+                : new UserSummary(assigneeId, assigneeFirstName, assigneeLastName, assigneeEmail, assigneeUsername);
+        this.customer = customerId == null ? null
+                : new UserSummary(customerId, customerFirstName, customerLastName, customerEmail, customerUsername);
+        this.target = targetId == null ? null : new TargetSummary(targetId, targetName, targetVersion, targetDescription);
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class UserSummary {
+
+        @JsonView(JsonViews.IdentifierOnly.class)
+        private Long id;
+
+        @JsonView(JsonViews.Basic.class)
+        private String firstName;
+
+        @JsonView(JsonViews.Basic.class)
+        private String lastName;
+
+        @JsonView(JsonViews.Basic.class)
+        private String email;
+
+        @JsonView(JsonViews.Basic.class)
+        private String username;
+
+        public UserSummary(Long id, String firstName, String lastName, String email, String username) {
+            this.id = id;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+            this.username = username;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class TargetSummary {
+
+        @JsonView(JsonViews.IdentifierOnly.class)
+        private Long id;
+
+        @JsonView(JsonViews.Basic.class)
+        private String name;
+
+        @JsonView(JsonViews.Basic.class)
+        private String version;
+
+        @JsonView(JsonViews.Basic.class)
+        private String description;
+
+        public TargetSummary(Long id, String name, String version, String description) {
+            this.id = id;
+            this.name = name;
+            this.version = version;
+            this.description = description;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.isssr.ticketing_system.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+// Richiesta di transizione di stato di più ticket (POST /tickets/transitions): l'azione è quella della macchina a stati
+@Data
+public class TicketTransitionDto {
+    private List<Long> ticketIds;
+    private String action;
+}
@@ -1,18 +1,25 @@
 package com.isssr.ticketing_system.embeddable;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.isssr.ticketing_system.entity.Team;
+import com.isssr.ticketing_system.utils.jacksonComponents.deserializer.DayDeserializer;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
 
 import javax.persistence.Embeddable;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import java.io.Serializable;
+import java.time.LocalDate;
 
 @Embeddable
 //NB: annotation to declare that a class is meant to be embedded by other entities
 public class KeyGanttDay implements Serializable {
 
-    private String day;
+    @JsonSerialize(using = DaySerializer.class)
+    @JsonDeserialize(using = DayDeserializer.class)
+    private LocalDate day;
     @OneToOne
     @JoinColumn(name = "teamName")
     @JsonIgnoreProperties
@@ -20,16 +27,16 @@ public class KeyGanttDay implements Serializable {
 
     public  KeyGanttDay(){}
 
-    public KeyGanttDay(String day, Team team) {
+    public KeyGanttDay(LocalDate day, Team team) {
         this.day = day;
         this.team = team;
     }
 
-    public String getDay() {
+    public LocalDate getDay() {
         return day;
     }
 
-    public void setDay(String day) {
+    public void setDay(LocalDate day) {
         this.day = day;
     }
 
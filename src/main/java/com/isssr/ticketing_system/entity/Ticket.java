@@ -1,7 +1,5 @@
 package com.isssr.ticketing_system.entity;
 
-import Action.FSMAction;
-import FSM.FSM;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
@@ -13,17 +11,24 @@ import com.isssr.ticketing_system.enumeration.*;
 import com.isssr.ticketing_system.logger.aspect.LogClass;
 import com.isssr.ticketing_system.entity.SoftDelete.SoftDeletableEntity;
 import com.isssr.ticketing_system.response_entity.JsonViews;
-import com.isssr.ticketing_system.utils.ParseDate;
+import com.isssr.ticketing_system.state_machine.StateMachineDefinition;
+import com.isssr.ticketing_system.state_machine.StateMachineRegistry;
+import com.isssr.ticketing_system.utils.SpringRootContext;
 import com.isssr.ticketing_system.utils.jacksonComponents.deserializer.*;
 import com.isssr.ticketing_system.utils.jacksonComponents.serializer.CreationTimestampSerializer;
+import com.isssr.ticketing_system.utils.jacksonComponents.serializer.DaySerializer;
 import lombok.*;
 import org.hibernate.annotations.*;
 
 import javax.persistence.CascadeType;
 import javax.persistence.*;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 
 @NoArgsConstructor
@@ -33,6 +38,15 @@ import java.util.*;
 @Setter
 
 @Entity
+//NB: columnList usa i nomi logici delle colonne (nomi degli attributi), convertiti poi dalla naming strategy
+@Table(indexes = {
+        @Index(name = "idx_ticket_escalation_key", columnList = "currentTicketStatus, escalationKey"),
+        @Index(name = "idx_ticket_creation_timestamp", columnList = "creationTimestamp, id"),
+        @Index(name = "idx_ticket_customer", columnList = "customer_id, id"),
+        @Index(name = "idx_ticket_assignee", columnList = "assignee_id, id"),
+        @Index(name = "idx_ticket_class", columnList = "classId"),
+        @Index(name = "idx_ticket_execution_start", columnList = "dateExecutionStart")
+})
 @DynamicInsert
 @DynamicUpdate
 @FilterDef(name = "user_filter", parameters = {@ParamDef(name = "user_id", type = "long")})
@@ -146,10 +160,33 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
     @JsonDeserialize(using = TicketCommentDeserializerById.class)
     private Collection<TicketComment> comments;
 
-    private String datePendingStart;
-    private String dateExecutionStart;
+    //NB: le date sono colonne di tipo date; nel JSON restano nel formato "giorno/mese/anno" (vedi DateCodec)
+    @JsonSerialize(using = DaySerializer.class)
+    @JsonDeserialize(using = DayDeserializer.class)
+    private LocalDate datePendingStart;
+    @JsonSerialize(using = DaySerializer.class)
+    @JsonDeserialize(using = DayDeserializer.class)
+    private LocalDate dateExecutionStart;
     private Integer durationEstimation;
-    private String dateEnd;
+    @JsonSerialize(using = DaySerializer.class)
+    @JsonDeserialize(using = DayDeserializer.class)
+    private LocalDate dateEnd;
+
+    /**
+     * Istante di ingresso nello stato PENDING, usato per il calcolo della chiave di escalation.
+     */
+    @JsonIgnore
+    private Instant pendingStartTimestamp;
+
+    /**
+     * Chiave di escalation invariante nel tempo: a*cp + b*tp - c*oreInizioPending.
+     * Ordina i ticket in PENDING come il rank, che si ottiene sommando c*oraCorrente.
+     */
+    @JsonIgnore
+    private Double escalationKey;
+
+    //NB: il rank non viene più salvato, è calcolato in lettura a partire da escalationKey
+    @Transient
     private Double rank;
 
 
@@ -171,24 +208,14 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
 
 
     /**
-     * Macchina a stati per ciascun Ticket che definisce il suo workflow.
+     * Id della definizione della macchina a stati che definisce il workflow del Ticket.
+     * La definizione è condivisa tra i ticket e risolta tramite lo StateMachineRegistry.
      */
-    @Lob
     @JsonIgnore
-    private FSM stateMachine;
+    private Long stateMachineId;
 
     private int TTL;
 
-    /**
-     * Informazioni sullo stato attuale del Ticket:
-     *  - Azioni.
-     *  - Ruoli.
-     *  - Stati successivi.
-     */
-
-    private ArrayList<ArrayList<String>> stateInformation;
-
-
 
     @OneToOne(cascade = {CascadeType.ALL})
     @JoinColumn(name = "teamName")
@@ -272,7 +299,7 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
         if(ticketUpdated.dateEnd != null)
             this.dateEnd= ticketUpdated.dateEnd;
         if (ticketUpdated.dateExecutionStart != null)
-            this.dateExecutionStart = ticketUpdated.dateExecutionStart.split(" ")[0];
+            this.dateExecutionStart = ticketUpdated.dateExecutionStart;
         if (ticketUpdated.durationEstimation != null)
             this.durationEstimation = ticketUpdated.durationEstimation;
         if(ticketUpdated.category != null)
@@ -296,35 +323,6 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
 
     }
 
-    //NB: metodo controlla se l'aggiunta di una relazione tra questa istanza di ticket e dependentTicket crea un ciclo
-    //  tra le relazione. Ritorna la lista dei ticket coinvoilti nel ciclo in caso si crei quest'ultimo, altrimenti
-    //  torna una lista vuota se non si formano cicli
-    public List<Ticket> isAcycle(@NotNull Ticket dependentTicket, List<Ticket> cycle){
-
-        List<Ticket> newCycle = new ArrayList<>();
-        //newCycle.addAll(cycle);
-        if(this.dependentTickets.isEmpty())
-            return newCycle;
-        if(this.dependentTickets.contains(dependentTicket)) {
-            cycle.add(dependentTicket);
-            cycle.add(this);
-            newCycle.addAll(cycle);
-            return newCycle;
-        }
-        else{
-            for(Ticket t: this.dependentTickets) {
-                if (!t.isAcycle(dependentTicket, cycle).isEmpty()) {
-                    cycle.add(this);
-                    newCycle.addAll(cycle);
-                    return newCycle;
-                }
-            }
-        }
-
-        return newCycle;
-
-    }
-
     //NB: ritorna vero se dependentTicket dipennde già da questo ticket, falso altrimenti
     public boolean isAlreadyDependent(@NotNull Ticket depedentTicket){
         return this.dependentTickets.contains(depedentTicket);
@@ -370,11 +368,7 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
 
     //NB: calcolo il rank del ticket
     public Double computeRank(Double a, Double b, Double c) {
-        Calendar now = Calendar.getInstance();
-        GregorianCalendar datePendingStart =  ParseDate.parseGregorianCalendar(this.datePendingStart);
-        Long waitingTime = (now.getTimeInMillis() -datePendingStart.getTimeInMillis());
-
-        Double waitingTimeInHour=  waitingTime.doubleValue()/(1000*3600);
+        Double waitingTimeInHour = (double) System.currentTimeMillis() / (1000 * 3600) - getPendingStartHours();
         if(this.customerPriority==null) {
             this.customerPriority = TicketPriority.LOW;
         }
@@ -384,6 +378,29 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
         return  a * ticketPriorityToInteger(this.customerPriority) + b * ticketPriorityToInteger(this.teamPriority) + c * waitingTimeInHour;
     }
 
+    //NB: ore trascorse dall'epoca all'ingresso in PENDING (per i ticket precedenti si usa datePendingStart)
+    public double getPendingStartHours() {
+        long pendingStart;
+        if (this.pendingStartTimestamp != null)
+            pendingStart = this.pendingStartTimestamp.toEpochMilli();
+        else if (this.datePendingStart != null)
+            pendingStart = this.datePendingStart.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        else
+            pendingStart = System.currentTimeMillis();
+        return (double) pendingStart / (1000 * 3600);
+    }
+
+    //NB: calcolo la chiave di escalation, il rank all'istante t vale escalationKey + c * t (in ore)
+    public Double computeEscalationKey(Double a, Double b, Double c) {
+        if(this.customerPriority==null) {
+            this.customerPriority = TicketPriority.LOW;
+        }
+        if(this.teamPriority == null){
+            this.teamPriority = TicketPriority.LOW;
+        }
+        return a * ticketPriorityToInteger(this.customerPriority) + b * ticketPriorityToInteger(this.teamPriority) - c * getPendingStartHours();
+    }
+
     public void updateRank( Double rankUpdated){
         this.rank= rankUpdated;
     }
@@ -408,7 +425,7 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
         if(ticketUpdated.dateEnd != null)
             this.dateEnd= ticketUpdated.dateEnd;
         if (ticketUpdated.dateExecutionStart != null)
-            this.dateExecutionStart = ticketUpdated.dateExecutionStart.split(" ")[0];
+            this.dateExecutionStart = ticketUpdated.dateExecutionStart;
         if (ticketUpdated.durationEstimation != null)
             this.durationEstimation = ticketUpdated.durationEstimation;
         if(ticketUpdated.category != null)
@@ -453,72 +470,41 @@ public class Ticket extends SoftDeletableEntity implements Identifiable {
     }
 
 
-    public void createStateMachine(String fileXMLStates) {
-
-        try {
-            this.stateMachine = new FSM(fileXMLStates, new FSMAction() {
-                @Override
-                public boolean action(String curState, String message, String nextState, Object args) {
-                    System.out.println(curState + ":" + message + " : " + nextState);
-                    return true;
-                }
-            });
-        }
-        catch (Exception e){
-            System.out.println("Error\n" + e);
-        }
+    /**
+     * Informazioni sullo stato attuale del Ticket:
+     *  - Azioni.
+     *  - Ruoli.
+     *  - Stati successivi.
+     */
+    public List<List<String>> getStateInformation() {
+        if (this.currentTicketStatus == null || SpringRootContext.getApplicationContext() == null)
+            return Collections.emptyList();
+        StateMachineDefinition definition = SpringRootContext.getApplicationContext()
+                .getBean(StateMachineRegistry.class).getDefinition(this);
+        if (definition == null)
+            return Collections.emptyList();
+        return definition.getStateInformation(this.currentTicketStatus);
     }
 
     /* ######################################################################################### */
 
-    /* equivalencePrimary è un riferimento al ticket primario della relazione di equivalenza */
+    /* classId è l'id della classe di equivalenza del ticket, cioè l'id del ticket primario; è null se il ticket non fa
+     * parte di una relazione di equivalenza. La colonna è scritta solo dagli UPDATE massivi di TicketDao
+     * (mergeEquivalenceClasses, clearEquivalenceClasses) e le classi sono lette dall'indice in
+     * memoria TicketEquivalenceIndex, quindi il valore nell'entity può non essere aggiornato */
     @JsonIgnore
-    @ManyToOne
-    private Ticket equivalencePrimary;
+    @Column(insertable = false, updatable = false)
+    private Long classId;
 
-    /* equivalentTickets è la lista dei ticket secondari. E' popolata solo se il ticket è primario */
+    /* Riepilogo delle relazioni salvate nelle tabelle di join (dependent_tickets, regression_tickets_generator):
+     * true se il ticket ha almeno un ticket dipendente / un ticket che ha generato la regressione. Le colonne sono
+     * mantenute dai trigger creati da TicketRelationSchema e servono alle liste dei ticket candidati alle relazioni,
+     * che così non devono fare join sulle tabelle delle relazioni */
     @JsonIgnore
-    @OneToMany(mappedBy="equivalencePrimary")
-    private List<Ticket> equivalentTickets; // punta ai ticket a cui il primario è equivalente
-
-    /* addEquivalentTicket aggiunge un ticket alla lista dei secondari */
-    public void addEquivalentTicket(Ticket equivalentTicket) {
-        if (equivalentTickets == null) {
-            equivalentTickets = new ArrayList<>();
-        }
-        equivalentTickets.add(equivalentTicket);
-    }
+    @Column(insertable = false, updatable = false, columnDefinition = "boolean not null default false")
+    private boolean hasDependentTickets;
 
-    public void removeEquivalentTicket(Ticket equivalentTicket) {
-        if (equivalentTickets != null) {
-            equivalentTickets.remove(equivalentTicket);
-        }
-    }
-
-    public List<Ticket> getEquivalentTickets() {
-        return equivalentTickets;
-    }
-
-    public void setEquivalencePrimary(Ticket equivalencePrimary) {
-        this.equivalencePrimary = equivalencePrimary;
-    }
-
-    public Ticket getEquivalencePrimary() {
-        return equivalencePrimary;
-    }
-
-    // Restituisce True se il ticket è primario nella relazione di equivalenza, False altrimenti
-    public boolean isEquivalencePrimary() {
-        return (this.equivalencePrimary != null && this.equivalencePrimary.equals(this));
-    }
-
-    // Restituisce True se il ticket è secondario nella relazione di equivalenza, False altrimenti
-    public boolean isEquivalenceSecondary(){
-        return (this.equivalencePrimary != null && !this.equivalencePrimary.equals(this));
-    }
-
-    // Restituisce True se il ticket non ha nessuna relazione di equivalenza, False altrimenti
-    public boolean isNotInEquivalenceRelation(){
-        return this.equivalencePrimary == null;
-    }
+    @JsonIgnore
+    @Column(insertable = false, updatable = false, columnDefinition = "boolean not null default false")
+    private boolean hasRegressionTickets;
 }
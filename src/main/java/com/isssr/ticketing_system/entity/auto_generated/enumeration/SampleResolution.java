@@ -0,0 +1,24 @@
+package com.isssr.ticketing_system.entity.auto_generated.enumeration;
+
+/**
+ * Risoluzione dello storico dei risultati di una query schedulata: i campioni (RAW) e i loro riepiloghi per minuto, ora
+ * e giorno. Ogni riepilogo è calcolato da quello della risoluzione precedente.
+ */
+public enum SampleResolution {
+
+    RAW(null),
+    MINUTE("minute"),
+    HOUR("hour"),
+    DAY("day");
+
+    // unità di date_trunc, salvata anche nella colonna query_sample_rollup.resolution
+    private final String unit;
+
+    SampleResolution(String unit) {
+        this.unit = unit;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+}
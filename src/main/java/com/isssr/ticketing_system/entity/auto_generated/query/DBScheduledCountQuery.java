@@ -2,22 +2,19 @@ package com.isssr.ticketing_system.entity.auto_generated.query;
 
 import com.isssr.ticketing_system.entity.auto_generated.enumeration.COperatorsEnum;
 import com.isssr.ticketing_system.enumeration.TicketPriority;
-import com.isssr.ticketing_system.exception.EntityNotFoundException;
 import com.isssr.ticketing_system.exception.UpdateException;
 import com.isssr.ticketing_system.entity.db_connection.DBConnectionInfo;
 import com.isssr.ticketing_system.controller.UserSwitchController;
+import com.isssr.ticketing_system.controller.auto_generated.QuerySampleStore;
 import com.isssr.ticketing_system.controller.auto_generated.QueryService;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.*;
-import org.quartz.DisallowConcurrentExecution;
-import org.quartz.JobDataMap;
-import org.quartz.JobExecutionContext;
-import org.quartz.PersistJobDataAfterExecution;
 import org.springframework.dao.DataAccessException;
 
 import javax.persistence.Entity;
 import javax.persistence.Table;
+import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.SQLException;
 
@@ -30,8 +27,6 @@ import java.sql.SQLException;
 @DynamicInsert
 @DynamicUpdate
 
-@PersistJobDataAfterExecution //persist data after execution of a job
-@DisallowConcurrentExecution //avoid race condition on persisted data
 @FilterDef(name = "deleted_filter", parameters = {@ParamDef(name = "value", type = "boolean")})
 @Filter(name = "deleted_filter", condition = "deleted = :value")
 //@LogClass(idAttrs = {"id"})
@@ -52,26 +47,26 @@ public class DBScheduledCountQuery extends DBScheduledQuery<BigInteger, COperato
                 dbConnectionInfo, queryType, comparisonOperator, referenceValue);
     }
 
-    public void wakeUp() {
+    public Boolean executeQuery(UserSwitchController userSwitchController, QueryService queryService,
+                                QuerySampleStore querySampleStore) throws SQLException, DataAccessException {
 
-        System.out.println("Observers on query " + this.countObservers());
-        //notify observers
-        setChanged();
-        notifyObservers();
+        BigInteger count = this.executeSQL(userSwitchController);
 
-    }
+        // the window average must be read before recording the current sample
+        BigDecimal windowAverage = this.windowSize != null && this.windowSize > 0 ?
+                querySampleStore.average(this.id, this.windowSize) : null;
 
-    public Boolean executeQuery(UserSwitchController userSwitchController, QueryService queryService) throws SQLException, DataAccessException {
+        querySampleStore.record(this.id, count);
 
         switch (this.queryType) {
 
             case DATA_BASE_INSTANT_CHECK:
 
-                return this.executeInstantCheck(userSwitchController);
+                return this.executeInstantCheck(count, windowAverage);
 
             case DATA_BASE_TABLE_MONITOR:
 
-                return this.executeMonitorCheck(userSwitchController, queryService);
+                return this.executeMonitorCheck(count, windowAverage, queryService);
 
         }
 
@@ -79,57 +74,49 @@ public class DBScheduledCountQuery extends DBScheduledQuery<BigInteger, COperato
 
     }
 
-    private Boolean executeMonitorCheck(UserSwitchController userSwitchController, QueryService queryService) throws SQLException, DataAccessException {
+    private Boolean executeMonitorCheck(BigInteger count, BigDecimal windowAverage, QueryService queryService) {
 
-        BigInteger count = this.executeSQL(userSwitchController);
+        BigInteger previousValue = this.lastValue;
 
-        if (this.lastValue == null) {
+        //update last value
+        this.lastValue = count;
 
-            //update last value
-            this.lastValue = count;
+        queryService.updateLastValue(this.id, count);
 
-            //update query
-            try {
+        if (this.windowSize != null && this.windowSize > 0) {
 
-                queryService.simpleUpdateOne(this.id, this);
+            // first run: no samples to compare with
+            if (windowAverage == null)
+                return false;
 
-            } catch (EntityNotFoundException e) {
-                e.printStackTrace();
-            }
+            // difference and percent are computed against the average of the window
+            return this.compare(new BigDecimal(count).subtract(windowAverage), windowAverage);
+
+        }
+
+        if (previousValue == null) {
 
             // It's first time running this query.
             // It is equivalent to run an instant check.
             // So return simply false, because is not a monitor action
             return false;
 
-        } else {
-
-            BigInteger lastNeg = this.lastValue.multiply(BigInteger.valueOf(-1));
-
-            BigInteger difference = count.add(lastNeg);
-
-            //update last value
-            this.lastValue = count;
-
-            try {
-
-                queryService.simpleUpdateOne(this.id, this);
-
-            } catch (EntityNotFoundException e) {
-                e.printStackTrace();
-            }
+        }
 
-            return this.compare(difference);
+        BigInteger difference = count.subtract(previousValue);
 
-        }
+        // percent is computed from the difference and this.lastValue,
+        // that has already been updated with last instant value
+        return this.compare(new BigDecimal(difference), new BigDecimal(count));
 
     }
 
-    private Boolean executeInstantCheck(UserSwitchController userSwitchController) throws SQLException, DataAccessException {
+    private Boolean executeInstantCheck(BigInteger count, BigDecimal windowAverage) {
 
-        BigInteger count = this.executeSQL(userSwitchController);
+        BigDecimal base = this.windowSize != null && this.windowSize > 0 ? windowAverage :
+                this.lastValue != null ? new BigDecimal(this.lastValue) : null;
 
-        return this.compare(count);
+        return this.compare(new BigDecimal(count), base);
 
     }
 
@@ -138,24 +125,28 @@ public class DBScheduledCountQuery extends DBScheduledQuery<BigInteger, COperato
         if (this.dbConnectionInfo == null) {
 
             if (this.isEnable)
-                return userSwitchController.doQueryReadOnlyMode(this.queryText, BigInteger.class, null, null, null, null);
+                return userSwitchController.doQueryReadOnlyMode(this.queryText, BigInteger.class, null, null, null, null, this.statementTimeout);
 
-            return userSwitchController.doNotLog(this.queryText, BigInteger.class, null, null, null, null);
+            return userSwitchController.doNotLog(this.queryText, BigInteger.class, null, null, null, null, this.statementTimeout);
 
         } else {
 
             if (this.isEnable)
-                return userSwitchController.doQueryReadOnlyMode(this.queryText, BigInteger.class, this.dbConnectionInfo.getUrl(), this.dbConnectionInfo.getUsername(), this.dbConnectionInfo.getPassword(), this.dbConnectionInfo.getDriver());
+                return userSwitchController.doQueryReadOnlyMode(this.queryText, BigInteger.class, this.dbConnectionInfo.getUrl(), this.dbConnectionInfo.getUsername(), this.dbConnectionInfo.getPassword(), this.dbConnectionInfo.getDriver(), this.statementTimeout);
 
-            return userSwitchController.doNotLog(this.queryText, BigInteger.class, this.dbConnectionInfo.getUrl(), this.dbConnectionInfo.getUsername(), this.dbConnectionInfo.getPassword(), this.dbConnectionInfo.getDriver());
+            return userSwitchController.doNotLog(this.queryText, BigInteger.class, this.dbConnectionInfo.getUrl(), this.dbConnectionInfo.getUsername(), this.dbConnectionInfo.getPassword(), this.dbConnectionInfo.getDriver(), this.statementTimeout);
 
         }
 
     }
 
-    private boolean compare(BigInteger value) {
+    /**
+     * @param value value compared with referenceValue
+     * @param base  value the percentage of @value is computed on (PERCENT_GROWTH, PERCENT_DROP)
+     */
+    private boolean compare(BigDecimal value, BigDecimal base) {
 
-        int comparison = value.compareTo(this.referenceValue);
+        int comparison = value.compareTo(new BigDecimal(this.referenceValue));
 
         switch (this.comparisonOperator) {
 
@@ -181,10 +172,10 @@ public class DBScheduledCountQuery extends DBScheduledQuery<BigInteger, COperato
 
         }
 
-        // compute percent from value (this is a monitoring query
-        // so it is the difference between instant value and last value)
-        // and this.lastValue that has already been updated with last instant value
-        float percent = percent(value, this.lastValue);
+        if (base == null)
+            return false;
+
+        float percent = percent(value, base);
 
         switch (this.comparisonOperator) {
             case PERCENT_GROWTH:
@@ -204,7 +195,7 @@ public class DBScheduledCountQuery extends DBScheduledQuery<BigInteger, COperato
     /**
      * Returns a proportion (n out of a total) as a percentage, in a float.
      */
-    private float percent(BigInteger n, BigInteger total) {
+    private float percent(BigDecimal n, BigDecimal total) {
 
         float ratio = (n.floatValue()) / (total.floatValue());
 
@@ -212,19 +203,6 @@ public class DBScheduledCountQuery extends DBScheduledQuery<BigInteger, COperato
 
     }
 
-    @Override
-    public void execute(JobExecutionContext jobExecutionContext) {
-
-        //get data map
-        JobDataMap jobDataMap = jobExecutionContext.getJobDetail().getJobDataMap();
-
-        //extract job from data map
-        DBScheduledCountQuery dbSchedulableTimeQuery = (DBScheduledCountQuery) jobDataMap.get(this.MAP_ME);
-
-        //activate query
-        dbSchedulableTimeQuery.wakeUp();
-    }
-
     @Override
     public boolean equals(Object o) {
         if (!(o instanceof DBScheduledCountQuery)) {
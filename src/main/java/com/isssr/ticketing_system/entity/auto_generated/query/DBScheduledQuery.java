@@ -47,6 +47,14 @@ public abstract class DBScheduledQuery<T, S> extends ScheduledQuery {
 
     protected T lastValue;
 
+    // timeout (secondi) dell'esecuzione della query; se null vale query.executor.statement-timeout
+    @JsonView(JsonViews.Detailed.class)
+    protected Integer statementTimeout;
+
+    // numero di campioni precedenti la cui media sostituisce lastValue nei confronti; se null si usa lastValue
+    @JsonView(JsonViews.Detailed.class)
+    protected Integer windowSize;
+
     public DBScheduledQuery(String description, TicketPriority queryPriority, boolean isEnable, String author, String cron, String queryText, DBConnectionInfo dbConnectionInfo, QueryType queryType, S comparisonOperator, T referenceValue) {
         super(description, queryPriority, isEnable, author, cron);
         this.queryText = queryText;
@@ -82,5 +90,9 @@ public abstract class DBScheduledQuery<T, S> extends ScheduledQuery {
         this.queryText = upData.queryText;
 
         this.queryType = upData.queryType;
+
+        this.statementTimeout = upData.statementTimeout;
+
+        this.windowSize = upData.windowSize;
     }
 }
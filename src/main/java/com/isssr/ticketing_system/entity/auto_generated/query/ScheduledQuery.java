@@ -5,20 +5,15 @@ import com.isssr.ticketing_system.enumeration.TicketPriority;
 import com.isssr.ticketing_system.exception.UpdateException;
 import com.isssr.ticketing_system.response_entity.JsonViews;
 import lombok.*;
-import org.quartz.Job;
 import org.quartz.JobKey;
 
 import javax.persistence.MappedSuperclass;
-import javax.persistence.Transient;
 
 @MappedSuperclass
 @Data
 @NoArgsConstructor
 @RequiredArgsConstructor
-public abstract class ScheduledQuery extends Query implements Job {
-
-    @Transient
-    public static final String MAP_ME = "ME";
+public abstract class ScheduledQuery extends Query {
 
     @JsonView(JsonViews.Basic.class)
     @NonNull
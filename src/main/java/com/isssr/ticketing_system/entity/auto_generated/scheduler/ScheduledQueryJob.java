@@ -0,0 +1,34 @@
+package com.isssr.ticketing_system.entity.auto_generated.scheduler;
+
+import com.isssr.ticketing_system.controller.auto_generated.AutoGeneratedTicketService;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Job Quartz di una query schedulata. Nel JobDataMap (salvato nel job store JDBC) c'è solo l'id della query: la query
+ * viene letta dal DB a ogni esecuzione, quindi il job sopravvive al riavvio e può essere eseguito da qualsiasi nodo.
+ * <p>
+ * Il job consegna la query allo ScheduledQueryExecutor e termina subito, senza attenderne la fine: il thread Quartz non
+ * resta occupato mentre la query è in coda o in esecuzione, quindi un DB lento non ritarda i trigger delle altre
+ * query. Sul nodo l'executor non accoda una query ancora in coda o in esecuzione; su nodi diversi due esecuzioni
+ * della stessa query possono sovrapporsi solo se attesa in coda ed esecuzione durano più del suo intervallo.
+ */
+public class ScheduledQueryJob implements Job {
+
+    public static final String QUERY_ID = "queryId";
+
+    //NB: iniettato dalla job factory di Spring Boot alla creazione del job
+    @Autowired
+    private AutoGeneratedTicketService autoGeneratedTicketService;
+
+    @Override
+    public void execute(JobExecutionContext context) {
+
+        Long queryId = Long.valueOf(context.getMergedJobDataMap().getString(QUERY_ID));
+
+        //gli errori della query sono gestiti (e contati) dall'executor
+        this.autoGeneratedTicketService.runScheduledQuery(queryId);
+
+    }
+}
@@ -4,11 +4,18 @@ import com.isssr.ticketing_system.entity.auto_generated.query.ScheduledQuery;
 import lombok.RequiredArgsConstructor;
 import org.quartz.*;
 import org.quartz.impl.JobDetailImpl;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.quartz.impl.triggers.CronTriggerImpl;
 import org.springframework.stereotype.Component;
 
 import java.text.ParseException;
+import java.util.Collections;
+import java.util.Set;
 
+/**
+ * Job e trigger delle query schedulate, salvati nel job store JDBC condiviso dai nodi del cluster: il job di una query
+ * ha come nome l'id della query, quindi può essere ritrovato e rimosso anche da un altro nodo o dopo un riavvio.
+ */
 @Component
 @RequiredArgsConstructor
 public class TaskScheduler {
@@ -16,10 +23,13 @@ public class TaskScheduler {
 
     private final Scheduler scheduler;
 
-    private String DATA_BASE_QUERY_GROUP_NAME = "Data_base_query_group";
+    private static final String DATA_BASE_QUERY_GROUP_NAME = "Data_base_query_group";
 
-    private String CRON_GROUP_NAME;
+    private static final String CRON_GROUP_NAME = "Data_base_query_cron_group";
 
+    /**
+     * Crea o sostituisce job e trigger della query.
+     */
     public void addJob(ScheduledQuery query) throws ParseException, SchedulerException {
 
         //set cron trigger
@@ -28,29 +38,56 @@ public class TaskScheduler {
         //set job details
         JobDetailImpl jobDetail = new JobDetailImpl();
 
-        jobDetail.setJobClass(query.getClass());
+        jobDetail.setJobClass(ScheduledQueryJob.class);
 
         //set name and group to generate a key
-        jobDetail.setName(query.getId().toString());
-
-        jobDetail.setGroup(DATA_BASE_QUERY_GROUP_NAME);
+        jobDetail.setKey(jobKey(query.getId()));
 
         query.setJobKey(jobDetail.getKey());
 
-        //map job
+        //map job: solo l'id, la query viene letta dal DB a ogni esecuzione
         JobDataMap jobDataMap = new JobDataMap();
 
-        jobDataMap.put(ScheduledQuery.MAP_ME, query);
+        jobDataMap.put(ScheduledQueryJob.QUERY_ID, query.getId().toString());
 
         jobDetail.setJobDataMap(jobDataMap);
 
-        //schedule job
-        scheduler.scheduleJob(jobDetail, cronTrigger);
+        //schedule job, replacing the one of a previous activation
+        scheduler.scheduleJob(jobDetail, Collections.singleton(cronTrigger), true);
+    }
+
+    /**
+     * @return false se la query non aveva un job
+     */
+    public boolean removeJob(ScheduledQuery query) throws SchedulerException {
+
+        return removeJob(query.getId());
+
+    }
+
+    public boolean removeJob(Long queryId) throws SchedulerException {
+
+        return scheduler.deleteJob(jobKey(queryId));
+
+    }
+
+    /**
+     * @return true se la query ha un trigger con la stessa espressione cron
+     */
+    public boolean isScheduled(ScheduledQuery query) throws SchedulerException {
+
+        Trigger trigger = scheduler.getTrigger(TriggerKey.triggerKey(query.getId().toString(), CRON_GROUP_NAME));
+
+        return trigger instanceof CronTrigger && ((CronTrigger) trigger).getCronExpression().equals(query.getCron());
+
     }
 
-    public void removeJob(ScheduledQuery query) throws SchedulerException {
+    /**
+     * @return i job delle query schedulate presenti nel job store
+     */
+    public Set<JobKey> getJobKeys() throws SchedulerException {
 
-        scheduler.deleteJob(JobKey.jobKey(query.getJobKey().getName(), query.getJobKey().getGroup()));
+        return scheduler.getJobKeys(GroupMatcher.jobGroupEquals(DATA_BASE_QUERY_GROUP_NAME));
 
     }
 
@@ -62,10 +99,21 @@ public class TaskScheduler {
 
         cronTrigger.setGroup(CRON_GROUP_NAME);
 
+        cronTrigger.setJobKey(JobKey.jobKey(queryId, DATA_BASE_QUERY_GROUP_NAME));
+
         cronTrigger.setCronExpression(cron);
 
+        //NB: le esecuzioni perse mentre nessun nodo era attivo non vengono recuperate, come prima con il RAMJobStore
+        cronTrigger.setMisfireInstruction(CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING);
+
         return cronTrigger;
 
     }
 
-}
\ No newline at end of file
+    private static JobKey jobKey(Long queryId) {
+
+        return JobKey.jobKey(queryId.toString(), DATA_BASE_QUERY_GROUP_NAME);
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.isssr.ticketing_system.enumeration;
+
+/**
+ * Formati ammessi per l'esportazione dei Ticket (GET tickets/export).
+ */
+public enum TicketExportFormat {
+    // un oggetto JSON per riga
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    TicketExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,26 @@
+package com.isssr.ticketing_system.enumeration;
+
+/**
+ * Liste di ticket candidati alla creazione di una relazione. Ogni lista è una condizione JPQL sulle colonne di
+ * riepilogo delle relazioni del ticket (vedi TicketRelationSchema), che corrisponde al predicato del relativo indice
+ * parziale: la condizione deve restare identica al predicato perché PostgreSQL usi l'indice.
+ */
+public enum TicketRelationCandidates {
+    //NB: ticket senza relazioni di uguaglianza, dipendenza o regressione
+    NO_RELATION("t.sameTicket is null and t.countDependencies is null " +
+            "and t.hasDependentTickets = false and t.hasRegressionTickets = false"),
+    //NB: ticket coinvolti in una relazione di dipendenza
+    DEPENDENCY("(t.hasDependentTickets = true or t.countDependencies is not null)"),
+    CREATE_EQUALITY("t.sameTicket is null"),
+    CREATE_DEPENDENCY("t.sameTicket is null and t.hasRegressionTickets = false");
+
+    private final String condition;
+
+    TicketRelationCandidates(String condition) {
+        this.condition = condition;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+}
@@ -0,0 +1,44 @@
+package com.isssr.ticketing_system.enumeration;
+
+import java.time.Instant;
+
+/**
+ * Chiavi di ordinamento ammesse per la paginazione keyset dei Ticket.
+ * Ogni chiave è usata insieme all'id del ticket, che rende l'ordinamento totale.
+ */
+public enum TicketSortKey {
+    ID("id", false),
+    CREATION_TIMESTAMP("creationTimestamp", true),
+    //NB: il rank dipende solo dalla chiave di escalation (vedi EscalationController), quindi si ordina su quella
+    RANK("escalationKey", true);
+
+    private final String attribute;
+    private final boolean defaultDescending;
+
+    TicketSortKey(String attribute, boolean defaultDescending) {
+        this.attribute = attribute;
+        this.defaultDescending = defaultDescending;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public boolean isDefaultDescending() {
+        return defaultDescending;
+    }
+
+    /**
+     * Converte il valore della chiave letto dal cursore nel tipo dell'attributo.
+     */
+    public Comparable<?> parseValue(String value) {
+        switch (this) {
+            case ID:
+                return Long.valueOf(value);
+            case CREATION_TIMESTAMP:
+                return Instant.parse(value);
+            default:
+                return Double.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.isssr.ticketing_system.gantt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cammino critico dei ticket aperti di un team, calcolato sul DAG delle dipendenze (arco padre -> ticket dipendente)
+ * con il metodo CPM. I giorni sono epoch day e la fine di un ticket è il primo giorno dopo l'esecuzione (inizio +
+ * durata), come nei controlli di dipendenza del Gantt.
+ * <p>
+ * I ticket sono ordinati topologicamente (algoritmo di Kahn) e poi visitati una volta in avanti e una all'indietro,
+ * quindi il costo è O(V + E):
+ * <ul>
+ *     <li>inizio al più presto: il massimo tra il rilascio del ticket e la fine al più presto dei padri</li>
+ *     <li>fine al più tardi: il minimo tra gli inizi al più tardi dei figli, o la fine del progetto se non ne ha</li>
+ *     <li>slack: inizio al più tardi - inizio al più presto; i ticket con slack 0 sono critici</li>
+ * </ul>
+ * Il cammino critico restituito è una catena di ticket critici, dal primo all'ultimo, in cui ogni ticket inizia
+ * quando finisce il precedente e l'ultimo finisce con il progetto.
+ */
+public class CriticalPath {
+
+    private final long[] ids;
+    private final String[] titles;
+    private final Integer[] durationEstimations;
+    private final int[] order;
+    private final long[] earliestStart;
+    private final long[] latestStart;
+    private final int[] durations;
+    private final long[] criticalPath;
+    private final long projectStart;
+    private final long projectEnd;
+
+    private CriticalPath(Builder builder) {
+        int n = builder.size;
+        ids = Arrays.copyOf(builder.ids, n);
+        titles = Arrays.copyOf(builder.titles, n);
+        durationEstimations = Arrays.copyOf(builder.durationEstimations, n);
+        durations = new int[n];
+        for (int i = 0; i < n; i++)
+            durations[i] = durationEstimations[i] == null ? 1 : Math.max(0, durationEstimations[i]);
+
+        // padri interni al grafo, come indici; gli archi verso ticket non presenti sono ignorati
+        Map<Long, Integer> index = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++)
+            index.put(ids[i], i);
+        int[][] fathers = new int[n][];
+        int[] sonCount = new int[n];
+        for (int i = 0; i < n; i++) {
+            long[] fatherIds = builder.fathers[i];
+            int[] internal = new int[fatherIds.length];
+            int count = 0;
+            for (long fatherId : fatherIds) {
+                Integer father = index.get(fatherId);
+                if (father != null && father != i) {
+                    internal[count++] = father;
+                    sonCount[father]++;
+                }
+            }
+            fathers[i] = Arrays.copyOf(internal, count);
+        }
+        int[][] sons = new int[n][];
+        for (int i = 0; i < n; i++)
+            sons[i] = new int[sonCount[i]];
+        int[] filled = new int[n];
+        for (int i = 0; i < n; i++)
+            for (int father : fathers[i])
+                sons[father][filled[father]++] = i;
+
+        // ordinamento topologico
+        order = new int[n];
+        int[] pending = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            pending[i] = fathers[i].length;
+            if (pending[i] == 0)
+                order[tail++] = i;
+        }
+        for (int head = 0; head < tail; head++)
+            for (int son : sons[order[head]])
+                if (--pending[son] == 0)
+                    order[tail++] = son;
+        if (tail < n)
+            throw new IllegalStateException("Dependency cycle among the tickets of the team");
+
+        // visita in avanti
+        earliestStart = new long[n];
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (int i : order) {
+            long es = builder.releases[i];
+            for (int father : fathers[i])
+                es = Math.max(es, earliestStart[father] + durations[father]);
+            earliestStart[i] = es;
+            start = Math.min(start, es);
+            end = Math.max(end, es + durations[i]);
+        }
+        projectStart = n == 0 ? 0 : start;
+        projectEnd = n == 0 ? 0 : end;
+
+        // visita all'indietro
+        latestStart = new long[n];
+        for (int k = n - 1; k >= 0; k--) {
+            int i = order[k];
+            long lf = projectEnd;
+            for (int son : sons[i])
+                lf = Math.min(lf, latestStart[son]);
+            latestStart[i] = lf - durations[i];
+        }
+
+        criticalPath = findCriticalChain(fathers);
+    }
+
+    /**
+     * Risale dall'ultimo ticket critico che finisce con il progetto, scegliendo ad ogni passo un padre critico che
+     * finisce quando inizia il ticket corrente.
+     */
+    private long[] findCriticalChain(int[][] fathers) {
+        int last = -1;
+        for (int k = order.length - 1; k >= 0 && last < 0; k--) {
+            int i = order[k];
+            if (getSlackAt(i) == 0 && earliestStart[i] + durations[i] == projectEnd)
+                last = i;
+        }
+        if (last < 0)
+            return new long[0];
+
+        long[] chain = new long[order.length];
+        int length = 0;
+        for (int current = last; current >= 0; ) {
+            chain[length++] = ids[current];
+            int next = -1;
+            for (int father : fathers[current])
+                if (getSlackAt(father) == 0 && earliestStart[father] + durations[father] == earliestStart[current]
+                        && (next < 0 || ids[father] < ids[next]))
+                    next = father;
+            current = next;
+        }
+        long[] result = new long[length];
+        for (int i = 0; i < length; i++)
+            result[i] = chain[length - 1 - i];
+        return result;
+    }
+
+    private long getSlackAt(int i) {
+        return latestStart[i] - earliestStart[i];
+    }
+
+    /**
+     * @return numero di ticket
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    // i metodi seguenti prendono la posizione del ticket nell'ordine topologico (da 0 a size() - 1)
+
+    public long getId(int position) {
+        return ids[order[position]];
+    }
+
+    public String getTitle(int position) {
+        return titles[order[position]];
+    }
+
+    public Integer getDurationEstimation(int position) {
+        return durationEstimations[order[position]];
+    }
+
+    public long getEarliestStart(int position) {
+        return earliestStart[order[position]];
+    }
+
+    public long getEarliestEnd(int position) {
+        int i = order[position];
+        return earliestStart[i] + durations[i];
+    }
+
+    public long getLatestStart(int position) {
+        return latestStart[order[position]];
+    }
+
+    public long getLatestEnd(int position) {
+        int i = order[position];
+        return latestStart[i] + durations[i];
+    }
+
+    public long getSlack(int position) {
+        return getSlackAt(order[position]);
+    }
+
+    /**
+     * @return gli id dei ticket del cammino critico, dal primo all'ultimo
+     */
+    public long[] getCriticalPath() {
+        return criticalPath.clone();
+    }
+
+    public long getProjectStart() {
+        return projectStart;
+    }
+
+    /**
+     * @return il primo giorno dopo la fine dell'ultimo ticket
+     */
+    public long getProjectEnd() {
+        return projectEnd;
+    }
+
+    public static class Builder {
+        private long[] ids = new long[16];
+        private String[] titles = new String[16];
+        private Integer[] durationEstimations = new Integer[16];
+        private long[] releases = new long[16];
+        private long[][] fathers = new long[16][];
+        private int size;
+
+        /**
+         * @param durationEstimation durata in giorni; se null il ticket dura un giorno
+         * @param release primo giorno in cui il ticket può iniziare, indipendentemente dai padri del grafo
+         * @param fatherIds ticket da cui dipende; quelli non aggiunti al builder sono ignorati
+         */
+        public Builder add(long id, String title, Integer durationEstimation, long release, long[] fatherIds) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                durationEstimations = Arrays.copyOf(durationEstimations, capacity);
+                releases = Arrays.copyOf(releases, capacity);
+                fathers = Arrays.copyOf(fathers, capacity);
+            }
+            ids[size] = id;
+            titles[size] = title;
+            durationEstimations[size] = durationEstimation;
+            releases[size] = release;
+            fathers[size] = fatherIds;
+            size++;
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException se le dipendenze tra i ticket aggiunti formano un ciclo
+         */
+        public CriticalPath build() {
+            return new CriticalPath(this);
+        }
+    }
+}
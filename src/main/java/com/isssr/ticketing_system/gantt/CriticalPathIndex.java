@@ -0,0 +1,175 @@
+package com.isssr.ticketing_system.gantt;
+
+import com.isssr.ticketing_system.cluster.ClusterInvalidation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Array;
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache per team del {@link CriticalPath} dei ticket aperti (non chiusi e non cancellati) assegnati al team.
+ * <p>
+ * Ticket, durate, inizi pianificati e padri sono letti con una sola query. Un ticket senza inizio esecuzione può
+ * iniziare da oggi; un padre aperto di un altro team non fa parte del grafo, ma il ticket non può iniziare prima
+ * della sua fine pianificata.
+ * <p>
+ * Chi modifica pianificazione, dipendenze, stato o team dei ticket chiama {@link #invalidate(long)} o
+ * {@link #invalidateAll()}: la cache viene svuotata dopo il commit, e un calcolo iniziato prima di un'invalidazione
+ * non viene salvato in cache. Anche il cambio di giorno invalida i calcoli, perché cambia il rilascio dei ticket non
+ * pianificati. Le invalidazioni vengono propagate agli altri nodi del cluster con {@link ClusterInvalidation}.
+ */
+@Component
+public class CriticalPathIndex implements MeterBinder {
+
+    private static final String TEAM_SELECT = "select t.id, t.title, t.duration_estimation, " +
+            "t.date_execution_start - date '1970-01-01', " +
+            "array_agg(f.id) filter (where f.team_name = t.team_name), " +
+            "max(f.date_execution_start - date '1970-01-01' + coalesce(f.duration_estimation, 1)) " +
+            "filter (where f.team_name is distinct from t.team_name) " +
+            "from ticket t " +
+            "left join dependent_tickets d on d.dependent_tickets_id = t.id " +
+            "left join ticket f on f.id = d.ticket_id and f.deleted = false and f.current_ticket_status <> 'CLOSED' " +
+            "where t.team_name = ? and t.deleted = false and t.current_ticket_status <> 'CLOSED' " +
+            "group by t.id order by t.id";
+
+    private static final long[] NO_FATHERS = new long[0];
+
+    private static final String TOPIC = "critical_path";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ClusterInvalidation clusterInvalidation;
+
+    private final ConcurrentMap<Long, Entry> paths = new ConcurrentHashMap<>();
+
+    private long version;
+
+    @Autowired
+    public CriticalPathIndex(JdbcTemplate jdbcTemplate, ClusterInvalidation clusterInvalidation) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterInvalidation = clusterInvalidation;
+        // messaggio di un altro nodo: id del team, o vuoto per tutti i team
+        clusterInvalidation.subscribe(TOPIC, argument -> {
+            if (argument.isEmpty())
+                clear();
+            else
+                clear(Long.parseLong(argument));
+        }, this::clear);
+    }
+
+    /**
+     * @return il cammino critico dei ticket aperti del team, calcolato al più una volta per team tra due invalidazioni
+     * @throws IllegalStateException se le dipendenze tra i ticket del team formano un ciclo
+     */
+    public CriticalPath get(long teamId) {
+        long today = LocalDate.now().toEpochDay();
+        Entry entry = paths.get(teamId);
+        if (entry != null && entry.day == today)
+            return entry.path;
+
+        long loadVersion;
+        synchronized (this) {
+            loadVersion = version;
+        }
+        CriticalPath path = load(teamId, today);
+        synchronized (this) {
+            if (version == loadVersion)
+                paths.put(teamId, new Entry(today, path));
+        }
+        return path;
+    }
+
+    /**
+     * Svuota la cache del team dopo il commit della transazione corrente (o subito, se non c'è una transazione).
+     */
+    public void invalidate(long teamId) {
+        clusterInvalidation.publish(TOPIC, String.valueOf(teamId));
+        afterCommit(() -> clear(teamId));
+    }
+
+    /**
+     * Svuota la cache di tutti i team dopo il commit della transazione corrente (o subito, se non c'è una
+     * transazione), ad esempio dopo una nuova dipendenza, che può legare ticket di team diversi.
+     */
+    public void invalidateAll() {
+        clusterInvalidation.publish(TOPIC, "");
+        afterCommit(this::clear);
+    }
+
+    private synchronized void clear(long teamId) {
+        version++;
+        paths.remove(teamId);
+    }
+
+    private synchronized void clear() {
+        version++;
+        paths.clear();
+    }
+
+    private CriticalPath load(long teamId, long today) {
+        CriticalPath.Builder builder = new CriticalPath.Builder();
+        jdbcTemplate.query(TEAM_SELECT, resultSet -> {
+            long release = today;
+            long plannedStart = resultSet.getLong(4);
+            if (!resultSet.wasNull())
+                release = plannedStart;
+            long externalEnd = resultSet.getLong(6);
+            if (!resultSet.wasNull())
+                release = Math.max(release, externalEnd);
+            int duration = resultSet.getInt(3);
+            Integer durationEstimation = resultSet.wasNull() ? null : duration;
+            builder.add(resultSet.getLong(1), resultSet.getString(2), durationEstimation, release,
+                    toLongArray(resultSet.getArray(5)));
+        }, teamId);
+        return builder.build();
+    }
+
+    private static long[] toLongArray(Array array) throws java.sql.SQLException {
+        if (array == null)
+            return NO_FATHERS;
+        Object[] values = (Object[]) array.getArray();
+        long[] result = new long[values.length];
+        for (int i = 0; i < values.length; i++)
+            result[i] = ((Number) values[i]).longValue();
+        return result;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("gantt.critical_path.teams", paths, ConcurrentMap::size)
+                .description("Team con il cammino critico in cache")
+                .register(registry);
+    }
+
+    private static final class Entry {
+        private final long day;
+        private final CriticalPath path;
+
+        private Entry(long day, CriticalPath path) {
+            this.day = day;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.isssr.ticketing_system.gantt;
+
+import java.util.Arrays;
+
+/**
+ * Calendario della disponibilità di un team (righe GanttDay del team): per ogni giorno l'availability e gli id dei
+ * ticket pianificati, in due array indicizzati dall'epoch day a partire da {@link #firstDay}. Le ricerche e le
+ * prenotazioni su un intervallo di giorni scorrono gli array senza creare oggetti per giorno; i giorni mai
+ * pianificati hanno availability a zero e nessun ticket.
+ * <p>
+ * Come in GanttDay, l'availability di un giorno è ticket / (membri del team + 2) e un giorno con availability
+ * maggiore o uguale a 1 è pieno.
+ * <p>
+ * Tutti i metodi sono sincronizzati, quindi la verifica dei giorni pieni e la prenotazione di
+ * {@link #reserve(long, long, int, int)} sono atomiche.
+ */
+public class TeamCalendar {
+
+    private static final long[] NO_DAYS = new long[0];
+    private static final long[] NO_TICKETS = new long[0];
+
+    private long firstDay;
+    private double[] availability = new double[0];
+    //NB: id dei ticket di ogni giorno in ordine crescente; gli array non vengono mai modificati ma sostituiti, quindi
+    // possono essere restituiti senza copiarli
+    private long[][] tickets = new long[0][];
+    private int plannedDays;
+
+    /**
+     * Imposta i valori di un giorno, ad esempio al caricamento dal DB.
+     *
+     * @param dayTickets id dei ticket pianificati nel giorno
+     */
+    public synchronized void set(long day, double dayAvailability, long[] dayTickets) {
+        int index = ensure(day, day);
+        boolean wasPlanned = isPlanned(index);
+        long[] sorted = dayTickets.clone();
+        Arrays.sort(sorted);
+        availability[index] = dayAvailability;
+        tickets[index] = sorted;
+        plannedDays += (isPlanned(index) ? 1 : 0) - (wasPlanned ? 1 : 0);
+    }
+
+    public synchronized double getAvailability(long day) {
+        int index = indexOf(day);
+        return index < 0 ? 0 : availability[index];
+    }
+
+    public synchronized int getTicketCount(long day) {
+        return getTickets(day).length;
+    }
+
+    /**
+     * @return gli id dei ticket pianificati nel giorno, in ordine crescente (l'array non va modificato)
+     */
+    public synchronized long[] getTickets(long day) {
+        int index = indexOf(day);
+        return index < 0 || tickets[index] == null ? NO_TICKETS : tickets[index];
+    }
+
+    /**
+     * Availability dei giorni da from a from + days - 1.
+     */
+    public synchronized double[] getAvailability(long from, int days) {
+        double[] result = new double[days];
+        long start = Math.max(from, firstDay);
+        long end = Math.min(from + days, firstDay + availability.length);
+        for (long day = start; day < end; day++)
+            result[(int) (day - from)] = availability[(int) (day - firstDay)];
+        return result;
+    }
+
+    /**
+     * Numero di ticket pianificati nei giorni da from a from + days - 1.
+     */
+    public synchronized int[] getTicketCounts(long from, int days) {
+        int[] result = new int[days];
+        long start = Math.max(from, firstDay);
+        long end = Math.min(from + days, firstDay + tickets.length);
+        for (long day = start; day < end; day++) {
+            long[] dayTickets = tickets[(int) (day - firstDay)];
+            result[(int) (day - from)] = dayTickets == null ? 0 : dayTickets.length;
+        }
+        return result;
+    }
+
+    /**
+     * Copia coerente dei giorni da from a from + days - 1: availability e ticket sono letti con un solo lock, quindi
+     * nessuna prenotazione concorrente è visibile a metà.
+     */
+    public synchronized Window getWindow(long from, int days) {
+        long[][] windowTickets = new long[days][];
+        long start = Math.max(from, firstDay);
+        long end = Math.min(from + days, firstDay + tickets.length);
+        for (int i = 0; i < days; i++)
+            windowTickets[i] = NO_TICKETS;
+        for (long day = start; day < end; day++) {
+            long[] dayTickets = tickets[(int) (day - firstDay)];
+            if (dayTickets != null)
+                windowTickets[(int) (day - from)] = dayTickets;
+        }
+        return new Window(from, getAvailability(from, days), windowTickets);
+    }
+
+    /**
+     * @return i giorni pieni (availability >= 1) tra from e from + days - 1, in ordine
+     */
+    public synchronized long[] findFullDays(long from, int days) {
+        long start = Math.max(from, firstDay);
+        long end = Math.min(from + days, firstDay + availability.length);
+        int count = 0;
+        for (long day = start; day < end; day++)
+            if (availability[(int) (day - firstDay)] >= 1)
+                count++;
+        if (count == 0)
+            return NO_DAYS;
+
+        long[] fullDays = new long[count];
+        count = 0;
+        for (long day = start; day < end; day++)
+            if (availability[(int) (day - firstDay)] >= 1)
+                fullDays[count++] = day;
+        return fullDays;
+    }
+
+    /**
+     * Primo giorno di inizio, a partire da from, di un intervallo di days giorni senza giorni pieni. Basta una sola
+     * scansione dell'array: ogni giorno pieno sposta l'inizio candidato al giorno successivo, e la scansione si ferma
+     * quando l'intervallo che parte dal candidato è tutto libero (i giorni oltre la fine del calendario sono liberi).
+     */
+    public synchronized long findEarliestStart(long from, int days) {
+        long start = from;
+        long end = firstDay + availability.length;
+        for (long day = Math.max(from, firstDay); day < end && day < start + days; day++)
+            if (availability[(int) (day - firstDay)] >= 1)
+                start = day + 1;
+        return start;
+    }
+
+    /**
+     * Prenota un ticket nei giorni da from a from + days - 1, se nessuno di essi è pieno: il ticket viene aggiunto ai
+     * giorni in cui non era già pianificato e l'availability viene ricalcolata con il numero attuale di membri del team.
+     *
+     * @param teamMembers numero di membri del team
+     * @return i giorni pieni, in ordine; se non è vuoto il calendario non viene modificato
+     */
+    public synchronized long[] reserve(long ticketId, long from, int days, int teamMembers) {
+        long[] fullDays = findFullDays(from, days);
+        if (fullDays.length > 0 || days <= 0)
+            return fullDays;
+
+        int start = ensure(from, from + days - 1);
+        for (int i = 0; i < days; i++) {
+            int index = start + i;
+            if (!isPlanned(index))
+                this.plannedDays++;
+            long[] dayTickets = tickets[index] == null ? NO_TICKETS : tickets[index];
+            int position = Arrays.binarySearch(dayTickets, ticketId);
+            if (position < 0) {
+                position = -position - 1;
+                long[] added = new long[dayTickets.length + 1];
+                System.arraycopy(dayTickets, 0, added, 0, position);
+                added[position] = ticketId;
+                System.arraycopy(dayTickets, position, added, position + 1, dayTickets.length - position);
+                tickets[index] = dayTickets = added;
+            }
+            availability[index] = (double) dayTickets.length / (teamMembers + 2);
+        }
+        return NO_DAYS;
+    }
+
+    /**
+     * @return numero di giorni con almeno un ticket o un'availability diversa da zero
+     */
+    public synchronized int getPlannedDayCount() {
+        return plannedDays;
+    }
+
+    private int indexOf(long day) {
+        long index = day - firstDay;
+        return index < 0 || index >= availability.length ? -1 : (int) index;
+    }
+
+    private boolean isPlanned(int index) {
+        return availability[index] != 0 || (tickets[index] != null && tickets[index].length > 0);
+    }
+
+    /**
+     * Allarga gli array in modo che contengano i giorni da from a to, raddoppiando la capacità per non riallocare ad
+     * ogni nuova prenotazione.
+     *
+     * @return l'indice di from
+     */
+    private int ensure(long from, long to) {
+        if (availability.length == 0) {
+            firstDay = from;
+            int capacity = (int) Math.max(64, to - from + 1);
+            availability = new double[capacity];
+            tickets = new long[capacity][];
+            return 0;
+        }
+
+        long lastDay = firstDay + availability.length - 1;
+        if (from < firstDay || to > lastDay) {
+            long newFirst = Math.min(from, firstDay);
+            long newLast = Math.max(to, lastDay);
+            long span = newLast - newFirst + 1;
+            // spazio libero nella direzione in cui il calendario sta crescendo
+            long capacity = Math.max(span, 2L * availability.length);
+            if (capacity > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Calendar range too large");
+            if (from < firstDay)
+                newFirst = newLast - capacity + 1;
+
+            double[] newAvailability = new double[(int) capacity];
+            long[][] newTickets = new long[(int) capacity][];
+            int offset = (int) (firstDay - newFirst);
+            System.arraycopy(availability, 0, newAvailability, offset, availability.length);
+            System.arraycopy(tickets, 0, newTickets, offset, tickets.length);
+            availability = newAvailability;
+            tickets = newTickets;
+            firstDay = newFirst;
+        }
+        return (int) (from - firstDay);
+    }
+
+    /**
+     * Giorni da from a from + days - 1 di un calendario: availability[i] e tickets[i] si riferiscono al giorno from + i.
+     */
+    public static class Window {
+        private final long from;
+        private final double[] availability;
+        private final long[][] tickets;
+
+        private Window(long from, double[] availability, long[][] tickets) {
+            this.from = from;
+            this.availability = availability;
+            this.tickets = tickets;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public int getDays() {
+            return availability.length;
+        }
+
+        public double getAvailability(int i) {
+            return availability[i];
+        }
+
+        public long[] getTickets(int i) {
+            return tickets[i];
+        }
+
+        /**
+         * Hash del contenuto della finestra (giorni, availability e ticket), usato come ETag delle risposte.
+         */
+        public long contentHash() {
+            long hash = 31 * from + availability.length;
+            for (int i = 0; i < availability.length; i++) {
+                hash = 31 * hash + Double.doubleToLongBits(availability[i]);
+                hash = 31 * hash + tickets[i].length;
+                for (long ticket : tickets[i])
+                    hash = 31 * hash + ticket;
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.isssr.ticketing_system.gantt;
+
+import com.isssr.ticketing_system.cluster.ClusterInvalidation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indice in memoria dei calendari di disponibilità dei team ({@link TeamCalendar}), copia delle tabelle gantt_day e
+ * tickets_per_day. I calendari sono caricati all'avvio con una sola query e aggiornati da GanttDayController insieme
+ * alle scritture su gantt_day ({@link #reserve(long, long, long, int, int)}): la prenotazione è visibile subito, come
+ * prenotazione provvisoria, e alla fine della transazione (commit o rollback) il calendario del team viene ricaricato
+ * dal DB, perché un reload arrivato prima del commit (da un'altra transazione o da un altro nodo) l'avrebbe persa.
+ * Dopo il commit gli altri nodi del cluster ricaricano il calendario del team ({@link ClusterInvalidation}).
+ */
+@Component
+public class TeamCalendarIndex implements ApplicationListener<ApplicationReadyEvent>, MeterBinder {
+
+    private static final String CALENDAR_SELECT = "select g.team_name, g.day - date '1970-01-01', g.availability, " +
+            "array_remove(array_agg(tpd.tickets_id), null) " +
+            "from gantt_day g left join tickets_per_day tpd " +
+            "on tpd.gantt_day_day = g.day and tpd.gantt_day_team_name = g.team_name " +
+            "where g.team_name is not null ";
+
+    private static final String CALENDAR_GROUP_BY = " group by g.team_name, g.day, g.availability";
+
+    private static final String TOPIC = "team_calendar";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ClusterInvalidation clusterInvalidation;
+
+    private volatile ConcurrentMap<Long, TeamCalendar> calendars;
+
+    @Autowired
+    public TeamCalendarIndex(JdbcTemplate jdbcTemplate, ClusterInvalidation clusterInvalidation) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterInvalidation = clusterInvalidation;
+        clusterInvalidation.subscribe(TOPIC, argument -> reload(Long.parseLong(argument)), this::reload);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        reload();
+    }
+
+    /**
+     * Ricarica i calendari di tutti i team dal DB.
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        ConcurrentMap<Long, TeamCalendar> loaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query(CALENDAR_SELECT + CALENDAR_GROUP_BY, loader(loaded));
+        calendars = loaded;
+
+        System.out.println("Team calendar index loaded in " + (System.currentTimeMillis() - start) + " ms: " +
+                loaded.size() + " teams");
+    }
+
+    /**
+     * Ricarica dal DB il calendario di un team.
+     */
+    public void reload(long teamId) {
+        ConcurrentMap<Long, TeamCalendar> loaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query(CALENDAR_SELECT + "and g.team_name = ?" + CALENDAR_GROUP_BY, loader(loaded), teamId);
+        TeamCalendar calendar = loaded.get(teamId);
+        calendars().put(teamId, calendar != null ? calendar : new TeamCalendar());
+    }
+
+    /**
+     * Ricarica il calendario del team dopo il commit della transazione corrente (o subito, se non c'è una
+     * transazione), ad esempio dopo il salvataggio diretto di un GanttDay.
+     */
+    public void reloadAfterCommit(long teamId) {
+        clusterInvalidation.publish(TOPIC, String.valueOf(teamId));
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            reload(teamId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                reload(teamId);
+            }
+        });
+    }
+
+    /**
+     * @return il calendario del team; un calendario vuoto se il team non ha giorni pianificati
+     */
+    public TeamCalendar calendar(long teamId) {
+        return calendars().computeIfAbsent(teamId, id -> new TeamCalendar());
+    }
+
+    /**
+     * Giorni da from a from + days - 1 del calendario del team. Se i calendari non sono ancora stati caricati (richiesta
+     * arrivata prima di ApplicationReadyEvent) i giorni sono letti con una sola query limitata alla finestra, senza
+     * caricare tutti i calendari.
+     */
+    public TeamCalendar.Window window(long teamId, long from, int days) {
+        if (calendars != null)
+            return calendar(teamId).getWindow(from, days);
+
+        ConcurrentMap<Long, TeamCalendar> loaded = new ConcurrentHashMap<>();
+        jdbcTemplate.query(CALENDAR_SELECT + "and g.team_name = ? and g.day >= ? and g.day < ?" + CALENDAR_GROUP_BY,
+                loader(loaded), teamId, LocalDate.ofEpochDay(from), LocalDate.ofEpochDay(from + days));
+        return loaded.getOrDefault(teamId, new TeamCalendar()).getWindow(from, days);
+    }
+
+    /**
+     * Prenota un ticket nel calendario del team (vedi {@link TeamCalendar#reserve(long, long, int, int)}); se c'è una
+     * transazione attiva, il calendario viene ricaricato dal DB alla sua fine.
+     *
+     * @return i giorni pieni; se non è vuoto non è stato prenotato nulla
+     */
+    public long[] reserve(long teamId, long ticketId, long from, int days, int teamMembers) {
+        long[] fullDays = calendar(teamId).reserve(ticketId, from, days, teamMembers);
+        if (fullDays.length == 0)
+            clusterInvalidation.publish(TOPIC, String.valueOf(teamId));
+        if (fullDays.length == 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    //NB: anche dopo il commit, un reload intermedio può aver sostituito il calendario prenotato
+                    reload(teamId);
+                }
+            });
+        }
+        return fullDays;
+    }
+
+    private static RowCallbackHandler loader(ConcurrentMap<Long, TeamCalendar> loaded) {
+        return resultSet -> {
+            Object[] ticketIds = (Object[]) resultSet.getArray(4).getArray();
+            long[] dayTickets = new long[ticketIds.length];
+            for (int i = 0; i < ticketIds.length; i++)
+                dayTickets[i] = ((Number) ticketIds[i]).longValue();
+            loaded.computeIfAbsent(resultSet.getLong(1), id -> new TeamCalendar())
+                    .set(resultSet.getLong(2), resultSet.getDouble(3), dayTickets);
+        };
+    }
+
+    private ConcurrentMap<Long, TeamCalendar> calendars() {
+        ConcurrentMap<Long, TeamCalendar> current = calendars;
+        if (current == null) {
+            // richiesta arrivata prima di ApplicationReadyEvent
+            synchronized (this) {
+                if (calendars == null)
+                    reload();
+            }
+            current = calendars;
+        }
+        return current;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("gantt.calendar.days", this, index -> index.calendars == null ? 0 :
+                index.calendars.values().stream().mapToLong(TeamCalendar::getPlannedDayCount).sum())
+                .description("Giorni pianificati nei calendari dei team in memoria")
+                .register(registry);
+    }
+}
@@ -0,0 +1,174 @@
+package com.isssr.ticketing_system.graph;
+
+import java.util.Arrays;
+
+/**
+ * Partizione dei ticket in classi di equivalenza (union-find): ogni classe è un albero di nodi con compressione dei
+ * cammini e unione per dimensione, quindi trovare la classe di un ticket e unire due classi costano O(α(n)).
+ * I nodi di una stessa classe sono collegati anche in una lista circolare doppia, così l'elenco dei membri costa
+ * O(dimensione della classe) e l'unione si limita a concatenare le due liste.
+ * <p>
+ * Ogni classe ha un'etichetta, l'id della classe (il ticket primario), scelta da chi unisce le classi. Un ticket
+ * rimosso da una classe resta nell'albero come nodo "fantasma" (non più associato al suo id e fuori dalla lista dei
+ * membri), in modo che i cammini degli altri nodi restino validi; i fantasmi sono eliminati al ricaricamento.
+ * <p>
+ * Tutti i metodi sono sincronizzati: la ricerca comprime i cammini, quindi anche le letture modificano la struttura.
+ */
+public class EquivalenceClasses {
+
+    private static final long[] NO_TICKETS = new long[0];
+
+    private final LongIntMap nodes;
+    private long[] ids;
+    private int[] parent;
+    private int[] size;
+    private long[] label;
+    private int[] next;
+    private int[] previous;
+    private int nodeCount;
+
+    public EquivalenceClasses() {
+        this(16);
+    }
+
+    /**
+     * @param expectedTickets numero previsto di ticket in una classe di equivalenza
+     */
+    public EquivalenceClasses(int expectedTickets) {
+        int capacity = Math.max(16, expectedTickets);
+        nodes = new LongIntMap(capacity);
+        ids = new long[capacity];
+        parent = new int[capacity];
+        size = new int[capacity];
+        label = new long[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+    }
+
+    /**
+     * Unisce le classi dei due ticket; un ticket che non fa parte di nessuna classe vi entra.
+     *
+     * @param classId id della classe risultante
+     */
+    public synchronized void union(long firstId, long secondId, long classId) {
+        int first = find(node(firstId));
+        int second = find(node(secondId));
+        if (first != second) {
+            if (size[first] < size[second]) {
+                int swap = first;
+                first = second;
+                second = swap;
+            }
+            parent[second] = first;
+            size[first] += size[second];
+
+            // concatenazione delle due liste circolari
+            int firstNext = next[first];
+            int secondNext = next[second];
+            next[first] = secondNext;
+            previous[secondNext] = first;
+            next[second] = firstNext;
+            previous[firstNext] = second;
+        }
+        label[first] = classId;
+    }
+
+    /**
+     * @return l'id della classe del ticket, null se il ticket non fa parte di nessuna classe
+     */
+    public synchronized Long classOf(long id) {
+        int node = nodes.get(id);
+        return node == LongIntMap.MISSING ? null : label[find(node)];
+    }
+
+    public synchronized boolean sameClass(long firstId, long secondId) {
+        int first = nodes.get(firstId);
+        int second = nodes.get(secondId);
+        return first != LongIntMap.MISSING && second != LongIntMap.MISSING && find(first) == find(second);
+    }
+
+    /**
+     * @return gli id dei ticket della classe di id, compreso id; vuoto se il ticket non fa parte di nessuna classe
+     */
+    public synchronized long[] members(long id) {
+        int start = nodes.get(id);
+        if (start == LongIntMap.MISSING)
+            return NO_TICKETS;
+
+        long[] members = new long[size[find(start)]];
+        int count = 0;
+        int node = start;
+        do {
+            members[count++] = ids[node];
+            node = next[node];
+        } while (node != start);
+        return members;
+    }
+
+    /**
+     * Toglie il ticket dalla sua classe; gli altri ticket restano equivalenti tra loro.
+     *
+     * @return true se il ticket faceva parte di una classe
+     */
+    public synchronized boolean remove(long id) {
+        int node = nodes.remove(id);
+        if (node == LongIntMap.MISSING)
+            return false;
+        size[find(node)]--;
+        next[previous[node]] = next[node];
+        previous[next[node]] = previous[node];
+        next[node] = node;
+        previous[node] = node;
+        return true;
+    }
+
+    /**
+     * Elimina la classe del ticket: nessuno dei suoi membri è più equivalente ad altri ticket.
+     *
+     * @return gli id dei ticket che facevano parte della classe
+     */
+    public synchronized long[] dissolve(long id) {
+        long[] members = members(id);
+        for (long member : members)
+            nodes.remove(member);
+        return members;
+    }
+
+    public synchronized int getTicketCount() {
+        return nodes.size();
+    }
+
+    private int find(int node) {
+        // path halving: ogni nodo visitato viene agganciato al nonno
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private int node(long id) {
+        int node = nodes.get(id);
+        if (node != LongIntMap.MISSING)
+            return node;
+
+        if (nodeCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            size = Arrays.copyOf(size, capacity);
+            label = Arrays.copyOf(label, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        node = nodeCount++;
+        ids[node] = id;
+        parent[node] = node;
+        size[node] = 1;
+        label[node] = id;
+        next[node] = node;
+        previous[node] = node;
+        nodes.put(id, node);
+        return node;
+    }
+}
@@ -0,0 +1,104 @@
+package com.isssr.ticketing_system.graph;
+
+import java.util.Arrays;
+
+/**
+ * Mappa long -> int ad indirizzamento aperto (linear probing), senza boxing: associa ad ogni id di ticket
+ * l'indice del nodo in {@link TicketGraph} o {@link EquivalenceClasses}. Non è thread-safe, la sincronizzazione è
+ * fatta da chi la usa.
+ */
+final class LongIntMap {
+
+    static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        mask = capacity - 1;
+    }
+
+    int get(long key) {
+        int slot = slot(key);
+        while (values[slot] != MISSING) {
+            if (keys[slot] == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * @param value valore da associare alla chiave, non negativo
+     */
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length)
+            rehash();
+        int slot = slot(key);
+        while (values[slot] != MISSING) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * @return il valore associato alla chiave rimossa, MISSING se la chiave non era presente
+     */
+    int remove(long key) {
+        int slot = slot(key);
+        while (values[slot] != MISSING && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        int removed = values[slot];
+        if (removed == MISSING)
+            return MISSING;
+
+        // backward shift: le chiavi successive nella stessa sequenza di probing vengono spostate indietro
+        int hole = slot;
+        for (int next = (hole + 1) & mask; values[next] != MISSING; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = MISSING;
+        size--;
+        return removed;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldValues[i] != MISSING)
+                put(oldKeys[i], oldValues[i]);
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,204 @@
+package com.isssr.ticketing_system.graph;
+
+import com.isssr.ticketing_system.cluster.ClusterInvalidation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Indice in memoria delle classi di equivalenza tra ticket, copia della colonna ticket.class_id (id del ticket
+ * primario della classe). Le classi sono caricate all'avvio e aggiornate da TicketController insieme agli UPDATE su
+ * class_id ({@link #merge(long, long, long)}, {@link #dissolve(long)}): la modifica è visibile
+ * subito e, se la transazione fa rollback, l'indice viene ricaricato dal DB. Dopo il commit gli altri nodi del
+ * cluster ricaricano l'indice ({@link ClusterInvalidation}).
+ * <p>
+ * All'avvio le equivalenze salvate nella vecchia colonna equivalence_primary_id vengono copiate in class_id; la
+ * colonna viene eliminata solo se migration.drop-legacy-columns = true e la copia è completa.
+ */
+@Component
+public class TicketEquivalenceIndex implements ApplicationListener<ApplicationReadyEvent>, MeterBinder {
+
+    private static final String TOPIC = "ticket_equivalence";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ClusterInvalidation clusterInvalidation;
+
+    private final boolean dropLegacyColumns;
+
+    private volatile EquivalenceClasses classes;
+
+    @Autowired
+    public TicketEquivalenceIndex(JdbcTemplate jdbcTemplate, ClusterInvalidation clusterInvalidation,
+                                  @Value("${migration.drop-legacy-columns}") boolean dropLegacyColumns) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterInvalidation = clusterInvalidation;
+        this.dropLegacyColumns = dropLegacyColumns;
+        clusterInvalidation.subscribe(TOPIC, argument -> reload(), this::reload);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        migrate();
+        reload();
+    }
+
+    /**
+     * Copia in class_id le equivalenze della colonna equivalence_primary_id (relazione ticket primario/secondari).
+     * La colonna viene eliminata solo se richiesto e se ogni ticket con equivalence_primary_id ha class_id.
+     */
+    private void migrate() {
+        try {
+            Integer legacyColumn = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                    "where table_name = 'ticket' and column_name = 'equivalence_primary_id'", Integer.class);
+            if (legacyColumn == null || legacyColumn == 0)
+                return;
+            int migrated = jdbcTemplate.update("update ticket set class_id = equivalence_primary_id " +
+                    "where class_id is null and equivalence_primary_id is not null");
+            if (migrated > 0)
+                System.out.println("Ticket equivalence: migrated " + migrated + " tickets to class_id");
+
+            if (!dropLegacyColumns)
+                return;
+            Integer notMigrated = jdbcTemplate.queryForObject("select count(*) from ticket " +
+                    "where equivalence_primary_id is not null and class_id is null", Integer.class);
+            if (notMigrated != null && notMigrated > 0) {
+                System.out.println("Ticket equivalence: " + notMigrated + " tickets without class_id, " +
+                        "column equivalence_primary_id not dropped");
+                return;
+            }
+            jdbcTemplate.execute("alter table ticket drop column equivalence_primary_id");
+            System.out.println("Ticket equivalence: column equivalence_primary_id dropped");
+        } catch (DataAccessException e) {
+            System.out.println("Error during ticket equivalence migration");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Ricarica le classi di equivalenza dal DB.
+     */
+    public synchronized void reload() {
+        Integer tickets = jdbcTemplate.queryForObject("select count(*) from ticket where class_id is not null",
+                Integer.class);
+        EquivalenceClasses loaded = new EquivalenceClasses(tickets == null ? 0 : tickets);
+        jdbcTemplate.query("select id, class_id from ticket where class_id is not null",
+                resultSet -> {
+                    long classId = resultSet.getLong(2);
+                    loaded.union(resultSet.getLong(1), classId, classId);
+                });
+        classes = loaded;
+    }
+
+    /**
+     * Ricarica le classi dopo il commit della transazione corrente (o subito, se non c'è una transazione), ad esempio
+     * dopo una cancellazione massiva di ticket.
+     */
+    public void reloadAfterCommit() {
+        clusterInvalidation.publish(TOPIC, "");
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            reload();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                reload();
+            }
+        });
+    }
+
+    /**
+     * @return l'id della classe del ticket (id del primario), null se il ticket non è equivalente ad altri
+     */
+    public Long classOf(long ticketId) {
+        return classes().classOf(ticketId);
+    }
+
+    /**
+     * @return l'id della classe del ticket o, se il ticket non è equivalente ad altri, l'id del ticket stesso
+     */
+    public long classOrSelf(long ticketId) {
+        Long classId = classes().classOf(ticketId);
+        return classId == null ? ticketId : classId;
+    }
+
+    public boolean isPrimary(long ticketId) {
+        Long classId = classes().classOf(ticketId);
+        return classId != null && classId == ticketId;
+    }
+
+    public boolean sameClass(long firstId, long secondId) {
+        return classes().sameClass(firstId, secondId);
+    }
+
+    /**
+     * @return gli id dei ticket equivalenti a ticketId, compreso ticketId; solo ticketId se non è equivalente ad altri
+     */
+    public long[] membersOrSelf(long ticketId) {
+        long[] members = classes().members(ticketId);
+        return members.length == 0 ? new long[]{ticketId} : members;
+    }
+
+    /**
+     * Unisce le classi dei due ticket, dopo l'UPDATE TicketDao.mergeEquivalenceClasses.
+     */
+    public void merge(long firstId, long secondId, long classId) {
+        classes().union(firstId, secondId, classId);
+        clusterInvalidation.publish(TOPIC, "");
+        reloadOnRollback();
+    }
+
+    /**
+     * Elimina la classe del ticket, dopo l'UPDATE TicketDao.clearEquivalenceClasses.
+     */
+    public void dissolve(long ticketId) {
+        if (classes().dissolve(ticketId).length > 0) {
+            clusterInvalidation.publish(TOPIC, "");
+            reloadOnRollback();
+        }
+    }
+
+    private void reloadOnRollback() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != TransactionSynchronization.STATUS_COMMITTED)
+                    reload();
+            }
+        });
+    }
+
+    private EquivalenceClasses classes() {
+        EquivalenceClasses current = classes;
+        if (current == null) {
+            // richiesta arrivata prima di ApplicationReadyEvent
+            synchronized (this) {
+                if (classes == null)
+                    reload();
+            }
+            current = classes;
+        }
+        return current;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ticket.equivalence.tickets", this, index -> index.classes == null ? 0 :
+                index.classes.getTicketCount())
+                .description("Ticket che fanno parte di una classe di equivalenza")
+                .register(registry);
+    }
+}
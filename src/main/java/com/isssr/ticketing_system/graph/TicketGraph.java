@@ -0,0 +1,290 @@
+package com.isssr.ticketing_system.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Grafo orientato tra ticket di un tipo di relazione (es. dipendenza): un arco padre -> figlio per ogni istanza
+ * della relazione. I nodi sono indicizzati da interi e le liste di adiacenza (uscenti ed entranti) sono array di
+ * int, quindi le visite non creano oggetti per nodo o per arco e costano O(V + E) nel caso peggiore.
+ * <p>
+ * Le letture possono essere concorrenti, le scritture sono serializzate da un ReadWriteLock.
+ */
+public class TicketGraph {
+
+    private static final int[] NO_EDGES = new int[0];
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongIntMap nodes;
+    private long[] ids;
+    private int[][] out;
+    private int[] outSize;
+    private int[][] in;
+    private int[] inSize;
+    private int nodeCount;
+    private long edgeCount;
+
+    public TicketGraph() {
+        this(16);
+    }
+
+    /**
+     * @param expectedNodes numero di nodi previsto, per dimensionare le strutture
+     */
+    public TicketGraph(int expectedNodes) {
+        int capacity = Math.max(16, expectedNodes);
+        nodes = new LongIntMap(capacity);
+        ids = new long[capacity];
+        out = new int[capacity][];
+        outSize = new int[capacity];
+        in = new int[capacity][];
+        inSize = new int[capacity];
+    }
+
+    /**
+     * @return true se l'arco è stato aggiunto, false se era già presente
+     */
+    public boolean addEdge(long fatherId, long sonId) {
+        lock.writeLock().lock();
+        try {
+            int father = node(fatherId);
+            int son = node(sonId);
+            if (indexOf(out[father], outSize[father], son) >= 0)
+                return false;
+            out[father] = append(out[father], outSize[father]++, son);
+            in[son] = append(in[son], inSize[son]++, father);
+            edgeCount++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true se l'arco è stato rimosso, false se non era presente
+     */
+    public boolean removeEdge(long fatherId, long sonId) {
+        lock.writeLock().lock();
+        try {
+            int father = nodes.get(fatherId);
+            int son = nodes.get(sonId);
+            if (father == LongIntMap.MISSING || son == LongIntMap.MISSING)
+                return false;
+            int position = indexOf(out[father], outSize[father], son);
+            if (position < 0)
+                return false;
+            out[father][position] = out[father][--outSize[father]];
+            int inPosition = indexOf(in[son], inSize[son], father);
+            in[son][inPosition] = in[son][--inSize[son]];
+            edgeCount--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasEdge(long fatherId, long sonId) {
+        lock.readLock().lock();
+        try {
+            int father = nodes.get(fatherId);
+            int son = nodes.get(sonId);
+            return father != LongIntMap.MISSING && son != LongIntMap.MISSING
+                    && indexOf(out[father], outSize[father], son) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cammino minimo (in numero di archi) tra due ticket, trovato con una visita in ampiezza.
+     *
+     * @return gli id dei ticket del cammino, da fromId a toId inclusi; null se toId non è raggiungibile
+     */
+    public long[] findPath(long fromId, long toId) {
+        if (fromId == toId)
+            return new long[]{fromId};
+
+        lock.readLock().lock();
+        try {
+            int from = nodes.get(fromId);
+            int to = nodes.get(toId);
+            if (from == LongIntMap.MISSING || to == LongIntMap.MISSING)
+                return null;
+
+            Scratch scratch = SCRATCH.get().prepare(nodeCount);
+            int[] queue = scratch.queue;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = from;
+            scratch.visit(from, -1);
+            while (head < tail) {
+                int current = queue[head++];
+                int[] sons = out[current];
+                for (int i = 0, n = outSize[current]; i < n; i++) {
+                    int son = sons[i];
+                    if (scratch.isVisited(son))
+                        continue;
+                    scratch.visit(son, current);
+                    if (son == to)
+                        return path(scratch, to);
+                    queue[tail++] = son;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return gli id dei ticket raggiungibili da id seguendo gli archi (figli, figli dei figli, ...), in ordine di distanza
+     */
+    public long[] descendants(long id) {
+        return visit(id, true);
+    }
+
+    /**
+     * @return gli id dei ticket da cui id è raggiungibile (padri, padri dei padri, ...), in ordine di distanza
+     */
+    public long[] ancestors(long id) {
+        return visit(id, false);
+    }
+
+    public int getNodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getEdgeCount() {
+        lock.readLock().lock();
+        try {
+            return edgeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] visit(long id, boolean forward) {
+        lock.readLock().lock();
+        try {
+            int start = nodes.get(id);
+            if (start == LongIntMap.MISSING)
+                return new long[0];
+
+            int[][] edges = forward ? out : in;
+            int[] sizes = forward ? outSize : inSize;
+            Scratch scratch = SCRATCH.get().prepare(nodeCount);
+            int[] queue = scratch.queue;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            scratch.visit(start, -1);
+            while (head < tail) {
+                int current = queue[head++];
+                int[] adjacent = edges[current];
+                for (int i = 0, n = sizes[current]; i < n; i++) {
+                    if (!scratch.isVisited(adjacent[i])) {
+                        scratch.visit(adjacent[i], current);
+                        queue[tail++] = adjacent[i];
+                    }
+                }
+            }
+
+            // il primo nodo visitato è quello di partenza
+            long[] result = new long[tail - 1];
+            for (int i = 1; i < tail; i++)
+                result[i - 1] = ids[queue[i]];
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] path(Scratch scratch, int to) {
+        int length = 0;
+        for (int node = to; node != -1; node = scratch.parent[node])
+            length++;
+        long[] path = new long[length];
+        for (int node = to; node != -1; node = scratch.parent[node])
+            path[--length] = ids[node];
+        return path;
+    }
+
+    private int node(long id) {
+        int node = nodes.get(id);
+        if (node != LongIntMap.MISSING)
+            return node;
+
+        if (nodeCount == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            out = Arrays.copyOf(out, capacity);
+            outSize = Arrays.copyOf(outSize, capacity);
+            in = Arrays.copyOf(in, capacity);
+            inSize = Arrays.copyOf(inSize, capacity);
+        }
+        node = nodeCount++;
+        ids[node] = id;
+        out[node] = NO_EDGES;
+        in[node] = NO_EDGES;
+        nodes.put(id, node);
+        return node;
+    }
+
+    private static int[] append(int[] edges, int size, int node) {
+        if (size == edges.length)
+            edges = Arrays.copyOf(edges, Math.max(4, size * 2));
+        edges[size] = node;
+        return edges;
+    }
+
+    private static int indexOf(int[] edges, int size, int node) {
+        for (int i = 0; i < size; i++)
+            if (edges[i] == node)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Array di lavoro delle visite, riusati dallo stesso thread: un nodo è visitato se seen[nodo] == stamp,
+     * quindi non serve azzerarli ad ogni visita.
+     */
+    private static final class Scratch {
+        private int[] seen = new int[0];
+        private int[] parent = new int[0];
+        private int[] queue = new int[0];
+        private int stamp;
+
+        private Scratch prepare(int nodeCount) {
+            if (seen.length < nodeCount) {
+                int capacity = Math.max(nodeCount, seen.length * 2);
+                seen = new int[capacity];
+                parent = new int[capacity];
+                queue = new int[capacity];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                stamp = 1;
+            }
+            return this;
+        }
+
+        private boolean isVisited(int node) {
+            return seen[node] == stamp;
+        }
+
+        private void visit(int node, int from) {
+            seen[node] = stamp;
+            parent[node] = from;
+        }
+    }
+}
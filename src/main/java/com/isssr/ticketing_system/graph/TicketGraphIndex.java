@@ -0,0 +1,184 @@
+package com.isssr.ticketing_system.graph;
+
+import com.isssr.ticketing_system.cluster.ClusterInvalidation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indice in memoria delle relazioni tra ticket: un {@link TicketGraph} per la dipendenza (tabella dependent_tickets)
+ * e uno per ogni relazione custom (tabella relation_instance, per nome della relazione).
+ * <p>
+ * I grafi sono caricati all'avvio e aggiornati da chi scrive le relazioni (TicketController.addDependentTicket,
+ * RelationInstanceController.createRelationInstance) con {@link #addEdge(String, long, long)}: l'arco è visibile
+ * subito, così i controlli successivi nella stessa transazione lo considerano, e viene rimosso se la transazione
+ * fa rollback. Controlli di ciclicità e ricerche di antenati/discendenti non accedono al DB.
+ * <p>
+ * Archi e ricaricamenti vengono propagati agli altri nodi del cluster con {@link ClusterInvalidation}.
+ */
+@Component
+public class TicketGraphIndex implements ApplicationListener<ApplicationReadyEvent>, MeterBinder {
+
+    /**
+     * Relazione di dipendenza: arco dal ticket al ticket che dipende da esso (Ticket.dependentTickets).
+     */
+    public static final String DEPENDENCY = "DEPENDENCY";
+
+    private static final String TOPIC = "ticket_graph";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ClusterInvalidation clusterInvalidation;
+
+    private volatile ConcurrentMap<String, TicketGraph> graphs;
+
+    @Autowired
+    public TicketGraphIndex(JdbcTemplate jdbcTemplate, ClusterInvalidation clusterInvalidation) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterInvalidation = clusterInvalidation;
+        clusterInvalidation.subscribe(TOPIC, this::onInvalidation, this::reload);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        reload();
+    }
+
+    /**
+     * Ricarica tutti i grafi dal DB.
+     */
+    public synchronized void reload() {
+        long start = System.currentTimeMillis();
+        Integer tickets = jdbcTemplate.queryForObject("select count(*) from ticket", Integer.class);
+        int expectedNodes = tickets == null ? 0 : tickets;
+
+        ConcurrentMap<String, TicketGraph> loaded = new ConcurrentHashMap<>();
+        TicketGraph dependencies = new TicketGraph(expectedNodes);
+        loaded.put(DEPENDENCY, dependencies);
+        jdbcTemplate.query("select ticket_id, dependent_tickets_id from dependent_tickets",
+                resultSet -> {
+                    dependencies.addEdge(resultSet.getLong(1), resultSet.getLong(2));
+                });
+        jdbcTemplate.query("select relation_name, father_ticket_id, son_ticket_id from relation_instance " +
+                        "where relation_name is not null and father_ticket_id is not null and son_ticket_id is not null",
+                resultSet -> {
+                    loaded.computeIfAbsent(resultSet.getString(1), name -> new TicketGraph())
+                            .addEdge(resultSet.getLong(2), resultSet.getLong(3));
+                });
+        graphs = loaded;
+
+        System.out.println("Ticket graph index loaded in " + (System.currentTimeMillis() - start) + " ms: " +
+                dependencies.getEdgeCount() + " dependencies, " + (loaded.size() - 1) + " custom relations");
+    }
+
+    /**
+     * Ricarica i grafi dopo il commit della transazione corrente (o subito, se non c'è una transazione), ad esempio
+     * dopo una cancellazione massiva di ticket.
+     */
+    public void reloadAfterCommit() {
+        clusterInvalidation.publish(TOPIC, "");
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            reload();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                reload();
+            }
+        });
+    }
+
+    /**
+     * Controlla se l'arco fatherId -> sonId chiuderebbe un ciclo, cioè se fatherId è già raggiungibile da sonId.
+     *
+     * @param relation nome della relazione ({@link #DEPENDENCY} per la dipendenza)
+     * @return gli id dei ticket del ciclo, da sonId a fatherId; null se l'arco non crea cicli
+     */
+    public long[] findCycle(String relation, long fatherId, long sonId) {
+        return graph(relation).findPath(sonId, fatherId);
+    }
+
+    public boolean hasEdge(String relation, long fatherId, long sonId) {
+        return graph(relation).hasEdge(fatherId, sonId);
+    }
+
+    /**
+     * @return gli id dei ticket da cui id dipende, direttamente o indirettamente
+     */
+    public long[] ancestors(String relation, long id) {
+        return graph(relation).ancestors(id);
+    }
+
+    /**
+     * @return gli id dei ticket che dipendono da id, direttamente o indirettamente
+     */
+    public long[] descendants(String relation, long id) {
+        return graph(relation).descendants(id);
+    }
+
+    /**
+     * Aggiunge l'arco all'indice; se c'è una transazione attiva, l'arco viene rimosso in caso di rollback.
+     */
+    public void addEdge(String relation, long fatherId, long sonId) {
+        clusterInvalidation.publish(TOPIC, fatherId + " " + sonId + " " + relation);
+        TicketGraph graph = graph(relation);
+        if (!graph.addEdge(fatherId, sonId))
+            return;
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != TransactionSynchronization.STATUS_COMMITTED)
+                        graph.removeEdge(fatherId, sonId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Messaggio di un altro nodo: un arco salvato ("fatherId sonId relazione") o, se vuoto, un ricaricamento.
+     */
+    private void onInvalidation(String argument) {
+        if (argument.isEmpty()) {
+            reload();
+            return;
+        }
+        String[] edge = argument.split(" ", 3);
+        graph(edge[2]).addEdge(Long.parseLong(edge[0]), Long.parseLong(edge[1]));
+    }
+
+    private TicketGraph graph(String relation) {
+        ConcurrentMap<String, TicketGraph> current = graphs;
+        if (current == null) {
+            // richiesta arrivata prima di ApplicationReadyEvent
+            synchronized (this) {
+                if (graphs == null)
+                    reload();
+            }
+            current = graphs;
+        }
+        TicketGraph graph = current.get(relation);
+        return graph != null ? graph : current.computeIfAbsent(relation, name -> new TicketGraph());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ticket.graph.edges", this, index -> index.graphs == null ? 0 :
+                index.graphs.values().stream().mapToLong(TicketGraph::getEdgeCount).sum())
+                .description("Archi delle relazioni tra ticket nell'indice in memoria")
+                .register(registry);
+    }
+}
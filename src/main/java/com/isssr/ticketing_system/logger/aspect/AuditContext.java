@@ -0,0 +1,43 @@
+package com.isssr.ticketing_system.logger.aspect;
+
+/**
+ * Contesto di audit del thread corrente: dentro un blocco {@link #suppress()} i metodi annotati con
+ * {@link LogOperation} vengono eseguiti senza che {@link LogAspect} serializzi argomenti e risultato e salvi il Record.
+ * La sospensione riguarda solo il thread che l'ha chiesta, quindi non cambia l'audit delle chiamate concorrenti:
+ * <pre>
+ * try (AuditContext.Suppression ignored = AuditContext.suppress()) {
+ *     userSwitchController.doQueryReadOnlyMode(...);
+ * }
+ * </pre>
+ * I blocchi possono essere annidati: l'audit riprende all'uscita dal blocco più esterno.
+ */
+public final class AuditContext {
+
+    // profondità dei blocchi suppress() aperti nel thread
+    private static final ThreadLocal<int[]> SUPPRESSED = ThreadLocal.withInitial(() -> new int[1]);
+
+    private static final Suppression SUPPRESSION = () -> SUPPRESSED.get()[0]--;
+
+    private AuditContext() {
+    }
+
+    /**
+     * Sospende l'audit nel thread corrente fino alla chiusura della Suppression restituita.
+     */
+    public static Suppression suppress() {
+        SUPPRESSED.get()[0]++;
+        return SUPPRESSION;
+    }
+
+    /**
+     * @return true se il thread corrente è dentro un blocco {@link #suppress()}
+     */
+    public static boolean isSuppressed() {
+        return SUPPRESSED.get()[0] > 0;
+    }
+
+    public interface Suppression extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
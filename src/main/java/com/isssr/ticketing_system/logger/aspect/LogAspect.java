@@ -65,6 +65,10 @@ public class LogAspect {
     @Around("@annotation(LogOperation)")
     public Object logOperationAdvice(ProceedingJoinPoint jp) throws Throwable {
 
+        //NB: audit sospeso nel thread corrente (AuditContext.suppress()): nessuna serializzazione né Record
+        if (AuditContext.isSuppressed())
+            return jp.proceed();
+
         // run annotated method
         Object returnObject = jp.proceed();
         // get method annotation
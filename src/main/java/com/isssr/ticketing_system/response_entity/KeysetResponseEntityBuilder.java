@@ -0,0 +1,31 @@
+package com.isssr.ticketing_system.response_entity;
+
+import com.isssr.ticketing_system.utils.KeysetPage;
+import org.springframework.http.HttpStatus;
+
+public class KeysetResponseEntityBuilder extends HashMapResponseEntityBuilder {
+
+    public KeysetResponseEntityBuilder() {
+        super();
+    }
+
+    public KeysetResponseEntityBuilder(HttpStatus status) {
+        super(status);
+    }
+
+    public KeysetResponseEntityBuilder(KeysetPage<?> page) {
+        super();
+        this.setPage(page);
+    }
+
+    public KeysetResponseEntityBuilder(HttpStatus status, KeysetPage<?> page) {
+        super(status);
+        this.setPage(page);
+    }
+
+    public KeysetResponseEntityBuilder setPage(KeysetPage<?> page) {
+        this.set("content", page.getContent())
+                .set("nextCursor", page.hasNext() ? page.getNextCursor().encode() : null);
+        return this;
+    }
+}
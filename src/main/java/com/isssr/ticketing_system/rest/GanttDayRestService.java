@@ -1,15 +1,20 @@
 package com.isssr.ticketing_system.rest;
 
 import com.isssr.ticketing_system.controller.GanttDayController;
+import com.isssr.ticketing_system.dto.CriticalPathDto;
+import com.isssr.ticketing_system.dto.GanttSlotDto;
+import com.isssr.ticketing_system.dto.GanttWindowDto;
 import com.isssr.ticketing_system.entity.GanttDay;
 import com.isssr.ticketing_system.entity.Ticket;
 import com.isssr.ticketing_system.exception.DependeciesFoundException;
 import com.isssr.ticketing_system.exception.EntityNotFoundException;
+import com.isssr.ticketing_system.utils.DateCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -17,12 +22,20 @@ import java.util.List;
 @CrossOrigin
 public class GanttDayRestService {
 
+    private static final int MAX_WINDOW_DAYS = 366;
+
     @Autowired
     private GanttDayController ganttDayController;
 
     @RequestMapping(path = "", method = RequestMethod.POST)
     public ResponseEntity<GanttDay> createGanttDay(@RequestBody GanttDay ganttDay) {
-        GanttDay ganttDayNew = ganttDayController.createGanttDay(ganttDay);
+        GanttDay ganttDayNew;
+        try {
+            ganttDayNew = ganttDayController.createGanttDay(ganttDay);
+        } catch (IllegalArgumentException e) {
+            // giorno fuori dall'orizzonte di pianificazione
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
         return new ResponseEntity<>(ganttDayNew, HttpStatus.CREATED);
     }
 
@@ -42,6 +55,9 @@ public class GanttDayRestService {
         }  catch (DependeciesFoundException e) {
             e.printStackTrace();
             return new ResponseEntity<>(HttpStatus.FAILED_DEPENDENCY);
+        } catch (IllegalArgumentException e) {
+            // firstDay non valido, oppure firstDay o duration fuori dall'orizzonte di pianificazione
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
         if (!ganttDays.isEmpty()) {
             return new ResponseEntity<>(ganttDays, HttpStatus.NOT_ACCEPTABLE);
@@ -49,4 +65,69 @@ public class GanttDayRestService {
         return new ResponseEntity<>(ganttDays, HttpStatus.OK);
     }
 
+    //NB: restituisce il primo intervallo di duration giorni, a partire da from (se assente oggi), in cui il ticket può
+    // essere pianificato per il team: senza giorni pieni e dopo la fine dei ticket padre non chiusi. Il firstDay
+    // restituito può essere usato direttamente in createGanttInstance.
+    @RequestMapping(path = "earliestSlot/{teamName}/{ticketId}/{duration}", method = RequestMethod.GET)
+    public ResponseEntity<GanttSlotDto> findEarliestSlot(@PathVariable String teamName, @PathVariable Long ticketId,
+                                                         @PathVariable Integer duration,
+                                                         @RequestParam(name = "from", required = false) String from) {
+        if (duration <= 0)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        try {
+            return new ResponseEntity<>(ganttDayController.findEarliestSlot(ticketId, teamName, duration, from), HttpStatus.OK);
+        } catch (DependeciesFoundException e) {
+            return new ResponseEntity<>(HttpStatus.FAILED_DEPENDENCY);
+        } catch (EntityNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalArgumentException e) {
+            // data from non valida (vedi DateCodec), oppure from o duration fuori dall'orizzonte di pianificazione
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    //NB: restituisce la pianificazione del team da from a to (compresi, al più MAX_WINDOW_DAYS giorni): availability e
+    // ticket di ogni giorno. La risposta ha un ETag: se la finestra non è cambiata dalla richiesta precedente
+    // (If-None-Match) viene restituito 304 senza corpo.
+    @RequestMapping(path = "{teamName}", method = RequestMethod.GET)
+    public ResponseEntity<GanttWindowDto> getTeamWindow(@PathVariable String teamName,
+                                                        @RequestParam(name = "from") String from,
+                                                        @RequestParam(name = "to") String to,
+                                                        @RequestHeader(name = "If-None-Match", required = false) String ifNoneMatch) {
+        LocalDate firstDay, lastDay;
+        try {
+            firstDay = DateCodec.parse(from);
+            lastDay = DateCodec.parse(to);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (firstDay == null || lastDay == null || lastDay.isBefore(firstDay)
+                || lastDay.toEpochDay() - firstDay.toEpochDay() >= MAX_WINDOW_DAYS)
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+
+        GanttWindowDto window;
+        try {
+            window = ganttDayController.getTeamWindow(teamName, firstDay, lastDay);
+        } catch (EntityNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (window.getEtag().equals(ifNoneMatch))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(window.getEtag()).build();
+        return ResponseEntity.ok().eTag(window.getEtag()).body(window);
+    }
+
+    //NB: restituisce il cammino critico dei ticket aperti del team: per ogni ticket inizio e fine al più presto e al più
+    // tardi e slack, più la catena dei ticket critici. Se le dipendenze tra i ticket del team formano un ciclo
+    // restituisce 409.
+    @RequestMapping(path = "criticalPath/{teamName}", method = RequestMethod.GET)
+    public ResponseEntity<CriticalPathDto> getCriticalPath(@PathVariable String teamName) {
+        try {
+            return new ResponseEntity<>(ganttDayController.getCriticalPath(teamName), HttpStatus.OK);
+        } catch (EntityNotFoundException e) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+    }
+
 }
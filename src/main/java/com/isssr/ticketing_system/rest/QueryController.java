@@ -6,6 +6,8 @@ import com.isssr.ticketing_system.exception.EntityNotFoundException;
 import com.isssr.ticketing_system.exception.PageableQueryException;
 import com.isssr.ticketing_system.exception.UpdateException;
 import com.isssr.ticketing_system.logger.aspect.LogOperation;
+import com.isssr.ticketing_system.dto.QuerySampleDto;
+import com.isssr.ticketing_system.entity.auto_generated.enumeration.SampleResolution;
 import com.isssr.ticketing_system.entity.auto_generated.db_metadata.Column;
 import com.isssr.ticketing_system.entity.auto_generated.db_metadata.Table;
 import com.isssr.ticketing_system.entity.auto_generated.query.DBScheduledCountQuery;
@@ -15,11 +17,13 @@ import com.isssr.ticketing_system.entity.db_connection.DBConnectionInfo;
 import com.isssr.ticketing_system.response_entity.*;
 import com.isssr.ticketing_system.controller.DBConnectionInfoController;
 import com.isssr.ticketing_system.controller.auto_generated.AutoGeneratedTicketService;
+import com.isssr.ticketing_system.controller.auto_generated.QuerySampleStore;
 import com.isssr.ticketing_system.controller.auto_generated.QueryService;
 import com.isssr.ticketing_system.controller.db_metadata.DBMetadataExtractor;
 import org.quartz.SchedulerException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -30,6 +34,8 @@ import org.springframework.web.bind.annotation.*;
 import java.security.Principal;
 import java.sql.SQLException;
 import java.text.ParseException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -53,6 +59,9 @@ public class QueryController {
     @Autowired
     private DBMetadataExtractor dbMetadataExtractor;
 
+    @Autowired
+    private QuerySampleStore querySampleStore;
+
     @JsonView(JsonViews.Basic.class)
     @RequestMapping(path = "metadata", method = RequestMethod.GET)
     @PreAuthorize("hasAuthority('READ_PRIVILEGE')")
@@ -210,6 +219,32 @@ public class QueryController {
         }
     }
 
+    /**
+     * Storico dei risultati della query tra from (default: 7 giorni prima di to) e to (default: adesso), con la
+     * risoluzione indicata (default: HOUR). Le date sono in formato ISO 8601, ad esempio 2018-06-01T00:00:00Z.
+     */
+    @JsonView(JsonViews.Basic.class)
+    @RequestMapping(value = "{id}/samples", method = RequestMethod.GET)
+    @PreAuthorize("hasAuthority('READ_PRIVILEGE')")
+    public ResponseEntity getSamples(@PathVariable Long id,
+                                     @RequestParam(name = "resolution", required = false, defaultValue = "HOUR") SampleResolution resolution,
+                                     @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+                                     @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+
+        if (!this.queryService.existsById(id))
+            return CommonResponseEntity.NotFoundResponseEntity("No query with this ID in db");
+
+        if (to == null)
+            to = Instant.now();
+
+        if (from == null)
+            from = to.minus(7, ChronoUnit.DAYS);
+
+        List<QuerySampleDto> samples = this.querySampleStore.getSamples(id, resolution, from, to);
+
+        return new ResponseEntityBuilder<>(samples).setStatus(HttpStatus.OK).build();
+    }
+
     @RequestMapping(value = "tables", method = RequestMethod.POST)
     @PreAuthorize("hasAuthority('READ_PRIVILEGE')")
     public ResponseEntity getTablesMetadata(@RequestBody DBConnectionInfo dbConnectionInfo) {
@@ -291,9 +291,9 @@ public class TargetRest {
      * @return La lista degli stati successivi a currentTicketStatus per la SM del target con id targetID
      */
     @RequestMapping(path = "getNextStates/{targetID}/{currentState}")
-    public ResponseEntity<ArrayList<ArrayList<String>>> getNextStates(@PathVariable("targetID") Long targetID, @PathVariable("currentState")
+    public ResponseEntity<List<List<String>>> getNextStates(@PathVariable("targetID") Long targetID, @PathVariable("currentState")
             String currentState){
-        ArrayList<ArrayList<String>> states;
+        List<List<String>> states;
         try {
             states = targetController.getNextStates(targetID,currentState);
         } catch (NotFoundEntityException e) {
@@ -3,17 +3,26 @@ package com.isssr.ticketing_system.rest;
 import com.fasterxml.jackson.annotation.JsonView;
 import com.google.common.collect.Lists;
 import com.isssr.ticketing_system.configuration.ConfigProperties;
+import com.isssr.ticketing_system.dto.TicketDependencyDto;
+import com.isssr.ticketing_system.dto.TicketSearchResultDto;
+import com.isssr.ticketing_system.dto.TicketStatsDto;
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
+import com.isssr.ticketing_system.dto.TicketTransitionDto;
 import com.isssr.ticketing_system.enumeration.*;
 import com.isssr.ticketing_system.exception.*;
 import com.isssr.ticketing_system.mail.mailHandler.MailSenderHandler;
 import com.isssr.ticketing_system.entity.*;
 import com.isssr.ticketing_system.response_entity.*;
 import com.isssr.ticketing_system.controller.*;
+import com.isssr.ticketing_system.utils.DateCodec;
+import com.isssr.ticketing_system.utils.KeysetPage;
+import com.isssr.ticketing_system.utils.PageableUtils;
 import com.isssr.ticketing_system.validator.TicketValidator;
 import org.apache.commons.io.IOUtils;
 import org.apache.tomcat.util.codec.binary.Base64;
 import org.apache.tomcat.util.http.fileupload.FileUploadException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -24,12 +33,15 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.io.*;
 import java.security.Principal;
+import java.time.DayOfWeek;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -232,16 +244,170 @@ public class TicketRest {
 
     /**
      * Metodo usato per la gestione di una GET che arriva sull'url specificato. A fronte di
-     * una richiesta di questo tipo vengono restituiti tutti i ticket presenti nel DB.
+     * una richiesta di questo tipo viene restituita una pagina dei ticket visibili all'utente,
+     * insieme al cursore da passare per ottenere la pagina successiva.
      *
-     * @return lista dei ticket presenti nel DB + esito della richiesta HTTP.
+     * @param sort chiave di ordinamento (ID, CREATION_TIMESTAMP, RANK).
+     * @param direction direzione dell'ordinamento (ASC, DESC); se assente quella di default della chiave.
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket + cursore della pagina successiva (null se è l'ultima) + esito della richiesta HTTP.
      * @see com.isssr.ticketing_system.controller.TicketController
      */
     @JsonView(JsonViews.Basic.class)
     @RequestMapping(value = "", method = RequestMethod.GET)
-    public ResponseEntity getAllTickets() {
-        List<Ticket> tickets = ticketController.getAllTickets();
-        return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
+    public ResponseEntity getAllTickets(@RequestParam(name = "sort", defaultValue = "ID") TicketSortKey sort,
+                                        @RequestParam(name = "direction", required = false) PageableUtils.SortingDirection direction,
+                                        @RequestParam(name = "cursor", required = false) String cursor,
+                                        @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        try {
+            Boolean descending = direction == null ? null : direction == PageableUtils.SortingDirection.DESC;
+            KeysetPage<TicketSummaryDto> tickets = ticketController.getTickets(sort, descending, cursor, pageSize);
+            return new KeysetResponseEntityBuilder(tickets).setStatus(HttpStatus.OK).build();
+        } catch (PageableQueryException e) {
+            return CommonResponseEntity.BadRequestResponseEntity(e.getMessage());
+        }
+    }
+
+    /**
+     * Metodo usato per la gestione di una GET che arriva sull'url specificato. A fronte di
+     * una richiesta di questo tipo viene effettuata una ricerca full-text su titolo e descrizione dei ticket
+     * visibili all'utente; i risultati sono ordinati per rilevanza e contengono i frammenti di testo evidenziati
+     * (testo non HTML, termini tra i marcatori di {@link TicketSearchResultDto}).
+     *
+     * @param text testo da cercare.
+     * @param status stato dei ticket da cercare (opzionale).
+     * @param targetId id del target dei ticket da cercare (opzionale).
+     * @param teamId id del team dei ticket da cercare (opzionale).
+     * @param customerId id del customer dei ticket da cercare (opzionale).
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di risultati per pagina.
+     * @return pagina di risultati + cursore della pagina successiva (null se è l'ultima) + esito della richiesta HTTP.
+     * @see com.isssr.ticketing_system.controller.TicketController
+     */
+    @JsonView(JsonViews.Basic.class)
+    @RequestMapping(path = "search", method = RequestMethod.GET)
+    public ResponseEntity searchTickets(@RequestParam(name = "text") String text,
+                                        @RequestParam(name = "status", required = false) TicketStatus status,
+                                        @RequestParam(name = "targetId", required = false) Long targetId,
+                                        @RequestParam(name = "teamId", required = false) Long teamId,
+                                        @RequestParam(name = "customerId", required = false) Long customerId,
+                                        @RequestParam(name = "cursor", required = false) String cursor,
+                                        @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        try {
+            KeysetPage<TicketSearchResultDto> results = ticketController.searchTickets(text, status, targetId, teamId,
+                    customerId, cursor, pageSize);
+            return new KeysetResponseEntityBuilder(results).setStatus(HttpStatus.OK).build();
+        } catch (PageableQueryException e) {
+            return CommonResponseEntity.BadRequestResponseEntity(e.getMessage());
+        }
+    }
+
+    /**
+     * Metodo usato per la gestione di una GET che arriva sull'url specificato. A fronte di
+     * una richiesta di questo tipo vengono restituiti i ticket da cui il ticket specificato dipende,
+     * direttamente o indirettamente, ordinati per distanza.
+     *
+     * @param id Id del ticket.
+     * @param maxDepth distanza massima dal ticket (opzionale).
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket con distanza, durata stimata e inizio esecuzione + cursore della pagina successiva
+     * + esito della richiesta HTTP.
+     * @see com.isssr.ticketing_system.controller.TicketController
+     */
+    @JsonView(JsonViews.Basic.class)
+    @RequestMapping(path = "{id}/ancestors", method = RequestMethod.GET)
+    public ResponseEntity getAncestors(@PathVariable Long id,
+                                       @RequestParam(name = "maxDepth", required = false) Integer maxDepth,
+                                       @RequestParam(name = "cursor", required = false) String cursor,
+                                       @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        return getDependencyClosure(id, true, maxDepth, cursor, pageSize);
+    }
+
+    /**
+     * Metodo usato per la gestione di una GET che arriva sull'url specificato. A fronte di
+     * una richiesta di questo tipo vengono restituiti i ticket che dipendono dal ticket specificato,
+     * direttamente o indirettamente, ordinati per distanza.
+     *
+     * @param id Id del ticket.
+     * @param maxDepth distanza massima dal ticket (opzionale).
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket con distanza, durata stimata e inizio esecuzione + cursore della pagina successiva
+     * + esito della richiesta HTTP.
+     * @see com.isssr.ticketing_system.controller.TicketController
+     */
+    @JsonView(JsonViews.Basic.class)
+    @RequestMapping(path = "{id}/descendants", method = RequestMethod.GET)
+    public ResponseEntity getDescendants(@PathVariable Long id,
+                                         @RequestParam(name = "maxDepth", required = false) Integer maxDepth,
+                                         @RequestParam(name = "cursor", required = false) String cursor,
+                                         @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        return getDependencyClosure(id, false, maxDepth, cursor, pageSize);
+    }
+
+    private ResponseEntity getDependencyClosure(Long id, boolean ancestors, Integer maxDepth, String cursor, Integer pageSize) {
+        try {
+            KeysetPage<TicketDependencyDto> tickets = ticketController.getDependencyClosure(id, ancestors, maxDepth,
+                    cursor, pageSize);
+            return new KeysetResponseEntityBuilder(tickets).setStatus(HttpStatus.OK).build();
+        } catch (PageableQueryException e) {
+            return CommonResponseEntity.BadRequestResponseEntity(e.getMessage());
+        } catch (EntityNotFoundException e) {
+            return CommonResponseEntity.NotFoundResponseEntity("TICKET_NOT_FOUND");
+        }
+    }
+
+    /**
+     * Metodo usato per la gestione di una GET che arriva sull'url specificato. A fronte di
+     * una richiesta di questo tipo vengono esportati tutti i ticket visibili all'utente, in formato NDJSON
+     * (un oggetto JSON per riga) o CSV. I ticket sono scritti nella risposta man mano che vengono letti dal DB.
+     *
+     * @param format formato dell'esportazione (NDJSON o CSV).
+     * @return stream dei ticket + esito della richiesta HTTP.
+     * @see com.isssr.ticketing_system.controller.TicketController
+     */
+    @RequestMapping(path = "export", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> exportTickets(@RequestParam(name = "format", defaultValue = "NDJSON") TicketExportFormat format) {
+        //NB: il body viene scritto in un thread separato, la transazione è aperta da exportTickets
+        StreamingResponseBody body = outputStream -> ticketController.exportTickets(format, outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"tickets." + format.getExtension() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Metodo usato per la gestione di una GET che arriva sull'url specificato. A fronte di
+     * una richiesta di questo tipo vengono restituiti i conteggi dei ticket per stato, priorità, categoria,
+     * target e team, senza accedere al DB.
+     *
+     * @return conteggi dei ticket + esito della richiesta HTTP.
+     * @see com.isssr.ticketing_system.controller.TicketStatsController
+     */
+    @JsonView(JsonViews.Basic.class)
+    @RequestMapping(path = "stats", method = RequestMethod.GET)
+    public ResponseEntity getTicketStats() {
+        TicketStatsDto stats = ticketController.getTicketStats();
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * Metodo usato per la gestione di una POST che arriva sull'url specificato. A fronte di
+     * una richiesta di questo tipo i ticket indicati, insieme ai ticket ad essi equivalenti, vengono spostati
+     * nello stato successivo secondo l'azione indicata.
+     *
+     * @param transition id dei ticket e azione della macchina a stati.
+     * @return id dei ticket il cui stato è cambiato + esito della richiesta HTTP.
+     * @see com.isssr.ticketing_system.controller.TicketController
+     */
+    @RequestMapping(path = "transitions", method = RequestMethod.POST)
+    public ResponseEntity transitionTickets(@RequestBody TicketTransitionDto transition) {
+        if (transition.getAction() == null || transition.getTicketIds() == null || transition.getTicketIds().isEmpty())
+            return CommonResponseEntity.BadRequestResponseEntity("TICKETS_OR_ACTION_MISSING");
+        List<Long> updatedTickets = ticketController.transitionTickets(transition.getTicketIds(), transition.getAction());
+        return new ResponseEntity<>(updatedTickets, HttpStatus.OK);
     }
 
     /**
@@ -294,7 +460,7 @@ public class TicketRest {
      */
     @GetMapping("customer")
     @ResponseStatus(OK)
-    List<Ticket> getAllCustomerTicket() throws EntityNotFoundException {
+    List<TicketSummaryDto> getAllCustomerTicket() throws EntityNotFoundException {
         User customer = getCurrentUserFromSecurityContext();
         return ticketController.getTicketsByCustomer(customer);
     }
@@ -346,7 +512,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "getTicketsByUser", method = RequestMethod.POST)
     public ResponseEntity getTicketsByUserId(@RequestBody User user) {
-        List<Ticket> tickets = ticketController.getTicketsByCustomer(user);
+        List<TicketSummaryDto> tickets = ticketController.getTicketsByCustomer(user);
         if(tickets==null || tickets.size()==0)
             return CommonResponseEntity.NotFoundResponseEntity("TICKET_NOT_FOUND");
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
@@ -360,7 +526,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "getTicketsBySameTicket", method = RequestMethod.POST)
     public ResponseEntity getTicketsBySameTicket(@RequestBody Ticket ticket) {
-        List<Ticket> tickets = ticketController.findTicketBySameTicket(ticket);
+        List<TicketSummaryDto> tickets = ticketController.findTicketBySameTicket(ticket);
         if(tickets==null || tickets.size()==0)
             return CommonResponseEntity.NotFoundResponseEntity("TICKET_NOT_FOUND");
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
@@ -474,48 +640,75 @@ public class TicketRest {
     /**
      * Ritorna i ticket senza una relazione
      *
-     * @return lista di ticket senza una relazione + esito della richiesta HTTP
+     * @param title testo da cercare nel titolo dei ticket, per l'autocompletamento (opzionale)
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket senza una relazione + cursore della pagina successiva (null se è l'ultima) + esito della richiesta HTTP
      */
     @RequestMapping(path = "findTicketNoRelation", method = RequestMethod.GET)
-    public ResponseEntity findTicketNoRelation() {
-        List<Ticket> tickets = ticketController.findTicketNoRelation();
-        return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
+    public ResponseEntity findTicketNoRelation(@RequestParam(name = "title", required = false) String title,
+                                               @RequestParam(name = "cursor", required = false) String cursor,
+                                               @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        return findRelationCandidates(TicketRelationCandidates.NO_RELATION, title, cursor, pageSize);
     }
 
 
     /**
      * Ritorna i ticket che possiedono una relazione di dipendenza
      *
-     * @return lista di ticket + esito della richiesta HTTP
+     * @param title testo da cercare nel titolo dei ticket, per l'autocompletamento (opzionale)
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket + cursore della pagina successiva (null se è l'ultima) + esito della richiesta HTTP
      */
     @RequestMapping(path = "findTicketDependency", method = RequestMethod.GET)
-    public ResponseEntity findTicketDependency() {
-        List<Ticket> tickets = ticketController.findTicketDependency();
-        return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
+    public ResponseEntity findTicketDependency(@RequestParam(name = "title", required = false) String title,
+                                               @RequestParam(name = "cursor", required = false) String cursor,
+                                               @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        return findRelationCandidates(TicketRelationCandidates.DEPENDENCY, title, cursor, pageSize);
     }
 
 
     /**
      * Ritorna i ticket con i quali è possibile creare una relazione di uguaglianza
      *
-     * @return lista di ticket + esito della richiesta HTTP
+     * @param title testo da cercare nel titolo dei ticket, per l'autocompletamento (opzionale)
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket + cursore della pagina successiva (null se è l'ultima) + esito della richiesta HTTP
      */
     @RequestMapping(path = "findTicketForCreateEquality", method = RequestMethod.GET)
-    public ResponseEntity findTicketForCreateEquality() {
-        List<Ticket> tickets = ticketController.findTicketForCreateEquality();
-        return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
+    public ResponseEntity findTicketForCreateEquality(@RequestParam(name = "title", required = false) String title,
+                                                      @RequestParam(name = "cursor", required = false) String cursor,
+                                                      @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        return findRelationCandidates(TicketRelationCandidates.CREATE_EQUALITY, title, cursor, pageSize);
     }
 
 
     /**
      * Ritorna i ticket con i quali è possibile creare una relazione di dipendenza
      *
-     * @return lista di ticket + esito della richiesta HTTP
+     * @param title testo da cercare nel titolo dei ticket, per l'autocompletamento (opzionale)
+     * @param cursor cursore restituito dalla pagina precedente; se assente viene restituita la prima pagina.
+     * @param pageSize numero di ticket per pagina.
+     * @return pagina di ticket + cursore della pagina successiva (null se è l'ultima) + esito della richiesta HTTP
      */
     @RequestMapping(path = "findTicketForCreateDependency", method = RequestMethod.GET)
-    public ResponseEntity findTicketForCreateDependency() {
-        List<Ticket> tickets = ticketController.findTicketForCreateDependency();
-        return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
+    public ResponseEntity findTicketForCreateDependency(@RequestParam(name = "title", required = false) String title,
+                                                        @RequestParam(name = "cursor", required = false) String cursor,
+                                                        @RequestParam(name = "pageSize", required = false) Integer pageSize) {
+        return findRelationCandidates(TicketRelationCandidates.CREATE_DEPENDENCY, title, cursor, pageSize);
+    }
+
+
+    private ResponseEntity findRelationCandidates(TicketRelationCandidates candidates, String title, String cursor,
+                                                  Integer pageSize) {
+        try {
+            KeysetPage<TicketSummaryDto> tickets = ticketController.findRelationCandidates(candidates, title, cursor, pageSize);
+            return new KeysetResponseEntityBuilder(tickets).setStatus(HttpStatus.OK).build();
+        } catch (PageableQueryException e) {
+            return CommonResponseEntity.BadRequestResponseEntity(e.getMessage());
+        }
     }
 
 
@@ -526,7 +719,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "findTicketForCreateRegression", method = RequestMethod.GET)
     public ResponseEntity findTicketForCreateRegression() {
-        List<Ticket> tickets = ticketController.findTicketForCreateRegression();
+        List<TicketSummaryDto> tickets = ticketController.findTicketForCreateRegression();
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
     }
 
@@ -540,7 +733,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "findTicketInQueue", method = RequestMethod.GET)
     public ResponseEntity findTicketInQueue() {
-        List<Ticket> tickets = ticketController.findTicketInQueue();
+        List<TicketSummaryDto> tickets = ticketController.findTicketInQueue();
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
     }
 
@@ -558,7 +751,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "findTicketByTeam/{teamName}", method = RequestMethod.GET)
     public ResponseEntity findTicketByTeam(@PathVariable String teamName) throws EntityNotFoundException {
-        List<Ticket> tickets = ticketController.findTicketByTeam(teamName);
+        List<TicketSummaryDto> tickets = ticketController.findTicketByTeam(teamName);
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
     }
 
@@ -570,7 +763,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "findTicketForGantt/{teamName}", method = RequestMethod.GET)
     public ResponseEntity findTicketForGantt(@PathVariable String teamName) throws EntityNotFoundException {
-        List<Ticket> tickets = ticketController.findTicketForGanttByTeam(teamName);
+        List<TicketSummaryDto> tickets = ticketController.findTicketForGanttByTeam(teamName);
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
     }
 
@@ -582,7 +775,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "findFatherTicket/{ticketId}", method = RequestMethod.GET)
     public ResponseEntity findFatherTicket(@PathVariable Long ticketId) {
-        List<Ticket> tickets = ticketController.findFatherTicket(ticketId);
+        List<TicketSummaryDto> tickets = ticketController.findFatherTicket(ticketId);
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
     }
 
@@ -656,7 +849,7 @@ public class TicketRest {
      */
     @RequestMapping(path="/ticketByAssignee/{teamLeaderID}",method = RequestMethod.GET)
     public ResponseEntity getTicketsByAssignee(@PathVariable("teamLeaderID") Long assigneeID){
-        List<Ticket> tickets = null;
+        List<TicketSummaryDto> tickets = null;
         try {
             tickets = ticketController.getTicketsByAssignee(assigneeID);
         } catch (EntityNotFoundException e) {
@@ -677,7 +870,7 @@ public class TicketRest {
      */
     @RequestMapping(path = "/findTicketByStatus/{status}",method = RequestMethod.GET)
     public ResponseEntity getTicketByStatus(@PathVariable("status")TicketStatus ticketStatus){
-        List<Ticket> tickets = ticketController.getTicketsByStatus(ticketStatus);
+        List<TicketSummaryDto> tickets = ticketController.getTicketsByStatus(ticketStatus);
         return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
         /*if(tickets != null)
             return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
@@ -686,6 +879,33 @@ public class TicketRest {
             */
     }
 
+    /**
+     * Restituisce i ticket in esecuzione in almeno un giorno tra from e to (compresi). Se le date mancano l'intervallo
+     * è la settimana corrente, da lunedì a domenica.
+     *
+     * @param from primo giorno, nel formato di DateCodec
+     * @param to ultimo giorno, nel formato di DateCodec
+     * @return i ticket ordinati per inizio esecuzione; 400 se una data non è valida
+     */
+    @RequestMapping(path = "/findExecutingTickets", method = RequestMethod.GET)
+    public ResponseEntity getExecutingTickets(@RequestParam(name = "from", required = false) String from,
+                                              @RequestParam(name = "to", required = false) String to) {
+        LocalDate firstDay, lastDay;
+        try {
+            firstDay = DateCodec.parse(from);
+            lastDay = DateCodec.parse(to);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        LocalDate monday = LocalDate.now().with(DayOfWeek.MONDAY);
+        if (firstDay == null)
+            firstDay = monday;
+        if (lastDay == null)
+            lastDay = monday.plusDays(6);
+        List<TicketSummaryDto> tickets = ticketController.getTicketsExecutingBetween(firstDay, lastDay);
+        return new ResponseEntityBuilder<>(tickets).setStatus(HttpStatus.OK).build();
+    }
+
 
 
     /**
@@ -881,6 +1101,9 @@ public class TicketRest {
                 ganttDays = ticketController.getPlanningAndChangeTicketState(ticket, username, firstDay, duration, ticketID, action, internalUserID);
             } catch (DependeciesFoundException e) {
                 return new ResponseEntity<>(HttpStatus.FAILED_DEPENDENCY);
+            } catch (IllegalArgumentException e) {
+                // data di inizio non valida, oppure data o durata fuori dall'orizzonte di pianificazione
+                return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
             }
         } catch (EntityNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
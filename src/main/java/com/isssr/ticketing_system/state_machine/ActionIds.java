@@ -0,0 +1,41 @@
+package com.isssr.ticketing_system.state_machine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interning degli id delle azioni delle macchine a stati ("Action1", "Action2", ...): ad ogni id viene
+ * associato un intero, usato come colonna nelle tabelle delle transizioni di {@link StateMachineDefinition}.
+ * Gli interi sono condivisi tra tutte le definizioni.
+ */
+public final class ActionIds {
+
+    public static final int UNKNOWN = -1;
+
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    private ActionIds() {
+    }
+
+    /**
+     * @param action id dell'azione come scritto nel file XML
+     * @return l'intero associato all'azione, assegnandone uno nuovo se l'azione non è ancora nota
+     */
+    public static int intern(String action) {
+        Integer id = IDS.get(action);
+        if (id != null)
+            return id;
+        synchronized (IDS) {
+            return IDS.computeIfAbsent(action, key -> IDS.size());
+        }
+    }
+
+    /**
+     * @param action id dell'azione
+     * @return l'intero associato all'azione, oppure UNKNOWN se nessuna macchina a stati la prevede
+     */
+    public static int lookup(String action) {
+        Integer id = action == null ? null : IDS.get(action);
+        return id == null ? UNKNOWN : id;
+    }
+}
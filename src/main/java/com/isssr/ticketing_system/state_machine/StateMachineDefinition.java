@@ -0,0 +1,181 @@
+package com.isssr.ticketing_system.state_machine;
+
+import Action.FSMAction;
+import FSM.FSM;
+import States.FSMState;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tabella delle transizioni di una macchina a stati, ottenuta parsando una sola volta il relativo file XML.
+ * E' immutabile e quindi condivisa da tutti i ticket che usano la stessa definizione.
+ * <p>
+ * Gli stati sono indicizzati per ordinale di {@link TicketStatus} e le azioni per id interno
+ * ({@link ActionIds}), quindi transizioni e informazioni sugli stati sono semplici letture su array.
+ * Sono accettate solo macchine a stati i cui stati appartengono a TicketStatus, come richiesto da
+ * StateMachineController.stateMachineValidation.
+ *
+ * @see StateMachineRegistry
+ */
+public final class StateMachineDefinition {
+
+    private static final TicketStatus[] STATUSES = TicketStatus.values();
+
+    private static final int NO_TRANSITION = -1;
+
+    private final Long id;
+    private final String name;
+    private final int initialState;
+
+    /**
+     * Stati nell'ordine del file XML.
+     */
+    private final List<TicketStatus> states;
+
+    /**
+     * transitions[stato][azione] = stato successivo, oppure NO_TRANSITION. La riga è null se lo stato non fa
+     * parte della macchina a stati.
+     */
+    private final int[][] transitions;
+
+    /**
+     * Per ogni stato: [azioni, ruoli, stati successivi], come restituito da FSM.getStateInformation.
+     */
+    private final List<List<String>>[] stateInformation;
+
+    private StateMachineDefinition(Long id, String name, int initialState, List<TicketStatus> states,
+                                   int[][] transitions, List<List<String>>[] stateInformation) {
+        this.id = id;
+        this.name = name;
+        this.initialState = initialState;
+        this.states = states;
+        this.transitions = transitions;
+        this.stateInformation = stateInformation;
+    }
+
+    /**
+     * Compila il file XML di una macchina a stati usando la libreria FSM, in modo che la semantica
+     * (stato iniziale, ordine delle azioni, azioni sconosciute ignorate) resti identica.
+     *
+     * @param id id della StateMachine nel DB (può essere null)
+     * @param name nome della macchina a stati
+     * @param path path del file XML
+     * @return la definizione compilata
+     * @throws IllegalArgumentException se uno stato non appartiene a TicketStatus o non è definito nella macchina
+     */
+    public static StateMachineDefinition compile(Long id, String name, String path)
+            throws ParserConfigurationException, SAXException, IOException {
+        FSM stateMachine = new FSM(path, new FSMAction() {
+            @Override
+            public boolean action(String curState, String message, String nextState, Object args) {
+                return true;
+            }
+        });
+        return compile(id, name, stateMachine);
+    }
+
+    @SuppressWarnings("unchecked")
+    static StateMachineDefinition compile(Long id, String name, FSM stateMachine) {
+        List<TicketStatus> states = new ArrayList<>();
+        for (FSMState state : (List<FSMState>) stateMachine.getAllStates())
+            states.add(toStatus(state.getCurrentState()));
+
+        int[][] transitions = new int[STATUSES.length][];
+        List<List<String>>[] stateInformation = new List[STATUSES.length];
+
+        for (TicketStatus state : states) {
+            ArrayList<ArrayList<String>> info = stateMachine.getStateInformation(state.toString());
+            List<String> actions = Collections.unmodifiableList(new ArrayList<>(info.get(0)));
+            List<String> roles = Collections.unmodifiableList(new ArrayList<>(info.get(1)));
+            List<String> nextStates = Collections.unmodifiableList(new ArrayList<>(info.get(2)));
+
+            int[] actionIds = new int[actions.size()];
+            int columns = 0;
+            for (int i = 0; i < actions.size(); i++) {
+                actionIds[i] = ActionIds.intern(actions.get(i));
+                columns = Math.max(columns, actionIds[i] + 1);
+            }
+
+            int[] row = new int[columns];
+            Arrays.fill(row, NO_TRANSITION);
+            for (int i = 0; i < actions.size(); i++) {
+                TicketStatus nextState = toStatus(nextStates.get(i));
+                if (!states.contains(nextState))
+                    throw new IllegalArgumentException("NOT CONNECTED STATE MACHINE : " + nextState);
+                row[actionIds[i]] = nextState.ordinal();
+            }
+
+            transitions[state.ordinal()] = row;
+            stateInformation[state.ordinal()] = Collections.unmodifiableList(Arrays.asList(actions, roles, nextStates));
+        }
+
+        return new StateMachineDefinition(id, name, toStatus(stateMachine.getCurrentState()).ordinal(),
+                Collections.unmodifiableList(states), transitions, stateInformation);
+    }
+
+    private static TicketStatus toStatus(String state) {
+        TicketStatus status = TicketStatus.getEnum(state);
+        if (status == null)
+            throw new IllegalArgumentException("NOT ADMITTED STATE : " + state);
+        return status;
+    }
+
+    /**
+     * Stato raggiunto eseguendo l'azione a partire dallo stato indicato. Come in FSM.ProcessFSM,
+     * un'azione non prevista lascia lo stato invariato.
+     *
+     * @param state ordinale del TicketStatus corrente
+     * @param action id dell'azione ottenuto da {@link ActionIds}
+     * @return ordinale del TicketStatus successivo
+     */
+    public int nextState(int state, int action) {
+        int[] row = transitions[state];
+        if (row == null || action < 0 || action >= row.length || row[action] == NO_TRANSITION)
+            return state;
+        return row[action];
+    }
+
+    public TicketStatus nextStatus(TicketStatus currentState, String action) {
+        return STATUSES[nextState(currentState.ordinal(), ActionIds.lookup(action))];
+    }
+
+    /**
+     * Informazioni sullo stato: [azioni, ruoli, stati successivi]; lista vuota se lo stato non esiste.
+     */
+    public List<List<String>> getStateInformation(TicketStatus state) {
+        return state == null ? Collections.<List<String>>emptyList() : getStateInformation(state.ordinal());
+    }
+
+    public List<List<String>> getStateInformation(int state) {
+        List<List<String>> info = stateInformation[state];
+        return info == null ? Collections.<List<String>>emptyList() : info;
+    }
+
+    public List<List<String>> getStateInformation(String state) {
+        return getStateInformation(TicketStatus.getEnum(state));
+    }
+
+    public boolean containsState(TicketStatus state) {
+        return transitions[state.ordinal()] != null;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TicketStatus getInitialState() {
+        return STATUSES[initialState];
+    }
+
+    public List<TicketStatus> getStates() {
+        return states;
+    }
+}
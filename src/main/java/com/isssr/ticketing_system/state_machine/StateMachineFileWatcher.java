@@ -0,0 +1,86 @@
+package com.isssr.ticketing_system.state_machine;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * Osserva la directory state_machine/xml_files e invalida nello {@link StateMachineRegistry} le macchine a stati
+ * i cui file XML vengono creati, modificati o cancellati fuori dall'applicazione.
+ */
+@Component
+public class StateMachineFileWatcher implements Runnable {
+
+    private static final String XML_EXTENSION = ".xml";
+
+    private final StateMachineRegistry stateMachineRegistry;
+
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    @Autowired
+    public StateMachineFileWatcher(StateMachineRegistry stateMachineRegistry) {
+        this.stateMachineRegistry = stateMachineRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            File directory = StateMachineRegistry.getXmlDirectory();
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            // Ad esempio se le risorse sono dentro un jar: resta valida l'invalidazione fatta da saveStateMachine
+            System.out.println("State machine file watcher not started: " + e.getMessage());
+            return;
+        }
+
+        watcherThread = new Thread(this, "state-machine-file-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Eventi persi: non si sa quali file siano cambiati
+                    stateMachineRegistry.invalidateAll();
+                    continue;
+                }
+                String fileName = event.context().toString();
+                if (fileName.endsWith(XML_EXTENSION))
+                    stateMachineRegistry.invalidate(fileName.substring(0, fileName.length() - XML_EXTENSION.length()));
+            }
+
+            if (!key.reset())
+                return;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watcherThread != null)
+            watcherThread.interrupt();
+        try {
+            if (watchService != null)
+                watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
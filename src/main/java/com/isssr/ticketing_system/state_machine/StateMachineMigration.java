@@ -0,0 +1,74 @@
+package com.isssr.ticketing_system.state_machine;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Migrazione dei ticket salvati con la macchina a stati serializzata (@Lob) verso il riferimento alla
+ * definizione condivisa del {@link StateMachineRegistry}:
+ * <ul>
+ *     <li>state_machine_id viene ricavato dal nome della macchina a stati del Target del ticket</li>
+ *     <li>le colonne state_machine e state_information (lo stato corrente è già in current_ticket_status) vengono
+ *     eliminate solo se migration.drop-legacy-columns = true e tutti i ticket hanno state_machine_id; altrimenti
+ *     restano, perché sono l'unica copia dello stato dei ticket non migrati e servono ai nodi non ancora aggiornati</li>
+ * </ul>
+ * Tutte le istruzioni sono idempotenti, quindi la migrazione può essere eseguita ad ogni avvio.
+ */
+@Component
+public class StateMachineMigration implements ApplicationListener<ApplicationReadyEvent> {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final boolean dropLegacyColumns;
+
+    @Autowired
+    public StateMachineMigration(JdbcTemplate jdbcTemplate,
+                                 @Value("${migration.drop-legacy-columns}") boolean dropLegacyColumns) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dropLegacyColumns = dropLegacyColumns;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        try {
+            int migratedTickets = jdbcTemplate.update("update ticket t set state_machine_id = sm.id " +
+                    "from target tg, state_machine sm " +
+                    "where t.target_id = tg.id and tg.state_machine_name = sm.name and t.state_machine_id is null");
+
+            if (migratedTickets > 0)
+                System.out.println("State machine migration: " + migratedTickets + " ticket aggiornati");
+
+            if (dropLegacyColumns)
+                dropLegacyColumns();
+        } catch (DataAccessException e) {
+            System.out.println("Error during state machine migration");
+            e.printStackTrace();
+        }
+    }
+
+    private void dropLegacyColumns() {
+        Integer legacyColumns = jdbcTemplate.queryForObject("select count(*) from information_schema.columns " +
+                "where table_name = 'ticket' and column_name in ('state_machine', 'state_information')", Integer.class);
+        if (legacyColumns == null || legacyColumns == 0)
+            return;
+
+        //NB: un ticket senza state_machine_id (senza target, o con un target la cui macchina a stati non esiste) ha lo
+        // stato solo nelle vecchie colonne
+        Integer notMigrated = jdbcTemplate.queryForObject("select count(*) from ticket where state_machine_id is null",
+                Integer.class);
+        if (notMigrated != null && notMigrated > 0) {
+            System.out.println("State machine migration: " + notMigrated + " ticket senza state_machine_id, " +
+                    "le colonne state_machine e state_information non vengono eliminate");
+            return;
+        }
+
+        jdbcTemplate.execute("alter table ticket drop column if exists state_machine");
+        jdbcTemplate.execute("alter table ticket drop column if exists state_information");
+        System.out.println("State machine migration: eliminate le colonne state_machine e state_information");
+    }
+}
@@ -0,0 +1,172 @@
+package com.isssr.ticketing_system.state_machine;
+
+import com.isssr.ticketing_system.dao.StateMachineDao;
+import com.isssr.ticketing_system.entity.StateMachine;
+import com.isssr.ticketing_system.entity.Ticket;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registro delle macchine a stati: ogni definizione XML viene parsata una sola volta in una
+ * {@link StateMachineDefinition} immutabile, indicizzata per nome, e condivisa da tutti i ticket.
+ * I ticket salvano solo l'id della definizione e lo stato corrente.
+ * <p>
+ * Le macchine a stati non sono versionate: saveStateMachine sovrascrive il file XML e la riga della StateMachine con lo
+ * stesso nome (e lo stesso id), quindi anche i ticket già aperti passano alla nuova definizione.
+ * <p>
+ * Le definizioni restano in cache finché il file XML non cambia (saveStateMachine o StateMachineFileWatcher);
+ * hit e miss della cache sono esposti tramite actuator come metrica cache.gets{cache=stateMachines}.
+ */
+@Component
+public class StateMachineRegistry implements MeterBinder {
+
+    private static final String CACHE_NAME = "stateMachines";
+
+    private static final String XML_FILES_PATH = "/state_machine/xml_files/";
+
+    private final StateMachineDao stateMachineDao;
+
+    /**
+     * Definizioni compilate, per id della StateMachine.
+     */
+    private final ConcurrentMap<Long, StateMachineDefinition> definitionsById = new ConcurrentHashMap<>();
+
+    /**
+     * Definizioni compilate, per nome della macchina a stati.
+     */
+    private final ConcurrentMap<String, StateMachineDefinition> definitionsByName = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public StateMachineRegistry(StateMachineDao stateMachineDao) {
+        this.stateMachineDao = stateMachineDao;
+    }
+
+    /**
+     * @param ticket ticket di cui cercare la macchina a stati
+     * @return la definizione usata dal ticket (per id o, per i ticket non migrati, dal nome nel Target); null se assente
+     */
+    public StateMachineDefinition getDefinition(Ticket ticket) {
+        if (ticket.getStateMachineId() != null)
+            return getDefinition(ticket.getStateMachineId());
+        if (ticket.getTarget() != null && ticket.getTarget().getStateMachineName() != null)
+            return getDefinition(ticket.getTarget().getStateMachineName());
+        return null;
+    }
+
+    public StateMachineDefinition getDefinition(Long stateMachineId) {
+        StateMachineDefinition definition = definitionsById.get(stateMachineId);
+        if (definition != null) {
+            hits.incrementAndGet();
+            return definition;
+        }
+
+        misses.incrementAndGet();
+        Optional<StateMachine> stateMachine = stateMachineDao.findById(stateMachineId);
+        return stateMachine.map(this::getDefinition).orElse(null);
+    }
+
+    public StateMachineDefinition getDefinition(String stateMachineName) {
+        StateMachineDefinition definition = definitionsByName.get(stateMachineName);
+        if (definition != null) {
+            hits.incrementAndGet();
+            return definition;
+        }
+
+        misses.incrementAndGet();
+        Optional<StateMachine> stateMachine = stateMachineDao.findByName(stateMachineName);
+        if (stateMachine.isPresent())
+            return getDefinition(stateMachine.get());
+
+        // Macchina a stati presente solo come file XML (non registrata nel DB)
+        return getDefinition(null, stateMachineName);
+    }
+
+    private StateMachineDefinition getDefinition(StateMachine stateMachine) {
+        return getDefinition(stateMachine.getId(), stateMachine.getName());
+    }
+
+    private StateMachineDefinition getDefinition(Long id, String name) {
+        StateMachineDefinition definition = definitionsByName.computeIfAbsent(name, key -> {
+            try {
+                return StateMachineDefinition.compile(id, name, getXmlPath(name));
+            } catch (ParserConfigurationException | SAXException | IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+                return null;
+            }
+        });
+        if (definition != null && id != null)
+            definitionsById.put(id, definition);
+        return definition;
+    }
+
+    /**
+     * Rimuove dal registro la definizione compilata della macchina a stati.
+     *
+     * @param stateMachineName nome della macchina a stati modificata
+     */
+    public void invalidate(String stateMachineName) {
+        definitionsByName.remove(stateMachineName);
+        definitionsById.values().removeIf(definition -> definition.getName().equals(stateMachineName));
+    }
+
+    public void invalidateAll() {
+        definitionsByName.clear();
+        definitionsById.clear();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, AtomicLong::get)
+                .tags("cache", CACHE_NAME, "result", "hit")
+                .description("Definizioni di macchine a stati trovate in cache")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, AtomicLong::get)
+                .tags("cache", CACHE_NAME, "result", "miss")
+                .description("Definizioni di macchine a stati caricate dal file XML")
+                .register(registry);
+        Gauge.builder("cache.size", definitionsByName, ConcurrentMap::size)
+                .tags("cache", CACHE_NAME)
+                .register(registry);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return directory in cui sono salvati i file XML delle macchine a stati
+     */
+    public static File getXmlDirectory() throws IOException {
+        return new ClassPathResource(XML_FILES_PATH).getFile();
+    }
+
+    /**
+     * @param stateMachineName nome della macchina a stati
+     * @return path del file XML della macchina a stati
+     */
+    public static String getXmlPath(String stateMachineName) throws IOException {
+        String relativePath = getXmlDirectory().getPath();
+        return new File(relativePath, stateMachineName).getPath() + ".xml";
+    }
+}
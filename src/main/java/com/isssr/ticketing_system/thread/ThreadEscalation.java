@@ -1,18 +1,12 @@
 package com.isssr.ticketing_system.thread;
 
 import com.isssr.ticketing_system.dao.TicketDao;
-import com.isssr.ticketing_system.entity.Ticket;
-import com.isssr.ticketing_system.enumeration.TicketStatus;
-import com.isssr.ticketing_system.utils.State;
-
-import java.util.List;
 
 
 /*
 NB: thread che:
- -attiva la funzione computeRank su tutti i ticket in pending
- -aggiorna il campo rank di ogni ticket in pending
- -e salva ogni ticket nel database
+ -ricalcola con un'unica UPDATE la chiave di escalation di tutti i ticket in pending
+  (il rank viene poi calcolato in lettura a partire dalla chiave)
 
 versione usata senza l'annotazione @Scheduled
  */
@@ -38,14 +32,10 @@ public class ThreadEscalation implements Runnable{
     public void run() {
 
 
-        List<Ticket> pendingTickets = ticketDao.findDistinctByCurrentTicketStatus(TicketStatus.PENDING);
-
-        for(Ticket ticket: pendingTickets){
-                Double rank = ticket.computeRank(customerPriority,teamPriority,time);
-                ticket.updateRank(rank);
-                ticketDao.save(ticket);
-
-        }
+        long start = System.currentTimeMillis();
+        int updatedTickets = ticketDao.updatePendingEscalationKeys(customerPriority, teamPriority, time);
+        System.out.println("Escalation: ricalcolate " + updatedTickets + " chiavi di escalation in "
+                + (System.currentTimeMillis() - start) + " ms");
 
     }
 }
@@ -0,0 +1,151 @@
+package com.isssr.ticketing_system.utils;
+
+import java.time.LocalDate;
+
+/**
+ * Conversione tra le date in formato stringa scambiate con il FE e i giorni (LocalDate o epoch day, numero di giorni
+ * dal 1/1/1970) salvati nelle colonne di tipo date.
+ * <p>
+ * Il formato è quello usato finora dal FE e dal Gantt: "giorno/mese/anno" con il mese da 0 a 11 (come Date.getMonth() in
+ * JavaScript), eventualmente seguito da un orario che viene ignorato; i separatori ammessi sono '/', ' ', ':' e '-'.
+ * Come con GregorianCalendar il parsing è tollerante: un mese oltre 11 vale dicembre e un giorno oltre la fine del
+ * mese prosegue nei mesi successivi. È accettato anche il formato ISO "anno-mese-giorno" (mese da 1 a 12),
+ * riconosciuto dall'anno di quattro cifre in prima posizione.
+ * <p>
+ * Il parsing scorre i caratteri senza creare oggetti intermedi (niente split, Integer.parseInt o Calendar) e, per i
+ * giorni dal 1900 al 2199, l'inizio di ogni mese è letto da una tabella; le stringhe formattate e le LocalDate degli
+ * anni dal 2000 al 2099 sono create una sola volta e poi riusate.
+ */
+public final class DateCodec {
+
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 2199;
+    // epoch day del primo giorno di ogni mese degli anni da FIRST_YEAR a LAST_YEAR
+    private static final long[] MONTH_START = new long[(LAST_YEAR - FIRST_YEAR + 1) * 12];
+
+    private static final long CACHE_FIRST_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final int CACHE_SIZE = (int) (LocalDate.of(2100, 1, 1).toEpochDay() - CACHE_FIRST_DAY);
+    //NB: le celle sono riempite alla prima richiesta; due thread possono creare lo stesso valore, ma String e
+    // LocalDate sono immutabili, quindi l'accesso non sincronizzato è sicuro
+    private static final String[] FORMATTED = new String[CACHE_SIZE];
+    private static final LocalDate[] DATES = new LocalDate[CACHE_SIZE];
+
+    static {
+        for (int year = FIRST_YEAR; year <= LAST_YEAR; year++)
+            for (int month = 0; month < 12; month++)
+                MONTH_START[(year - FIRST_YEAR) * 12 + month] = LocalDate.of(year, month + 1, 1).toEpochDay();
+    }
+
+    private DateCodec() {
+    }
+
+    /**
+     * @return l'epoch day della data
+     * @throws IllegalArgumentException se il testo non contiene giorno, mese e anno
+     */
+    public static long parseEpochDay(CharSequence text) {
+        int length = text.length();
+        int position = 0;
+        int first = 0, second = 0, third = 0, firstDigits = 0;
+        for (int field = 0; field < 3; field++) {
+            if (field > 0) {
+                if (position >= length || !isSeparator(text.charAt(position)))
+                    throw invalid(text);
+                position++;
+            }
+            int start = position;
+            int value = 0;
+            while (position < length && position - start < 9) {
+                char c = text.charAt(position);
+                if (c < '0' || c > '9')
+                    break;
+                value = value * 10 + (c - '0');
+                position++;
+            }
+            if (position == start)
+                throw invalid(text);
+            if (field == 0) {
+                first = value;
+                firstDigits = position - start;
+            } else if (field == 1) {
+                second = value;
+            } else {
+                third = value;
+            }
+        }
+        if (position < length && !isSeparator(text.charAt(position)))
+            throw invalid(text);
+
+        if (firstDigits == 4)
+            return epochDay(first, second - 1, third);
+        return epochDay(third, second, first);
+    }
+
+    /**
+     * @return la data, null se il testo è null o vuoto
+     * @throws IllegalArgumentException se il testo non contiene giorno, mese e anno
+     */
+    public static LocalDate parse(CharSequence text) {
+        if (text == null || text.length() == 0)
+            return null;
+        return toLocalDate(parseEpochDay(text));
+    }
+
+    public static LocalDate toLocalDate(long epochDay) {
+        int index = cacheIndex(epochDay);
+        if (index < 0)
+            return LocalDate.ofEpochDay(epochDay);
+        LocalDate date = DATES[index];
+        if (date == null)
+            DATES[index] = date = LocalDate.ofEpochDay(epochDay);
+        return date;
+    }
+
+    /**
+     * @return la data nel formato "giorno/mese/anno", con il mese da 0 a 11
+     */
+    public static String format(long epochDay) {
+        int index = cacheIndex(epochDay);
+        if (index < 0)
+            return toString(LocalDate.ofEpochDay(epochDay));
+        String formatted = FORMATTED[index];
+        if (formatted == null)
+            FORMATTED[index] = formatted = toString(toLocalDate(epochDay));
+        return formatted;
+    }
+
+    /**
+     * @return la data nel formato "giorno/mese/anno", con il mese da 0 a 11; null se la data è null
+     */
+    public static String format(LocalDate date) {
+        return date == null ? null : format(date.toEpochDay());
+    }
+
+    private static String toString(LocalDate date) {
+        return date.getDayOfMonth() + "/" + (date.getMonthValue() - 1) + "/" + date.getYear();
+    }
+
+    /**
+     * Epoch day di una data con il mese da 0 a 11; mesi oltre 11 valgono dicembre e i giorni fuori dal mese sono
+     * contati a partire dal primo del mese, come in GregorianCalendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+        month = Math.max(0, Math.min(month, 11));
+        long monthStart = year >= FIRST_YEAR && year <= LAST_YEAR ? MONTH_START[(year - FIRST_YEAR) * 12 + month]
+                : LocalDate.of(year, month + 1, 1).toEpochDay();
+        return monthStart + day - 1;
+    }
+
+    private static int cacheIndex(long epochDay) {
+        long index = epochDay - CACHE_FIRST_DAY;
+        return index < 0 || index >= CACHE_SIZE ? -1 : (int) index;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == ' ' || c == ':' || c == '-';
+    }
+
+    private static IllegalArgumentException invalid(CharSequence text) {
+        return new IllegalArgumentException("Invalid date: " + text);
+    }
+}
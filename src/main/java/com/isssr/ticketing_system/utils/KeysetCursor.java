@@ -0,0 +1,46 @@
+package com.isssr.ticketing_system.utils;
+
+import com.isssr.ticketing_system.exception.PageableQueryException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursore per la paginazione keyset: contiene il valore della chiave di ordinamento e l'id dell'ultimo
+ * elemento restituito. Viene passato al client come stringa opaca (base64 url-safe di "valore|id").
+ */
+public class KeysetCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final String value;
+    private final Long id;
+
+    public KeysetCursor(Object value, Long id) {
+        this.value = String.valueOf(value);
+        this.id = id;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((value + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) throws PageableQueryException {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(SEPARATOR);
+            return new KeysetCursor(decoded.substring(0, separator), Long.valueOf(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new PageableQueryException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.isssr.ticketing_system.utils;
+
+import java.util.List;
+
+/**
+ * Pagina ottenuta con paginazione keyset: elementi della pagina e cursore per richiedere la successiva.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final KeysetCursor nextCursor;
+
+    public KeysetPage(List<T> content, KeysetCursor nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return cursore della pagina successiva, null se questa è l'ultima
+     */
+    public KeysetCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,122 @@
+package com.isssr.ticketing_system.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.isssr.ticketing_system.dto.TicketSummaryDto;
+import com.isssr.ticketing_system.enumeration.TicketExportFormat;
+import com.isssr.ticketing_system.response_entity.JsonViews;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scrive i ticket esportati sull'output stream della risposta, una riga alla volta e senza accumularli in memoria.
+ */
+public abstract class TicketExportWriter {
+
+    private static final String[] CSV_HEADER = {"id", "title", "description", "category", "creationTimestamp",
+            "currentTicketStatus", "customerPriority", "teamPriority", "actualPriority", "actualType", "visibility",
+            "difficulty", "datePendingStart", "dateExecutionStart", "durationEstimation", "dateEnd", "countDependencies",
+            "sameTicketId", "teamName", "assignee", "customer", "target", "targetVersion"};
+
+    /**
+     * @param format formato dell'esportazione
+     * @param objectMapper mapper usato per le righe NDJSON (stesse viste JSON delle liste di ticket)
+     * @param outputStream stream su cui scrivere, che non viene chiuso
+     */
+    public static TicketExportWriter create(TicketExportFormat format, ObjectMapper objectMapper,
+                                            OutputStream outputStream) throws IOException {
+        if (format == TicketExportFormat.CSV)
+            return new CsvWriter(outputStream);
+        return new NdjsonWriter(objectMapper, outputStream);
+    }
+
+    public abstract void write(TicketSummaryDto ticket) throws IOException;
+
+    /**
+     * Svuota i buffer sull'output stream, senza chiuderlo.
+     */
+    public abstract void flush() throws IOException;
+
+    private static class NdjsonWriter extends TicketExportWriter {
+        private final ObjectWriter writer;
+        private final JsonGenerator generator;
+
+        private NdjsonWriter(ObjectMapper objectMapper, OutputStream outputStream) throws IOException {
+            this.writer = objectMapper.writerWithView(JsonViews.Basic.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                    .without(SerializationFeature.INDENT_OUTPUT);
+            this.generator = objectMapper.getFactory().createGenerator(outputStream)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // le righe sono separate solo dal '\n' scritto dopo ogni ticket (il default è uno spazio)
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(TicketSummaryDto ticket) throws IOException {
+            writer.writeValue(generator, ticket);
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class CsvWriter extends TicketExportWriter {
+        private final Writer writer;
+
+        private CsvWriter(OutputStream outputStream) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writeRow((Object[]) CSV_HEADER);
+        }
+
+        @Override
+        public void write(TicketSummaryDto ticket) throws IOException {
+            writeRow(ticket.getId(), ticket.getTitle(), ticket.getDescription(), ticket.getCategory(),
+                    ticket.getCreationTimestamp(), ticket.getCurrentTicketStatus(), ticket.getCustomerPriority(),
+                    ticket.getTeamPriority(), ticket.getActualPriority(), ticket.getActualType(),
+                    ticket.getVisibility(), ticket.getDifficulty(), ticket.getDatePendingStart(),
+                    ticket.getDateExecutionStart(), ticket.getDurationEstimation(), ticket.getDateEnd(),
+                    ticket.getCountDependencies(), ticket.getSameTicketId(), ticket.getTeamName(),
+                    ticket.getAssignee() == null ? null : ticket.getAssignee().getUsername(),
+                    ticket.getCustomer() == null ? null : ticket.getCustomer().getUsername(),
+                    ticket.getTarget() == null ? null : ticket.getTarget().getName(),
+                    ticket.getTarget() == null ? null : ticket.getTarget().getVersion());
+        }
+
+        private void writeRow(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0)
+                    writer.write(',');
+                if (values[i] != null)
+                    writeField(values[i].toString());
+            }
+            writer.write("\r\n");
+        }
+
+        // RFC 4180: i campi con separatori, virgolette o a capo sono racchiusi tra virgolette
+        private void writeField(String value) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.isssr.ticketing_system.utils.jacksonComponents.deserializer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.isssr.ticketing_system.utils.DateCodec;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+//NB: legge le date nel formato "giorno/mese/anno" con il mese da 0 a 11, ignorando l'eventuale orario (vedi DateCodec)
+public class DayDeserializer extends StdDeserializer<LocalDate> {
+
+    public DayDeserializer() {
+        this(null);
+    }
+
+    public DayDeserializer(Class<?> clazz) {
+        super(clazz);
+    }
+
+    @Override
+    public LocalDate deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+        String text = jsonParser.getValueAsString();
+        try {
+            return DateCodec.parse(text == null ? null : text.trim());
+        } catch (IllegalArgumentException e) {
+            return (LocalDate) deserializationContext.handleWeirdStringValue(LocalDate.class, text, e.getMessage());
+        }
+    }
+
+}
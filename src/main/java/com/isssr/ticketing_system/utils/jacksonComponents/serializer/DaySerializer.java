@@ -0,0 +1,27 @@
+package com.isssr.ticketing_system.utils.jacksonComponents.serializer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.isssr.ticketing_system.utils.DateCodec;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+//NB: scrive le date nel formato "giorno/mese/anno" con il mese da 0 a 11 (vedi DateCodec)
+public class DaySerializer extends StdSerializer<LocalDate> {
+
+    public DaySerializer() {
+        this(null);
+    }
+
+    public DaySerializer(Class<LocalDate> t) {
+        super(t);
+    }
+
+    @Override
+    public void serialize(LocalDate date, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+        jsonGenerator.writeString(DateCodec.format(date));
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.isssr.ticketing_system.benchmark;
+
+import Action.FSMAction;
+import FSM.FSM;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import com.isssr.ticketing_system.state_machine.ActionIds;
+import com.isssr.ticketing_system.state_machine.StateMachineDefinition;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronto tra la libreria FSM e la tabella compilata di StateMachineDefinition su una transizione
+ * (PENDING <-> EXECUTION) seguita dalla lettura delle informazioni sul nuovo stato, cioè il lavoro fatto
+ * da TicketController.changeStatus per ogni ticket.
+ * <p>
+ * Esecuzione: mvn test-compile, poi main di questa classe con il classpath di test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateMachineBenchmark {
+
+    private static final String[] ACTIONS = {"Action1", "Action2"};
+
+    private FSM stateMachine;
+    private StateMachineDefinition definition;
+    private int[] actionIds;
+    private int state;
+    private int step;
+
+    @Setup
+    public void setup() throws Exception {
+        String path = new ClassPathResource("/state_machine/templates/template_FSM.xml").getFile().getPath();
+        stateMachine = new FSM(path, new FSMAction() {
+            @Override
+            public boolean action(String curState, String message, String nextState, Object args) {
+                return true;
+            }
+        });
+        definition = StateMachineDefinition.compile(null, "template", path);
+        actionIds = new int[]{ActionIds.lookup(ACTIONS[0]), ActionIds.lookup(ACTIONS[1])};
+
+        // Entrambe partono da PENDING: Action1 porta in EXECUTION, Action2 riporta in PENDING
+        stateMachine.ProcessFSM("Action1");
+        state = TicketStatus.PENDING.ordinal();
+    }
+
+    @Benchmark
+    public void fsmLibrary(Blackhole blackhole) {
+        stateMachine.ProcessFSM(ACTIONS[step++ & 1]);
+        blackhole.consume(stateMachine.getStateInformation(stateMachine.getCurrentState()));
+    }
+
+    @Benchmark
+    public void compiledTable(Blackhole blackhole) {
+        state = definition.nextState(state, actionIds[step++ & 1]);
+        blackhole.consume(definition.getStateInformation(state));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StateMachineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+package com.isssr.ticketing_system.benchmark;
+
+import com.isssr.ticketing_system.graph.TicketGraph;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controllo di ciclicità di una nuova dipendenza su un grafo aciclico di 100.000 ticket e 500.000 dipendenze:
+ * TicketGraph (array di int) contro una visita equivalente su mappe e insiemi di Long, cioè la stessa struttura
+ * dei Set&lt;Ticket&gt; di Ticket.dependentTickets senza il costo del caricamento delle entità.
+ * <p>
+ * Gli archi vanno sempre da un id minore a uno maggiore, quindi il grafo è aciclico; le coppie (padre, figlio)
+ * interrogate sono casuali, metà delle quali chiude un ciclo.
+ * <p>
+ * Esecuzione: mvn test-compile, poi main di questa classe con il classpath di test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class TicketGraphBenchmark {
+
+    private static final int TICKETS = 100_000;
+    private static final int DEPENDENCIES = 500_000;
+    private static final int QUERIES = 1024;
+
+    // id dei ticket non contigui, come dopo cancellazioni e inserimenti
+    private static final long ID_OFFSET = 1_000_000L;
+
+    private TicketGraph graph;
+    private Map<Long, Set<Long>> boxedGraph;
+    private long[] fathers;
+    private long[] sons;
+    private int query;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        graph = new TicketGraph(TICKETS);
+        boxedGraph = new HashMap<>();
+        int edges = 0;
+        while (edges < DEPENDENCIES) {
+            int a = random.nextInt(TICKETS);
+            // dipendenze per lo più "locali", come tra ticket dello stesso periodo
+            int b = a + 1 + random.nextInt(200);
+            if (b >= TICKETS)
+                continue;
+            if (graph.addEdge(ID_OFFSET + 3L * a, ID_OFFSET + 3L * b)) {
+                boxedGraph.computeIfAbsent(ID_OFFSET + 3L * a, id -> new HashSet<>()).add(ID_OFFSET + 3L * b);
+                edges++;
+            }
+        }
+
+        fathers = new long[QUERIES];
+        sons = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            int a = random.nextInt(TICKETS);
+            int b = random.nextInt(TICKETS);
+            fathers[i] = ID_OFFSET + 3L * Math.max(a, b);
+            sons[i] = ID_OFFSET + 3L * Math.min(a, b);
+            if ((i & 1) == 0) {
+                long swap = fathers[i];
+                fathers[i] = sons[i];
+                sons[i] = swap;
+            }
+        }
+    }
+
+    @Benchmark
+    public void cycleCheckTicketGraph(Blackhole blackhole) {
+        int i = query++ & (QUERIES - 1);
+        blackhole.consume(graph.findPath(sons[i], fathers[i]));
+    }
+
+    @Benchmark
+    public void cycleCheckBoxed(Blackhole blackhole) {
+        int i = query++ & (QUERIES - 1);
+        blackhole.consume(boxedPath(sons[i], fathers[i]));
+    }
+
+    @Benchmark
+    public void descendantsTicketGraph(Blackhole blackhole) {
+        int i = query++ & (QUERIES - 1);
+        blackhole.consume(graph.descendants(fathers[i]));
+    }
+
+    private List<Long> boxedPath(long from, long to) {
+        Map<Long, Long> parents = new HashMap<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        parents.put(from, from);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            Long current = queue.poll();
+            for (Long son : boxedGraph.getOrDefault(current, Collections.emptySet())) {
+                if (parents.containsKey(son))
+                    continue;
+                parents.put(son, current);
+                if (son == to) {
+                    List<Long> path = new ArrayList<>();
+                    for (Long node = son; !node.equals(from); node = parents.get(node))
+                        path.add(node);
+                    path.add(from);
+                    Collections.reverse(path);
+                    return path;
+                }
+                queue.add(son);
+            }
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TicketGraphBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,88 @@
+package com.isssr.ticketing_system.entity.auto_generated.query;
+
+import com.isssr.ticketing_system.controller.UserSwitchController;
+import com.isssr.ticketing_system.controller.auto_generated.QuerySampleStore;
+import com.isssr.ticketing_system.controller.auto_generated.QueryService;
+import com.isssr.ticketing_system.entity.auto_generated.enumeration.COperatorsEnum;
+import com.isssr.ticketing_system.enumeration.TicketPriority;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Verifica i confronti dei monitor con la media degli ultimi windowSize campioni e con il solo lastValue.
+ */
+public class DBScheduledCountQueryTest {
+
+    private UserSwitchController userSwitchController;
+    private QueryService queryService;
+    private QuerySampleStore querySampleStore;
+
+    @Before
+    public void setUp() {
+        userSwitchController = mock(UserSwitchController.class);
+        queryService = mock(QueryService.class);
+        querySampleStore = mock(QuerySampleStore.class);
+    }
+
+    private DBScheduledCountQuery monitor(COperatorsEnum operator, long reference, Integer windowSize) {
+        DBScheduledCountQuery query = new DBScheduledCountQuery("monitor", TicketPriority.LOW, false, "admin",
+                "0 * * * * ?", "select count(*) from ticket", null, QueryType.DATA_BASE_TABLE_MONITOR, operator,
+                BigInteger.valueOf(reference));
+        query.setId(7L);
+        query.setWindowSize(windowSize);
+        return query;
+    }
+
+    private boolean run(DBScheduledCountQuery query, long count) throws Exception {
+        when(userSwitchController.doNotLog(anyString(), eq(BigInteger.class), isNull(), isNull(), isNull(), isNull(), isNull()))
+                .thenReturn(BigInteger.valueOf(count));
+        return query.executeQuery(userSwitchController, queryService, querySampleStore);
+    }
+
+    @Test
+    public void growthIsMeasuredAgainstTheWindowAverage() throws Exception {
+        DBScheduledCountQuery query = monitor(COperatorsEnum.PERCENT_GROWTH, 50, 3);
+        when(querySampleStore.average(7L, 3)).thenReturn(new BigDecimal(100));
+
+        assertFalse(run(query, 140));
+        assertTrue(run(query, 150));
+
+        verify(querySampleStore).record(7L, BigInteger.valueOf(150));
+        verify(queryService).updateLastValue(7L, BigInteger.valueOf(150));
+        assertEquals(BigInteger.valueOf(150), query.getLastValue());
+    }
+
+    @Test
+    public void dropIsMeasuredAgainstTheWindowAverage() throws Exception {
+        DBScheduledCountQuery query = monitor(COperatorsEnum.PERCENT_DROP, 20, 5);
+        when(querySampleStore.average(7L, 5)).thenReturn(new BigDecimal(200));
+
+        assertFalse(run(query, 170));
+        assertTrue(run(query, 150));
+    }
+
+    @Test
+    public void firstRunWithoutSamplesDoesNotFire() throws Exception {
+        DBScheduledCountQuery query = monitor(COperatorsEnum.GREATER, 0, 3);
+
+        assertFalse(run(query, 1000));
+        verify(querySampleStore).record(7L, BigInteger.valueOf(1000));
+    }
+
+    @Test
+    public void withoutWindowTheLastValueIsUsed() throws Exception {
+        DBScheduledCountQuery query = monitor(COperatorsEnum.GREATER, 10, null);
+
+        assertFalse(run(query, 100));
+        assertTrue(run(query, 111));
+        assertFalse(run(query, 115));
+        verify(querySampleStore, never()).average(anyLong(), anyInt());
+    }
+}
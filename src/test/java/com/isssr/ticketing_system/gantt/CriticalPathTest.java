@@ -0,0 +1,64 @@
+package com.isssr.ticketing_system.gantt;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifica ordinamento topologico, date al più presto e al più tardi, slack e catena critica di un piccolo DAG.
+ */
+public class CriticalPathTest {
+
+    private static final long[] NO_FATHERS = new long[0];
+
+    @Test
+    public void computesSlackAndCriticalChain() {
+        CriticalPath path = new CriticalPath.Builder()
+                .add(1, "A", 3, 0, NO_FATHERS)
+                .add(2, "B", 2, 0, NO_FATHERS)
+                .add(3, "C", 4, 0, new long[]{1})
+                .add(4, "D", 1, 0, new long[]{2, 3})
+                // senza durata stimata il ticket dura un giorno; il padre 99 non è nel grafo e viene ignorato
+                .add(5, "E", null, 0, new long[]{2, 99})
+                .build();
+
+        assertEquals(5, path.size());
+        long[] order = new long[path.size()];
+        long[] earliestStart = new long[path.size()];
+        long[] slack = new long[path.size()];
+        for (int i = 0; i < path.size(); i++) {
+            order[i] = path.getId(i);
+            earliestStart[i] = path.getEarliestStart(i);
+            slack[i] = path.getSlack(i);
+        }
+        assertArrayEquals(new long[]{1, 2, 3, 5, 4}, order);
+        assertArrayEquals(new long[]{0, 0, 3, 2, 7}, earliestStart);
+        assertArrayEquals(new long[]{0, 5, 0, 5, 0}, slack);
+        assertEquals(7, path.getLatestStart(3));
+        assertEquals(8, path.getLatestEnd(3));
+
+        assertEquals(0, path.getProjectStart());
+        assertEquals(8, path.getProjectEnd());
+        assertArrayEquals(new long[]{1, 3, 4}, path.getCriticalPath());
+    }
+
+    @Test
+    public void releaseDelaysTheTicket() {
+        CriticalPath path = new CriticalPath.Builder()
+                .add(1, "A", 2, 10, NO_FATHERS)
+                .add(2, "B", 2, 15, new long[]{1})
+                .build();
+        assertEquals(15, path.getEarliestStart(1));
+        // A può slittare fino a finire il giorno in cui B è rilasciato
+        assertEquals(3, path.getSlack(0));
+        assertArrayEquals(new long[]{2}, path.getCriticalPath());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cycleIsRejected() {
+        new CriticalPath.Builder()
+                .add(1, "A", 1, 0, new long[]{2})
+                .add(2, "B", 1, 0, new long[]{1})
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.isssr.ticketing_system.gantt;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifica prenotazioni e ricerca dei giorni pieni del calendario di un team.
+ */
+public class TeamCalendarTest {
+
+    private static final long[] NO_DAYS = new long[0];
+
+    @Test
+    public void reserveFillsDaysAndRejectsFullRanges() {
+        TeamCalendar calendar = new TeamCalendar();
+        // team senza membri: un giorno è pieno con 2 ticket
+        assertArrayEquals(NO_DAYS, calendar.reserve(1, 100, 5, 0));
+        assertEquals(0.5, calendar.getAvailability(102), 0);
+        assertArrayEquals(NO_DAYS, calendar.reserve(2, 103, 4, 0));
+
+        assertArrayEquals(new long[]{103, 104}, calendar.findFullDays(90, 30));
+        assertArrayEquals(new long[]{103, 104}, calendar.reserve(3, 101, 10, 0));
+        // una prenotazione rifiutata non modifica il calendario
+        assertArrayEquals(new int[]{1, 1, 1, 2, 2, 1, 1, 0}, calendar.getTicketCounts(100, 8));
+        assertEquals(7, calendar.getPlannedDayCount());
+    }
+
+    @Test
+    public void alreadyPlannedDaysAreNotCountedTwice() {
+        TeamCalendar calendar = new TeamCalendar();
+        calendar.reserve(7, 10, 3, 2);
+        calendar.reserve(7, 10, 5, 2);
+        assertArrayEquals(new int[]{1, 1, 1, 1, 1}, calendar.getTicketCounts(10, 5));
+        assertEquals(0.25, calendar.getAvailability(14), 0);
+        calendar.reserve(3, 11, 1, 2);
+        assertArrayEquals(new long[]{3, 7}, calendar.getTickets(11));
+    }
+
+    @Test
+    public void earliestStartSkipsFullDays() {
+        TeamCalendar calendar = new TeamCalendar();
+        for (long day : new long[]{5, 6, 9, 13})
+            calendar.set(day, 1.0, new long[]{2, 1});
+
+        assertEquals(0, calendar.findEarliestStart(0, 5));
+        assertEquals(7, calendar.findEarliestStart(5, 2));
+        assertEquals(10, calendar.findEarliestStart(4, 3));
+        assertEquals(14, calendar.findEarliestStart(4, 4));
+        assertEquals(200, calendar.findEarliestStart(200, 30));
+    }
+
+    @Test
+    public void calendarGrowsInBothDirections() {
+        TeamCalendar calendar = new TeamCalendar();
+        calendar.set(18000, 0.5, new long[]{1});
+        calendar.reserve(2, 17000, 2, 0);
+        calendar.reserve(2, 19000, 2, 0);
+
+        assertEquals(0.5, calendar.getAvailability(18000), 0);
+        assertArrayEquals(new int[]{0, 1, 1, 0}, calendar.getTicketCounts(16999, 4));
+        assertArrayEquals(new int[]{1, 1, 0}, calendar.getTicketCounts(19000, 3));
+        assertEquals(5, calendar.getPlannedDayCount());
+        assertArrayEquals(new double[]{0, 0}, calendar.getAvailability(-5, 2), 0);
+    }
+
+    @Test
+    public void windowIsAConsistentCopy() {
+        TeamCalendar calendar = new TeamCalendar();
+        calendar.reserve(5, 50, 2, 0);
+        TeamCalendar.Window window = calendar.getWindow(49, 4);
+        long hash = window.contentHash();
+
+        assertArrayEquals(new long[0], window.getTickets(0));
+        assertArrayEquals(new long[]{5}, window.getTickets(1));
+        assertEquals(0.5, window.getAvailability(2), 0);
+        assertEquals(hash, calendar.getWindow(49, 4).contentHash());
+
+        calendar.reserve(6, 51, 1, 0);
+        assertArrayEquals(new long[]{5}, window.getTickets(2));
+        assertNotEquals(hash, calendar.getWindow(49, 4).contentHash());
+    }
+}
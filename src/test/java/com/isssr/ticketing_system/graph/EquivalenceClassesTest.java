@@ -0,0 +1,70 @@
+package com.isssr.ticketing_system.graph;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifica unione, rimozione ed elenco dei membri delle classi di equivalenza tra ticket.
+ */
+public class EquivalenceClassesTest {
+
+    @Test
+    public void unionMergesClassesAndKeepsLabel() {
+        EquivalenceClasses classes = new EquivalenceClasses();
+        classes.union(1, 2, 1);
+        classes.union(3, 4, 3);
+        classes.union(5, 3, 3);
+        assertNull(classes.classOf(9));
+        assertEquals(Long.valueOf(1), classes.classOf(2));
+        assertFalse(classes.sameClass(1, 3));
+
+        classes.union(2, 4, 1);
+        assertTrue(classes.sameClass(1, 5));
+        assertEquals(Long.valueOf(1), classes.classOf(5));
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5}, sorted(classes.members(4)));
+        assertEquals(0, classes.members(9).length);
+    }
+
+    @Test
+    public void removedTicketsLeaveTheClass() {
+        EquivalenceClasses classes = new EquivalenceClasses();
+        for (long id = 2; id <= 6; id++)
+            classes.union(1, id, 1);
+
+        assertTrue(classes.remove(1));
+        assertFalse(classes.remove(1));
+        assertNull(classes.classOf(1));
+        assertArrayEquals(new long[]{2, 3, 4, 5, 6}, sorted(classes.members(3)));
+
+        classes.remove(4);
+        assertArrayEquals(new long[]{2, 3, 5, 6}, sorted(classes.members(6)));
+
+        // un ticket rimosso può entrare in un'altra classe
+        classes.union(4, 7, 7);
+        assertArrayEquals(new long[]{4, 7}, sorted(classes.members(4)));
+        assertFalse(classes.sameClass(4, 2));
+    }
+
+    @Test
+    public void dissolveRemovesAllMembers() {
+        EquivalenceClasses classes = new EquivalenceClasses(2);
+        for (long id = 1; id < 100; id++)
+            classes.union(id, id + 1, 1);
+        classes.union(200, 201, 200);
+
+        assertEquals(100, classes.dissolve(50).length);
+        assertNull(classes.classOf(1));
+        assertNull(classes.classOf(100));
+        assertEquals(2, classes.getTicketCount());
+        assertArrayEquals(new long[]{200, 201}, sorted(classes.members(201)));
+    }
+
+    private static long[] sorted(long[] ids) {
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
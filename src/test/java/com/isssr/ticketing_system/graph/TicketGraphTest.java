@@ -0,0 +1,76 @@
+package com.isssr.ticketing_system.graph;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifica cammini, cicli e antenati/discendenti del grafo delle relazioni tra ticket.
+ */
+public class TicketGraphTest {
+
+    @Test
+    public void pathIsShortestAndOrdered() {
+        TicketGraph graph = new TicketGraph();
+        graph.addEdge(1, 2);
+        graph.addEdge(2, 3);
+        graph.addEdge(3, 4);
+        graph.addEdge(1, 4);
+
+        assertArrayEquals(new long[]{1, 4}, graph.findPath(1, 4));
+        assertArrayEquals(new long[]{2, 3, 4}, graph.findPath(2, 4));
+        assertNull(graph.findPath(4, 1));
+        assertNull(graph.findPath(1, 99));
+    }
+
+    @Test
+    public void edgesAreNotDuplicatedAndCanBeRemoved() {
+        TicketGraph graph = new TicketGraph();
+        assertTrue(graph.addEdge(1, 2));
+        assertFalse(graph.addEdge(1, 2));
+        assertEquals(1, graph.getEdgeCount());
+
+        assertTrue(graph.removeEdge(1, 2));
+        assertFalse(graph.removeEdge(1, 2));
+        assertFalse(graph.hasEdge(1, 2));
+        assertNull(graph.findPath(1, 2));
+    }
+
+    @Test
+    public void ancestorsAndDescendants() {
+        TicketGraph graph = new TicketGraph(2);
+        // grafo a diamante con una coda: 10 -> 20, 10 -> 30, 20 -> 40, 30 -> 40, 40 -> 50
+        graph.addEdge(10, 20);
+        graph.addEdge(10, 30);
+        graph.addEdge(20, 40);
+        graph.addEdge(30, 40);
+        graph.addEdge(40, 50);
+
+        assertArrayEquals(new long[]{20, 30, 40, 50}, sorted(graph.descendants(10)));
+        assertArrayEquals(new long[]{10, 20, 30, 40}, sorted(graph.ancestors(50)));
+        assertArrayEquals(new long[0], graph.ancestors(10));
+        assertArrayEquals(new long[0], graph.descendants(99));
+    }
+
+    @Test
+    public void largeIdsAndManyNodes() {
+        TicketGraph graph = new TicketGraph();
+        long base = Long.MAX_VALUE - 100_000;
+        for (long i = 0; i < 50_000; i++)
+            graph.addEdge(base + i, base + i + 1);
+
+        long[] path = graph.findPath(base, base + 50_000);
+        assertEquals(50_001, path.length);
+        assertEquals(base + 25_000, path[25_000]);
+        assertNull(graph.findPath(base + 50_000, base));
+        assertEquals(50_000, graph.ancestors(base + 50_000).length);
+    }
+
+    private static long[] sorted(long[] ids) {
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
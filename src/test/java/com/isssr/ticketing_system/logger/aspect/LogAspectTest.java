@@ -0,0 +1,82 @@
+package com.isssr.ticketing_system.logger.aspect;
+
+import com.isssr.ticketing_system.logger.RecordController;
+import com.isssr.ticketing_system.logger.entity.Payload;
+import com.isssr.ticketing_system.logger.entity.Record;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Verifica che AuditContext sospenda l'audit solo nel thread che lo chiede, mentre un altro thread esegue in parallelo
+ * lo stesso metodo annotato con LogOperation.
+ */
+public class LogAspectTest {
+
+    private static final int CALLS = 200;
+
+    public static class AuditedService {
+        @LogOperation(tag = "TEST", inputArgs = {"query"})
+        public String execute(String query) {
+            return query;
+        }
+    }
+
+    @Test
+    public void suppressionIsPerThread() throws Exception {
+        RecordController recordController = mock(RecordController.class);
+        LogAspect aspect = new LogAspect();
+        ReflectionTestUtils.setField(aspect, "recordController", recordController);
+        AspectJProxyFactory factory = new AspectJProxyFactory(new AuditedService());
+        factory.addAspect(aspect);
+        AuditedService service = factory.getProxy();
+
+        CyclicBarrier start = new CyclicBarrier(2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> suppressed = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < CALLS; i++)
+                    try (AuditContext.Suppression ignored = AuditContext.suppress()) {
+                        assertEquals("suppressed", service.execute("suppressed"));
+                    }
+                return null;
+            });
+            Future<?> audited = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < CALLS; i++)
+                    assertEquals("audited", service.execute("audited"));
+                return null;
+            });
+            suppressed.get(30, TimeUnit.SECONDS);
+            audited.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ArgumentCaptor<Record> records = ArgumentCaptor.forClass(Record.class);
+        verify(recordController, times(CALLS)).createRecord(records.capture());
+        for (Record record : records.getAllValues())
+            for (Payload payload : record.getPayloads())
+                if (payload != null)
+                    assertTrue(payload.getJson().contains("audited"));
+        assertFalse(AuditContext.isSuppressed());
+    }
+
+    @Test
+    public void nestedSuppressionsEndWithTheOutermost() {
+        try (AuditContext.Suppression outer = AuditContext.suppress()) {
+            try (AuditContext.Suppression inner = AuditContext.suppress()) {
+                assertTrue(AuditContext.isSuppressed());
+            }
+            assertTrue(AuditContext.isSuppressed());
+        }
+        assertFalse(AuditContext.isSuppressed());
+    }
+}
@@ -0,0 +1,120 @@
+package com.isssr.ticketing_system.state_machine;
+
+import Action.FSMAction;
+import FSM.FSM;
+import com.isssr.ticketing_system.enumeration.TicketStatus;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifica che la tabella compilata si comporti come la libreria FSM: stesso stato iniziale, stesse
+ * transizioni (azioni sconosciute incluse) e stesse informazioni sugli stati.
+ */
+public class StateMachineDefinitionTest {
+
+    private static final List<String> ACTIONS = Arrays.asList("Action1", "Action2", "Action3", "NotAnAction");
+
+    @Test
+    public void templateBehavesLikeFSM() throws Exception {
+        String path = new ClassPathResource("/state_machine/templates/template_FSM.xml").getFile().getPath();
+        assertSameBehaviour(path);
+    }
+
+    @Test
+    public void duplicateActionsBehaveLikeFSM() throws Exception {
+        String path = writeXml("<FSM>" +
+                "<STATE id=\"VALIDATION\">" +
+                "<MESSAGE id=\"Action1\" role=\"CUSTOMER\" nextState=\"EXECUTION\"/>" +
+                "<MESSAGE id=\"Action1\" role=\"CUSTOMER\" nextState=\"CLOSED\"/>" +
+                "</STATE>" +
+                "<STATE id=\"EXECUTION\"><MESSAGE id=\"Action1\" role=\"TEAM_LEADER\" nextState=\"CLOSED\"/></STATE>" +
+                "<STATE id=\"CLOSED\"></STATE>" +
+                "</FSM>");
+        assertSameBehaviour(path);
+    }
+
+    @Test
+    public void notAdmittedStateIsRejected() throws Exception {
+        String path = writeXml("<FSM>" +
+                "<STATE id=\"VALIDATION\"><MESSAGE id=\"Action1\" role=\"CUSTOMER\" nextState=\"UNKNOWN\"/></STATE>" +
+                "<STATE id=\"UNKNOWN\"></STATE>" +
+                "</FSM>");
+        try {
+            StateMachineDefinition.compile(null, "invalid", path);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("NOT ADMITTED STATE : UNKNOWN", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assertSameBehaviour(String path) throws Exception {
+        StateMachineDefinition definition = StateMachineDefinition.compile(1L, "test", path);
+        FSM stateMachine = newFSM(path);
+
+        assertEquals(stateMachine.getCurrentState(), definition.getInitialState().toString());
+        for (TicketStatus state : TicketStatus.values()) {
+            List<List<String>> expectedInformation = new ArrayList<>(stateMachine.getStateInformation(state.toString()));
+            assertEquals(expectedInformation, definition.getStateInformation(state));
+
+            if (!definition.containsState(state))
+                continue;
+            for (String action : ACTIONS) {
+                FSM fsm = moveTo(newFSM(path), state);
+                if (fsm == null)
+                    continue;
+                fsm.ProcessFSM(action);
+                assertEquals(state + " + " + action, fsm.getCurrentState(), definition.nextStatus(state, action).toString());
+            }
+        }
+    }
+
+    // Porta la FSM nello stato indicato seguendo le transizioni a partire dallo stato iniziale (null se non raggiungibile)
+    @SuppressWarnings("unchecked")
+    private FSM moveTo(FSM fsm, TicketStatus target) {
+        List<String> visited = new ArrayList<>();
+        while (!fsm.getCurrentState().equals(target.toString())) {
+            String current = fsm.getCurrentState();
+            visited.add(current);
+            List<String> actions = (List<String>) fsm.getStateInformation(current).get(0);
+            List<String> nextStates = (List<String>) fsm.getStateInformation(current).get(2);
+            int next = nextStates.indexOf(target.toString());
+            if (next < 0)
+                for (int i = 0; i < nextStates.size() && next < 0; i++)
+                    if (!visited.contains(nextStates.get(i)))
+                        next = i;
+            if (next < 0)
+                return null;
+            fsm.ProcessFSM(actions.get(next));
+            if (fsm.getCurrentState().equals(current))
+                return null;
+        }
+        return fsm;
+    }
+
+    private FSM newFSM(String path) throws Exception {
+        return new FSM(path, new FSMAction() {
+            @Override
+            public boolean action(String curState, String message, String nextState, Object args) {
+                return true;
+            }
+        });
+    }
+
+    private String writeXml(String xml) throws Exception {
+        File file = File.createTempFile("state_machine", ".xml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+}
@@ -0,0 +1,38 @@
+package com.isssr.ticketing_system.utils;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifica il formato "giorno/mese/anno" con il mese da 0 a 11 usato dal FE.
+ */
+public class DateCodecTest {
+
+    @Test
+    public void parsesLegacyAndIsoDates() {
+        assertEquals(LocalDate.of(2030, 1, 3), DateCodec.parse("3/0/2030"));
+        assertEquals(LocalDate.of(2030, 1, 3), DateCodec.parse("03/00/2030 10:15:00"));
+        assertEquals(LocalDate.of(2030, 1, 3), DateCodec.parse("2030-01-03"));
+        // come GregorianCalendar: i giorni oltre la fine del mese proseguono nel mese successivo
+        assertEquals(LocalDate.of(2030, 3, 3), DateCodec.parse("31/1/2030"));
+        assertEquals(LocalDate.of(2030, 12, 1), DateCodec.parse("1/12/2030"));
+        assertNull(DateCodec.parse(""));
+    }
+
+    @Test
+    public void formatsWithZeroBasedMonth() {
+        LocalDate date = LocalDate.of(2030, 12, 25);
+        assertEquals("25/11/2030", DateCodec.format(date));
+        assertSame(DateCodec.format(date), DateCodec.format(date.toEpochDay()));
+        assertEquals("1/0/1850", DateCodec.format(LocalDate.of(1850, 1, 1)));
+        assertEquals(date, DateCodec.parse(DateCodec.format(date)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncompleteDates() {
+        DateCodec.parse("3/0");
+    }
+}